@@ -0,0 +1,52 @@
+package ru.otus.offheap.arena;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Part of an arena reserved for the blocks of one thread, see {@link ArenaManager#reserveChunk}.
+ * The cursor is moved under the storage write lock. A chunk whose thread has exited is returned
+ * by the arena manager itself, so it does not keep its arena from being compacted or released.
+ */
+public final class AllocationChunk {
+
+    private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+    private final long start;
+    private final long end;
+    private long cursor;
+
+    AllocationChunk(long start, long length) {
+        this.start = start;
+        this.end = start + length;
+        this.cursor = start;
+    }
+
+    public long cursor() {
+        return cursor;
+    }
+
+    public long remaining() {
+        return end - cursor;
+    }
+
+    public void advance(long length) {
+        cursor += length;
+    }
+
+    public boolean contains(long address) {
+        return address >= start && address < end;
+    }
+
+    long start() {
+        return start;
+    }
+
+    long end() {
+        return end;
+    }
+
+    boolean isOrphaned() {
+        final var thread = owner.get();
+
+        return thread == null || !thread.isAlive();
+    }
+}
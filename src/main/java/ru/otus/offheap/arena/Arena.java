@@ -0,0 +1,60 @@
+package ru.otus.offheap.arena;
+
+import lombok.Getter;
+
+@Getter
+public abstract class Arena {
+
+    // Spare bytes after the usable range, so free extents of two arenas are never adjacent
+    protected static final long GUARD_SIZE = 8;
+
+    private final long address;
+    private final long size;
+    private long offset;
+    private int openChunks;
+
+    protected Arena(long address, long size) {
+        this.address = address;
+        this.size = size;
+    }
+
+    public long remaining() {
+        return size - offset;
+    }
+
+    public long tail() {
+        return address + offset;
+    }
+
+    public boolean contains(long blockAddress) {
+        return blockAddress >= address && blockAddress < address + size;
+    }
+
+    void advance(long length) {
+        offset += length;
+    }
+
+    void rewind(long newOffset) {
+        offset = newOffset;
+    }
+
+    void openChunk() {
+        openChunks++;
+    }
+
+    void closeChunk() {
+        openChunks--;
+    }
+
+    /**
+     * Frees the arena together with its contents.
+     */
+    protected abstract void release();
+
+    /**
+     * Detaches the arena on shutdown. Persistent arenas keep their contents.
+     */
+    protected void close() {
+        release();
+    }
+}
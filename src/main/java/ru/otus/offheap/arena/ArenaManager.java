@@ -0,0 +1,484 @@
+package ru.otus.offheap.arena;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.service.ExpiryWheel;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Long.toHexString;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Backing store made of independently allocated arenas. New arenas are opened on demand,
+ * each one {@code arena-growth-factor} times bigger than the previous, until {@code max-capacity}
+ * is reached. Block addresses are absolute, so blocks never care which arena they live in.
+ * All methods except {@link #enterRead} and {@link #exitRead} must be called under the storage write lock.
+ * <p>
+ * With {@code persistence-dir} set, arenas are memory-mapped files. Every {@link #checkpoint} and a clean
+ * {@link #close} save block metadata next to them, and the next start reopens the files instead of re-ingesting
+ * the data. Between checkpoints freed space is held back from reuse and arenas are not compacted, so the blocks
+ * of the last checkpoint stay intact and a crash falls back to it.
+ * <p>
+ * With {@code nursery-size} set, new blocks are bump-allocated in a separate nursery arena first.
+ * A young collection promotes its survivors to the ordinary arenas and resets the nursery as a whole.
+ * The nursery is not persisted, so it is disabled together with {@code persistence-dir}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ArenaManager {
+
+    private final AllocatorProperties properties;
+    private final MemoryBlockStorage blockStorage;
+    private final ExpiryWheel expiryWheel;
+
+    private final List<Arena> arenas = new ArrayList<>();
+    private final List<AllocationChunk> openChunks = new ArrayList<>();
+    private final LongAdder enteredReads = new LongAdder();
+    private final LongAdder exitedReads = new LongAdder();
+
+    private Arena current;
+    private Arena nursery;
+    private volatile long capacity;
+    private Path persistenceDir;
+    private int nextArenaId;
+    private boolean closed;
+    private boolean checkpointing;
+    private boolean compactionPending;
+
+    /**
+     * Name sequence of the allocator at the moment the persisted arenas were saved.
+     */
+    @Getter
+    private long restoredSequence;
+
+    @PostConstruct
+    private void init() throws IOException {
+        if (properties.getPersistenceDir() != null) {
+            persistenceDir = Files.createDirectories(Path.of(properties.getPersistenceDir()));
+            blockStorage.holdFreedSpace();
+
+            final var snapshot = ArenaSnapshot.read(persistenceDir.resolve(ArenaSnapshot.FILE_NAME));
+
+            if (snapshot != null) {
+                restore(snapshot);
+                return;
+            }
+
+            discardPersistedArenas();
+        }
+
+        if (properties.getNurserySize() > 0)
+            openNursery();
+
+        grow(properties.getArenaSize());
+    }
+
+    private void openNursery() {
+        if (persistenceDir != null) {
+            log.warn("Nursery is not supported for persistent arenas and is disabled");
+            return;
+        }
+
+        nursery = NativeArena.allocate(properties.getNurserySize());
+        capacity += nursery.getSize();
+
+        log.info("Opened nursery of {} bytes at [0x{}]", nursery.getSize(), toHexString(nursery.getAddress()));
+    }
+
+    private void restore(ArenaSnapshot snapshot) {
+        final var started = System.nanoTime();
+
+        for (ArenaSnapshot.ArenaRecord record : snapshot.getArenas()) {
+            final var arena = MappedArena.open(persistenceDir.resolve(record.file()), record.size());
+
+            arena.advance(record.offset());
+            arenas.add(arena);
+            capacity += record.size();
+        }
+
+        current = arenas.get(snapshot.getCurrentArena());
+        nextArenaId = snapshot.getNextArenaId();
+        restoredSequence = snapshot.getSequence();
+
+        snapshot.restore(arenas, blockStorage, expiryWheel);
+
+        log.info("Restored {} blocks in {} arenas in {} ms", snapshot.getBlocks().size(), arenas.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void discardPersistedArenas() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(persistenceDir, "arena-*.dat")) {
+            for (Path file : files)
+                Files.delete(file);
+        }
+
+        Files.deleteIfExists(persistenceDir.resolve(ArenaSnapshot.FILE_NAME));
+    }
+
+    /**
+     * @return address of the first free byte of the current arena with room for length bytes,
+     * or -1 if no arena can be opened within the capacity limit
+     */
+    public long tail(long length) {
+        if (current.remaining() < length && !grow(length))
+            return -1;
+
+        return current.tail();
+    }
+
+    public void commit(long length) {
+        current.advance(length);
+    }
+
+    /**
+     * @return address of the first free byte of the nursery with room for length bytes,
+     * or -1 if there is no nursery or it is full
+     */
+    public long nurseryTail(long length) {
+        if (nursery == null || nursery.remaining() < length)
+            return -1;
+
+        return nursery.tail();
+    }
+
+    public void commitNursery(long length) {
+        nursery.advance(length);
+    }
+
+    public boolean isYoung(long address) {
+        return nursery != null && nursery.contains(address);
+    }
+
+    public boolean hasNursery() {
+        return nursery != null;
+    }
+
+    /**
+     * @return start of the nursery, or -1 if there is none
+     */
+    public long nurseryStart() {
+        return nursery == null ? -1 : nursery.getAddress();
+    }
+
+    /**
+     * @return end of the allocated part of the nursery
+     */
+    public long nurseryTop() {
+        return nursery == null ? -1 : nursery.tail();
+    }
+
+    public double nurseryOccupancy() {
+        final var arena = nursery;
+
+        return arena == null ? 0 : (double) arena.getOffset() / arena.getSize();
+    }
+
+    /**
+     * Empties the nursery. All blocks in it must be promoted or released before.
+     */
+    public void resetNursery() {
+        blockStorage.dropFreeSpace(nursery.getAddress(), nursery.getAddress() + nursery.getSize());
+        nursery.rewind(0);
+    }
+
+    /**
+     * Bump-allocates room for a promoted block in the ordinary arenas.
+     *
+     * @return new block address or -1 if the arenas are exhausted
+     */
+    public long promote(long length) {
+        final var address = tail(length);
+
+        if (address >= 0)
+            current.advance(length);
+
+        return address;
+    }
+
+    /**
+     * Cuts a chunk of the current arena for a thread local allocation buffer of the calling thread.
+     * The arena is kept alive until the chunk is returned with {@link #returnChunk} or its thread exits.
+     *
+     * @return the chunk or null if there is no room for it
+     */
+    public AllocationChunk reserveChunk(long chunkSize) {
+        final var address = tail(chunkSize);
+
+        if (address < 0)
+            return null;
+
+        final var chunk = new AllocationChunk(address, chunkSize);
+
+        current.advance(chunkSize);
+        current.openChunk();
+        openChunks.add(chunk);
+
+        return chunk;
+    }
+
+    public void returnChunk(AllocationChunk chunk) {
+        if (!openChunks.remove(chunk))
+            return;
+
+        if (chunk.remaining() > 0)
+            blockStorage.addFreeSpace(chunk.cursor(), chunk.remaining());
+
+        arenas.stream()
+                .filter(arena -> arena.contains(chunk.start()))
+                .findFirst()
+                .ifPresent(Arena::closeChunk);
+    }
+
+    /**
+     * Returns the chunks of exited threads, which would otherwise keep their arenas open forever.
+     *
+     * @return number of returned chunks
+     */
+    public int retireOrphanedChunks() {
+        final var orphaned = openChunks.stream().filter(AllocationChunk::isOrphaned).toList();
+
+        orphaned.forEach(this::returnChunk);
+
+        if (!orphaned.isEmpty())
+            log.debug("Returned {} chunks of exited threads", orphaned.size());
+
+        return orphaned.size();
+    }
+
+    /**
+     * Frees arenas left without live blocks. Skipped while optimistic readers are in flight,
+     * since they may still copy from a block released in this cycle; the next pass retries.
+     */
+    public int releaseEmptyArenas() {
+        final var exited = exitedReads.sum();
+
+        if (enteredReads.sum() - exited > 0) {
+            log.debug("Arena release is deferred, optimistic reads are in progress");
+            return 0;
+        }
+
+        retireOrphanedChunks();
+
+        var released = 0;
+
+        for (var it = arenas.iterator(); it.hasNext(); ) {
+            final var arena = it.next();
+
+            if (arena == current || arena.getOpenChunks() > 0
+                    || !blockStorage.releaseRegion(arena.getAddress(), arena.getAddress() + arena.getSize()))
+                continue;
+
+            log.info("Releasing arena of {} bytes at [0x{}]", arena.getSize(), toHexString(arena.getAddress()));
+
+            arena.release();
+            it.remove();
+            capacity -= arena.getSize();
+            released++;
+        }
+
+        return released;
+    }
+
+    /**
+     * Slides the live blocks of an arena to its start, so its free space becomes one extent at the end.
+     * The current arena gets its bump pointer rewound instead. Arenas with TLAB chunks of live threads are skipped.
+     * Must not run in the middle of a collection cycle, whose sweep walks blocks by address.
+     *
+     * @return bytes of free space gathered at the end of the arena
+     */
+    public long compact(int index) {
+        // Sliding overwrites blocks the last checkpoint refers to, persistent arenas are compacted by checkpoints
+        if (persistenceDir != null && !checkpointing) {
+            compactionPending = true;
+            return 0;
+        }
+
+        final var arena = arenas.get(index);
+
+        if (arena.getOpenChunks() > 0)
+            retireOrphanedChunks();
+
+        if (arena.getOpenChunks() > 0)
+            return 0;
+
+        final var from = arena.getAddress();
+        final var end = from + arena.getOffset();
+        final var live = blockStorage.streamFrom(from)
+                .takeWhile(block -> block.getAddress() < end)
+                .filter(block -> !block.isDeleted() && !block.isRoot())
+                .toList();
+        final var moves = new LinkedHashMap<MemoryBlock, Long>();
+        var cursor = from;
+
+        // Blocks only move down, so copying them in address order never overwrites a block not yet moved
+        for (MemoryBlock block : live) {
+            if (block.getAddress() != cursor) {
+                UNSAFE.copyMemory(block.getAddress(), cursor, block.getSize());
+                moves.put(block, cursor);
+            }
+
+            cursor += block.getSize();
+        }
+
+        blockStorage.dropFreeSpace(from, end);
+        blockStorage.relocate(moves);
+
+        if (arena == current)
+            arena.rewind(cursor - from);
+        else if (end > cursor)
+            blockStorage.addFreeSpace(cursor, end - cursor);
+
+        return end - cursor;
+    }
+
+    public long compactAll() {
+        long gathered = 0;
+
+        for (int i = 0; i < arenas.size(); i++)
+            gathered += compact(i);
+
+        return gathered;
+    }
+
+    public void enterRead() {
+        enteredReads.increment();
+    }
+
+    public void exitRead() {
+        exitedReads.increment();
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long maxCapacity() {
+        return properties.getMaxCapacity();
+    }
+
+    public int arenaCount() {
+        return arenas.size();
+    }
+
+    /**
+     * Saves block metadata of persistent arenas together with the allocator name sequence, the saved state
+     * is what the next start falls back to after a crash. Space freed since the previous checkpoint becomes
+     * reusable. If compaction was requested meanwhile, the arenas are compacted first: the previous file
+     * is invalidated before that, so a crash in the middle discards the persisted data instead of reading
+     * overwritten blocks.
+     */
+    @SneakyThrows
+    public void checkpoint(long sequence) {
+        if (persistenceDir == null || closed)
+            return;
+
+        final var file = persistenceDir.resolve(ArenaSnapshot.FILE_NAME);
+
+        if (compactionPending) {
+            ArenaSnapshot.invalidate(file);
+            blockStorage.releaseHeldSpace();
+
+            checkpointing = true;
+            compactionPending = false;
+
+            try {
+                compactAll();
+            } finally {
+                checkpointing = false;
+            }
+        }
+
+        final var mappedArenas = arenas.stream().map(MappedArena.class::cast).toList();
+
+        mappedArenas.forEach(MappedArena::flush);
+        ArenaSnapshot.write(file, sequence, nextArenaId, mappedArenas, current, blockStorage, expiryWheel);
+        blockStorage.releaseHeldSpace();
+    }
+
+    /**
+     * Detaches all arenas and clears the storage. Persistent arenas are saved by a last checkpoint.
+     */
+    public void close(long sequence) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            if (closed)
+                return;
+
+            checkpoint(sequence);
+            closeArenas();
+            blockStorage.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // Without a saved snapshot persisted arenas are discarded on the next start
+        if (!closed)
+            closeArenas();
+    }
+
+    private void closeArenas() {
+        arenas.forEach(Arena::close);
+        arenas.clear();
+        openChunks.clear();
+
+        if (nursery != null) {
+            nursery.release();
+            nursery = null;
+        }
+
+        current = null;
+        capacity = 0;
+        closed = true;
+    }
+
+    private boolean grow(long length) {
+        final var size = Math.max(length, Math.min(nextArenaSize(), properties.getMaxCapacity() - capacity));
+
+        if (capacity + size > properties.getMaxCapacity())
+            return false;
+
+        // The tail of the previous arena stays usable as ordinary free space
+        if (current != null && current.remaining() > 0) {
+            blockStorage.addFreeSpace(current.tail(), current.remaining());
+            current.advance(current.remaining());
+        }
+
+        current = persistenceDir == null ? NativeArena.allocate(size)
+                : MappedArena.open(persistenceDir.resolve("arena-" + nextArenaId++ + ".dat"), size);
+        arenas.add(current);
+        capacity += size;
+
+        log.info("Opened arena #{} of {} bytes at [0x{}]", arenas.size(), size, toHexString(current.getAddress()));
+
+        return true;
+    }
+
+    private long nextArenaSize() {
+        if (current == null)
+            return properties.getArenaSize();
+
+        return Math.min(properties.getMaxArenaSize(), (long) (current.getSize() * properties.getArenaGrowthFactor()));
+    }
+}
@@ -0,0 +1,333 @@
+package ru.otus.offheap.arena;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.otus.offheap.io.OffHeapInputStream;
+import ru.otus.offheap.io.OffHeapOutputStream;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.service.ExpiryWheel;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static ru.otus.offheap.constants.AllocatorConstants.SERIALIZATION_BUFFER_SIZE;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Metadata file of a persistent allocator: the arena table and the headers, links and deadlines of live blocks.
+ * Deadlines are saved as wall-clock time, so the time the allocator was stopped counts against them.
+ * It is replaced atomically by every checkpoint and on shutdown. The header holds a CRC32C of the body
+ * and a validity flag, which is reset only when a checkpoint is about to overwrite blocks of the file,
+ * so a file whose blocks may have been overwritten is never taken for a consistent one.
+ */
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+final class ArenaSnapshot {
+
+    static final String FILE_NAME = "allocator.meta";
+
+    private static final int MAGIC = 0x4F48414C;
+    private static final int VERSION = 3;
+    private static final long NO_DEADLINE = 0;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int VALID_OFFSET = 8;
+    private static final int CHECKSUM_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private final long sequence;
+    private final int nextArenaId;
+    private final int currentArena;
+    private final List<ArenaRecord> arenas;
+    private final List<BlockRecord> blocks;
+
+    record ArenaRecord(String file, long size, long offset) {
+    }
+
+    record BlockRecord(int arena, long offset, long size, boolean root, String name,
+                       String fullClassName, int codec, long rawSize, long expiresAt, int[] links) {
+    }
+
+    static void write(Path file, long sequence, int nextArenaId, List<MappedArena> arenas, Arena current,
+                      MemoryBlockStorage storage, ExpiryWheel expiryWheel) throws IOException {
+        final var now = System.currentTimeMillis();
+        final var blocks = storage.stream().filter(block -> !block.isDeleted()).toList();
+        final var positions = new HashMap<MemoryBlock, Integer>();
+
+        for (int i = 0; i < blocks.size(); i++)
+            positions.put(blocks.get(i), i);
+
+        try (OffHeapOutputStream body = new OffHeapOutputStream(SERIALIZATION_BUFFER_SIZE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(body))) {
+
+            out.writeLong(sequence);
+            out.writeInt(nextArenaId);
+            out.writeInt(arenas.indexOf(current));
+            out.writeInt(arenas.size());
+
+            for (MappedArena arena : arenas) {
+                out.writeUTF(arena.getFile().getFileName().toString());
+                out.writeLong(arena.getSize());
+                out.writeLong(arena.getOffset());
+            }
+
+            out.writeInt(blocks.size());
+
+            for (MemoryBlock block : blocks) {
+                final var arena = block.isRoot() ? -1 : arenaOf(arenas, block.getAddress());
+                final var links = block.getLinks().stream()
+                        .map(positions::get)
+                        .filter(Objects::nonNull)
+                        .toList();
+                final var remaining = expiryWheel.remaining(block.handle());
+
+                out.writeInt(arena);
+                out.writeLong(arena < 0 ? 0 : block.getAddress() - arenas.get(arena).getAddress());
+                out.writeLong(block.getSize());
+                out.writeBoolean(block.isRoot());
+                out.writeBoolean(block.getName() != null);
+
+                if (block.getName() != null)
+                    out.writeUTF(block.getName());
+
+                out.writeUTF(block.getFullClassName() == null ? "" : block.getFullClassName());
+                out.writeInt(block.getCodec());
+                out.writeLong(block.getRawSize());
+                out.writeLong(remaining == null ? NO_DEADLINE : now + remaining.toMillis());
+                out.writeInt(links.size());
+
+                for (int link : links)
+                    out.writeInt(link);
+            }
+
+            out.flush();
+            writeFile(file, body);
+        }
+
+        log.info("Saved {} blocks in {} arenas", blocks.size(), arenas.size());
+    }
+
+    /**
+     * @return the snapshot or null if the file is missing, corrupted or was not closed cleanly
+     */
+    static ArenaSnapshot read(Path file) throws IOException {
+        if (!Files.exists(file))
+            return null;
+
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            if (channel.size() < HEADER_SIZE) {
+                log.warn("Metadata file {} is truncated", file);
+                return null;
+            }
+
+            buffer = channel.map(READ_WRITE, 0, channel.size());
+        }
+
+        try {
+            final var address = MappedArena.addressOf(buffer);
+            final var length = UNSAFE.getLong(address + LENGTH_OFFSET);
+            final var version = UNSAFE.getInt(address + VERSION_OFFSET);
+
+            // Version 1 lacks raw sizes of blocks and version 2 lacks deadlines, they are read as having
+            // no compressed blocks and no expiring ones
+            if (UNSAFE.getInt(address + MAGIC_OFFSET) != MAGIC || version < 1 || version > VERSION
+                    || length < 0 || length != buffer.capacity() - HEADER_SIZE) {
+                log.warn("Metadata file {} has an unknown format", file);
+                return null;
+            }
+
+            if (UNSAFE.getInt(address + VALID_OFFSET) == 0) {
+                log.warn("Allocator was stopped in the middle of a checkpoint, persisted data is discarded");
+                return null;
+            }
+
+            if (UNSAFE.getLong(address + CHECKSUM_OFFSET) != checksum(buffer, (int) length)) {
+                log.warn("Metadata file {} is corrupted, persisted data is discarded", file);
+                return null;
+            }
+
+            // The arenas keep the blocks of the file until the next checkpoint, so it stays valid after loading
+            return parse(new DataInputStream(new BufferedInputStream(
+                    new OffHeapInputStream(address + HEADER_SIZE, length))), version);
+        } finally {
+            MappedArena.unmap(buffer);
+        }
+    }
+
+    /**
+     * Marks the file as not to be loaded, its blocks are about to be overwritten.
+     */
+    static void invalidate(Path file) throws IOException {
+        if (!Files.exists(file))
+            return;
+
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            if (channel.size() < HEADER_SIZE)
+                return;
+
+            final var buffer = channel.map(READ_WRITE, 0, HEADER_SIZE);
+
+            try {
+                UNSAFE.putInt(MappedArena.addressOf(buffer) + VALID_OFFSET, 0);
+                buffer.force();
+            } finally {
+                MappedArena.unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * Registers persisted blocks in the storage. Gaps between them become free space.
+     * <p>
+     * The storages keep their indices in process memory, heap maps or native tables, so they can not be mapped
+     * from the file and are rebuilt from the block headers instead: the cost is linear in the number of blocks
+     * and no payload page is touched, the arenas load them lazily on first access. Blocks are put back at their
+     * own addresses without free space lookups. Deadlines passed while the allocator was stopped are due at once.
+     */
+    void restore(List<? extends Arena> openedArenas, MemoryBlockStorage storage, ExpiryWheel expiryWheel) {
+        final var now = System.currentTimeMillis();
+        final var restored = new MemoryBlock[blocks.size()];
+
+        for (int i = 0; i < restored.length; i++) {
+            final var record = blocks.get(i);
+
+            restored[i] = record.root() ? storage.getRootBlock() : storage.insertAt(MemoryBlock.builder()
+                    .address(openedArenas.get(record.arena()).getAddress() + record.offset())
+                    .size(record.size())
+                    .name(record.name())
+                    .links(new ArrayList<>())
+                    .fullClassName(record.fullClassName())
+                    .codec(record.codec())
+                    .rawSize(record.rawSize())
+                    .build());
+
+            if (record.expiresAt() != NO_DEADLINE)
+                expiryWheel.schedule(restored[i].handle(), Duration.ofMillis(Math.max(0, record.expiresAt() - now)));
+        }
+
+        for (int i = 0; i < restored.length; i++)
+            for (int link : blocks.get(i).links())
+                storage.link(restored[i], restored[link]);
+
+        for (int i = 0; i < openedArenas.size(); i++) {
+            final var arena = openedArenas.get(i);
+            final var arenaIndex = i;
+            long cursor = 0;
+
+            final var used = blocks.stream()
+                    .filter(record -> record.arena() == arenaIndex)
+                    .sorted(Comparator.comparingLong(BlockRecord::offset))
+                    .toList();
+
+            for (BlockRecord record : used) {
+                if (record.offset() > cursor)
+                    storage.addFreeSpace(arena.getAddress() + cursor, record.offset() - cursor);
+
+                cursor = record.offset() + record.size();
+            }
+
+            if (arena.getOffset() > cursor)
+                storage.addFreeSpace(arena.getAddress() + cursor, arena.getOffset() - cursor);
+        }
+    }
+
+    private static ArenaSnapshot parse(DataInputStream in, int version) throws IOException {
+        final var sequence = in.readLong();
+        final var nextArenaId = in.readInt();
+        final var currentArena = in.readInt();
+        final var arenas = new ArrayList<ArenaRecord>();
+
+        for (int i = in.readInt(); i > 0; i--)
+            arenas.add(new ArenaRecord(in.readUTF(), in.readLong(), in.readLong()));
+
+        final var blockCount = in.readInt();
+        final var blocks = new ArrayList<BlockRecord>(blockCount);
+
+        for (int i = 0; i < blockCount; i++) {
+            final var arena = in.readInt();
+            final var offset = in.readLong();
+            final var size = in.readLong();
+            final var root = in.readBoolean();
+            final var name = in.readBoolean() ? in.readUTF() : null;
+            final var fullClassName = in.readUTF();
+            final var codec = in.readInt();
+            final var rawSize = version < 2 ? 0 : in.readLong();
+            final var expiresAt = version < 3 ? NO_DEADLINE : in.readLong();
+            final var links = new int[in.readInt()];
+
+            for (int j = 0; j < links.length; j++)
+                links[j] = in.readInt();
+
+            blocks.add(new BlockRecord(arena, offset, size, root, name, fullClassName, codec, rawSize, expiresAt,
+                    links));
+        }
+
+        return new ArenaSnapshot(sequence, nextArenaId, currentArena, arenas, blocks);
+    }
+
+    private static void writeFile(Path file, OffHeapOutputStream body) throws IOException {
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        final var buffer = MappedArena.map(temporary, HEADER_SIZE + body.size());
+
+        try {
+            final var address = MappedArena.addressOf(buffer);
+
+            body.copyTo(address + HEADER_SIZE);
+
+            UNSAFE.putInt(address + MAGIC_OFFSET, MAGIC);
+            UNSAFE.putInt(address + VERSION_OFFSET, VERSION);
+            UNSAFE.putInt(address + VALID_OFFSET, 1);
+            UNSAFE.putLong(address + CHECKSUM_OFFSET, checksum(buffer, (int) body.size()));
+            UNSAFE.putLong(address + LENGTH_OFFSET, body.size());
+
+            buffer.force();
+        } finally {
+            MappedArena.unmap(buffer);
+        }
+
+        Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static long checksum(MappedByteBuffer buffer, int length) {
+        final var crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, length));
+
+        return crc.getValue();
+    }
+
+    private static int arenaOf(List<MappedArena> arenas, long address) {
+        for (int i = 0; i < arenas.size(); i++)
+            if (arenas.get(i).contains(address))
+                return i;
+
+        throw new IllegalStateException("Block at " + address + " is outside of all arenas");
+    }
+}
@@ -0,0 +1,80 @@
+package ru.otus.offheap.arena;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Arena backed by a memory-mapped file, so its contents survive a restart.
+ * Pages are loaded by the OS on first access, reopening does not read the data.
+ */
+public class MappedArena extends Arena {
+
+    private static final long BUFFER_ADDRESS_OFFSET = bufferAddressOffset();
+
+    @Getter
+    private final Path file;
+    private final MappedByteBuffer buffer;
+
+    private MappedArena(Path file, MappedByteBuffer buffer, long size) {
+        super(addressOf(buffer), size);
+
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    public static MappedArena open(Path file, long size) {
+        if (size + GUARD_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Mapped arena can not exceed 2 GB, requested " + size);
+
+        return new MappedArena(file, map(file, size + GUARD_SIZE), size);
+    }
+
+    @SneakyThrows
+    public static MappedByteBuffer map(Path file, long size) {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            return channel.map(READ_WRITE, 0, size);
+        }
+    }
+
+    public static long addressOf(Buffer buffer) {
+        return UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+    }
+
+    public static void unmap(MappedByteBuffer buffer) {
+        UNSAFE.invokeCleaner(buffer);
+    }
+
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    @SneakyThrows
+    protected void release() {
+        unmap(buffer);
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    protected void close() {
+        flush();
+        unmap(buffer);
+    }
+
+    @SneakyThrows
+    private static long bufferAddressOffset() {
+        return UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    }
+}
@@ -0,0 +1,19 @@
+package ru.otus.offheap.arena;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+public class NativeArena extends Arena {
+
+    private NativeArena(long address, long size) {
+        super(address, size);
+    }
+
+    public static NativeArena allocate(long size) {
+        return new NativeArena(UNSAFE.allocateMemory(size + GUARD_SIZE), size);
+    }
+
+    @Override
+    protected void release() {
+        UNSAFE.freeMemory(getAddress());
+    }
+}
@@ -0,0 +1,10 @@
+package ru.otus.offheap.cache;
+
+public record CacheStats(long hits, long misses, long evictions, long rejections) {
+
+    public double hitRatio() {
+        final var requests = hits + misses;
+
+        return requests == 0 ? 1 : (double) hits / requests;
+    }
+}
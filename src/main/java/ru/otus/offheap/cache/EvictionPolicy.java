@@ -0,0 +1,15 @@
+package ru.otus.offheap.cache;
+
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry.
+     */
+    LRU,
+
+    /**
+     * New entries pass a small LRU window, then enter the main LRU region only if they are accessed
+     * more often than the entry they would evict, as estimated by a frequency sketch.
+     */
+    TINY_LFU
+}
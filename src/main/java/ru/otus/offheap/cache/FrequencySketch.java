@@ -0,0 +1,81 @@
+package ru.otus.offheap.cache;
+
+import ru.otus.offheap.collection.OffHeapLongArray;
+
+/**
+ * Count-min sketch of 4-bit counters packed sixteen to a long, kept in an off-heap array.
+ * Each key is counted in four counters; the estimate is the smallest of them. After ten increments
+ * per table slot all counters are halved, so the sketch follows changes of popularity.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final OffHeapLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(OffHeapLongArray table) {
+        if (Long.bitCount(table.length()) != 1)
+            throw new IllegalArgumentException("Sketch table length must be a power of two: " + table.length());
+
+        this.table = table;
+        this.tableMask = (int) table.length() - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, table.length() * 10);
+    }
+
+    int frequency(int hash) {
+        var frequency = MAX_COUNT;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            final var position = position(hash, i);
+
+            frequency = Math.min(frequency, counter(table.get(position >>> 4), (int) position & 15));
+        }
+
+        return frequency;
+    }
+
+    void increment(int hash) {
+        var added = false;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            final var position = position(hash, i);
+            final var index = position >>> 4;
+            final var word = table.get(index);
+            final var shift = ((int) position & 15) << 2;
+
+            if (counter(word, (int) position & 15) < MAX_COUNT) {
+                table.set(index, word + (1L << shift));
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+
+    private void reset() {
+        table.replaceAll(word -> (word >>> 1) & RESET_MASK);
+
+        additions /= 2;
+    }
+
+    /**
+     * @return table index in the high bits and the counter within the word in the lowest four bits
+     */
+    private long position(int hash, int i) {
+        var mixed = (hash + SEEDS[i]) * SEEDS[i];
+        mixed ^= mixed >>> 32;
+
+        return mixed & (((long) tableMask << 4) | 15);
+    }
+
+    private static int counter(long word, int counter) {
+        return (int) (word >>> (counter << 2)) & MAX_COUNT;
+    }
+}
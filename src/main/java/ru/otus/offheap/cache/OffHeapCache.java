@@ -0,0 +1,389 @@
+package ru.otus.offheap.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.otus.offheap.collection.OffHeapCollections;
+import ru.otus.offheap.collection.OffHeapLongArray;
+import ru.otus.offheap.collection.OffHeapLongLongHashMap;
+import ru.otus.offheap.collection.OffHeapRecordList;
+import ru.otus.offheap.exception.NotEnoughMemoryException;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.io.Serializable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Key-value cache holding at most {@code capacity} bytes of entries. Every entry is a pair of allocator
+ * blocks, one with the key and one with the value; entries over the capacity are evicted by the
+ * {@link EvictionPolicy}, and so are the least recently used ones when the allocator itself runs out of memory.
+ * <p>
+ * The bookkeeping is off-heap too: entry records with the recency lists, the hash index and the frequency
+ * sketch are off-heap collections. Keys with equal hash codes are chained; a lookup compares the hash kept
+ * in the record and decodes only the key block to tell them apart, the value is decoded on a hit only.
+ */
+@Slf4j
+public class OffHeapCache<K extends Serializable, V extends Serializable> {
+
+    private static final int NIL = -1;
+    private static final int WINDOW = 0;
+    private static final int MAIN = 1;
+    private static final double WINDOW_RATIO = 0.01;
+    private static final int MIN_SKETCH_SIZE = 64;
+
+    // Entry record layout
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int SIZE = 16;
+    private static final int HASH = 24;
+    private static final int SEGMENT = 28;
+    private static final int PREVIOUS = 32;
+    private static final int NEXT = 36;
+    private static final int CHAIN = 40;
+    private static final int RECORD_SIZE = 48;
+
+    private final AllocatorService allocatorService;
+    private final MemoryBlockStorage blockStorage;
+    private final long capacity;
+    private final long windowCapacity;
+    private final EvictionPolicy policy;
+    private final OffHeapRecordList entries;
+    private final OffHeapLongLongHashMap buckets;
+    private final OffHeapLongArray sketchTable;
+    private final FrequencySketch sketch;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final int[] heads = {NIL, NIL};
+    private final int[] tails = {NIL, NIL};
+    private final long[] weights = new long[2];
+
+    private int freeEntry = NIL;
+    private int count;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    public OffHeapCache(OffHeapCollections collections, AllocatorService allocatorService, MemoryBlockStorage blockStorage,
+                        long capacity, EvictionPolicy policy, int expectedEntries) {
+        this.allocatorService = allocatorService;
+        this.blockStorage = blockStorage;
+        this.capacity = capacity;
+        this.windowCapacity = policy == EvictionPolicy.TINY_LFU ? (long) (capacity * WINDOW_RATIO) : 0;
+        this.policy = policy;
+        this.entries = collections.recordList(RECORD_SIZE);
+        this.buckets = collections.longLongMap(expectedEntries);
+
+        if (policy == EvictionPolicy.TINY_LFU) {
+            sketchTable = collections.longArray(Integer.highestOneBit(Math.max(MIN_SKETCH_SIZE, expectedEntries) - 1) << 1);
+            sketch = new FrequencySketch(sketchTable);
+        } else {
+            sketchTable = null;
+            sketch = null;
+        }
+    }
+
+    /**
+     * @return the value or null if the key is not cached
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        lock.lock();
+
+        try {
+            final var hash = key.hashCode();
+
+            if (sketch != null)
+                sketch.increment(hash);
+
+            final var index = find(key, hash);
+
+            if (index == NIL) {
+                misses++;
+                return null;
+            }
+
+            hits++;
+            moveToHead(index);
+
+            return (V) allocatorService.get(entries.getLong(index, VALUE)).get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+
+        try {
+            final var hash = key.hashCode();
+
+            if (sketch != null)
+                sketch.increment(hash);
+
+            final var found = find(key, hash);
+
+            if (found != NIL)
+                removeEntry(found);
+
+            final var keyHandle = store(key);
+            final long valueHandle;
+
+            try {
+                valueHandle = store(value);
+            } catch (NotEnoughMemoryException e) {
+                allocatorService.free(keyHandle);
+                throw e;
+            }
+
+            final var size = sizeOf(keyHandle) + sizeOf(valueHandle);
+
+            if (size > capacity) {
+                allocatorService.free(keyHandle);
+                allocatorService.free(valueHandle);
+                rejections++;
+                return;
+            }
+
+            final var index = newEntry(keyHandle, valueHandle, size, hash);
+
+            linkFirst(index, policy == EvictionPolicy.TINY_LFU ? WINDOW : MAIN);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the key was cached
+     */
+    public boolean remove(K key) {
+        lock.lock();
+
+        try {
+            final var found = find(key, key.hashCode());
+
+            if (found != NIL)
+                removeEntry(found);
+
+            return found != NIL;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return bytes taken by the cached entries
+     */
+    public long weight() {
+        return weights[WINDOW] + weights[MAIN];
+    }
+
+    public CacheStats stats() {
+        lock.lock();
+
+        try {
+            return new CacheStats(hits, misses, evictions, rejections);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+
+        try {
+            for (int segment : new int[]{WINDOW, MAIN})
+                while (heads[segment] != NIL)
+                    removeEntry(heads[segment]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees all entries and the bookkeeping, the cache must not be used afterwards.
+     */
+    public void free() {
+        clear();
+
+        entries.free();
+        buckets.free();
+
+        if (sketchTable != null)
+            sketchTable.free();
+    }
+
+    private void evict() {
+        if (policy == EvictionPolicy.TINY_LFU) {
+            while (weights[WINDOW] > windowCapacity) {
+                final var candidate = tails[WINDOW];
+
+                unlink(candidate);
+                linkFirst(candidate, MAIN);
+
+                // The candidate is admitted only if it is more popular than every entry it pushes out
+                while (weight() > capacity && tails[MAIN] != candidate) {
+                    final var victim = tails[MAIN];
+
+                    if (sketch.frequency(entries.getInt(candidate, HASH)) > sketch.frequency(entries.getInt(victim, HASH))) {
+                        removeEntry(victim);
+                        evictions++;
+                    } else {
+                        removeEntry(candidate);
+                        rejections++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        while (weight() > capacity) {
+            removeEntry(tails[MAIN] != NIL ? tails[MAIN] : tails[WINDOW]);
+            evictions++;
+        }
+    }
+
+    /**
+     * Stores the key or the value, evicting cached entries while the allocator has no room for it.
+     */
+    private long store(Serializable obj) {
+        while (true) {
+            try {
+                return allocatorService.put(obj);
+            } catch (NotEnoughMemoryException e) {
+                final var victim = tails[MAIN] != NIL ? tails[MAIN] : tails[WINDOW];
+
+                if (victim == NIL)
+                    throw e;
+
+                log.debug("Allocator is full, evicting a cache entry");
+
+                removeEntry(victim);
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * @return index of the entry record or {@link #NIL} if the key is not cached
+     */
+    private int find(K key, int hash) {
+        for (var index = (int) buckets.getOrDefault(hash, NIL); index != NIL; index = entries.getInt(index, CHAIN))
+            if (entries.getInt(index, HASH) == hash && key.equals(allocatorService.get(entries.getLong(index, KEY)).get(0)))
+                return index;
+
+        return NIL;
+    }
+
+    private int newEntry(long keyHandle, long valueHandle, long size, int hash) {
+        final int index;
+
+        if (freeEntry != NIL) {
+            index = freeEntry;
+            freeEntry = entries.getInt(index, CHAIN);
+        } else {
+            index = entries.add();
+        }
+
+        entries.putLong(index, KEY, keyHandle);
+        entries.putLong(index, VALUE, valueHandle);
+        entries.putLong(index, SIZE, size);
+        entries.putInt(index, HASH, hash);
+        entries.putInt(index, CHAIN, (int) buckets.getOrDefault(hash, NIL));
+        buckets.put(hash, index);
+        count++;
+
+        return index;
+    }
+
+    private void removeEntry(int index) {
+        allocatorService.free(entries.getLong(index, KEY));
+        allocatorService.free(entries.getLong(index, VALUE));
+
+        unlink(index);
+        unchain(index);
+
+        entries.putInt(index, CHAIN, freeEntry);
+        freeEntry = index;
+        count--;
+    }
+
+    private void unchain(int index) {
+        final var hash = entries.getInt(index, HASH);
+        final var next = entries.getInt(index, CHAIN);
+        var previous = (int) buckets.getOrDefault(hash, NIL);
+
+        if (previous == index) {
+            if (next == NIL)
+                buckets.remove(hash);
+            else
+                buckets.put(hash, next);
+
+            return;
+        }
+
+        while (entries.getInt(previous, CHAIN) != index)
+            previous = entries.getInt(previous, CHAIN);
+
+        entries.putInt(previous, CHAIN, next);
+    }
+
+    private void linkFirst(int index, int segment) {
+        final var head = heads[segment];
+
+        entries.putInt(index, SEGMENT, segment);
+        entries.putInt(index, PREVIOUS, NIL);
+        entries.putInt(index, NEXT, head);
+
+        if (head != NIL)
+            entries.putInt(head, PREVIOUS, index);
+        else
+            tails[segment] = index;
+
+        heads[segment] = index;
+        weights[segment] += entries.getLong(index, SIZE);
+    }
+
+    private void unlink(int index) {
+        final var segment = entries.getInt(index, SEGMENT);
+        final var previous = entries.getInt(index, PREVIOUS);
+        final var next = entries.getInt(index, NEXT);
+
+        if (previous != NIL)
+            entries.putInt(previous, NEXT, next);
+        else
+            heads[segment] = next;
+
+        if (next != NIL)
+            entries.putInt(next, PREVIOUS, previous);
+        else
+            tails[segment] = previous;
+
+        weights[segment] -= entries.getLong(index, SIZE);
+    }
+
+    private void moveToHead(int index) {
+        final var segment = entries.getInt(index, SEGMENT);
+
+        if (heads[segment] == index)
+            return;
+
+        unlink(index);
+        linkFirst(index, segment);
+    }
+
+    private long sizeOf(long handle) {
+        final var stampedLock = blockStorage.getLock();
+        final var stamp = stampedLock.readLock();
+
+        try {
+            return blockStorage.getByHandle(handle).getSize();
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package ru.otus.offheap.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Compact reflection based codec for records, POJOs and primitive arrays.
+ * Object graphs must be trees: shared references are written twice and cycles are not supported.
+ * Values of JDK classes other than strings, boxed primitives and primitive arrays fall back to Java serialization.
+ */
+public class BinaryCodec implements Codec<Object> {
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte BOOLEAN_ARRAY = 10;
+    private static final byte BYTE_ARRAY = 11;
+    private static final byte SHORT_ARRAY = 12;
+    private static final byte CHAR_ARRAY = 13;
+    private static final byte INT_ARRAY = 14;
+    private static final byte LONG_ARRAY = 15;
+    private static final byte FLOAT_ARRAY = 16;
+    private static final byte DOUBLE_ARRAY = 17;
+    private static final byte ENUM = 18;
+    private static final byte OBJECT = 19;
+    private static final byte SERIALIZED = 20;
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            return collectFields(type);
+        }
+    };
+
+    private static final ClassValue<Constructor<?>> RECORD_CONSTRUCTORS = new ClassValue<>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                var constructor = type.getDeclaredConstructor(Arrays.stream(type.getRecordComponents())
+                        .map(RecordComponent::getType)
+                        .toArray(Class[]::new));
+                constructor.setAccessible(true);
+
+                return constructor;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    @Override
+    public void encode(Object obj, OutputStream out) throws IOException {
+        var data = new DataOutputStream(new BufferedOutputStream(out));
+
+        writeValue(data, obj, new HashMap<>());
+        data.flush();
+    }
+
+    @Override
+    public Object decode(InputStream in) throws IOException {
+        return readValue(new DataInputStream(new BufferedInputStream(in)), new ArrayList<>());
+    }
+
+    private void writeValue(DataOutputStream out, Object value, Map<Class<?>, Integer> classes) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean v) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(v);
+        } else if (value instanceof Byte v) {
+            out.writeByte(BYTE);
+            out.writeByte(v);
+        } else if (value instanceof Short v) {
+            out.writeByte(SHORT);
+            out.writeShort(v);
+        } else if (value instanceof Character v) {
+            out.writeByte(CHAR);
+            out.writeChar(v);
+        } else if (value instanceof Integer v) {
+            out.writeByte(INT);
+            out.writeInt(v);
+        } else if (value instanceof Long v) {
+            out.writeByte(LONG);
+            out.writeLong(v);
+        } else if (value instanceof Float v) {
+            out.writeByte(FLOAT);
+            out.writeFloat(v);
+        } else if (value instanceof Double v) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(v);
+        } else if (value instanceof String v) {
+            out.writeByte(STRING);
+            writeString(out, v);
+        } else if (value instanceof boolean[] v) {
+            out.writeByte(BOOLEAN_ARRAY);
+            writeLength(out, v.length);
+
+            for (boolean b : v)
+                out.writeBoolean(b);
+        } else if (value instanceof byte[] v) {
+            out.writeByte(BYTE_ARRAY);
+            writeLength(out, v.length);
+            out.write(v);
+        } else if (value instanceof short[] v) {
+            out.writeByte(SHORT_ARRAY);
+            writeLength(out, v.length);
+
+            for (short s : v)
+                out.writeShort(s);
+        } else if (value instanceof char[] v) {
+            out.writeByte(CHAR_ARRAY);
+            writeLength(out, v.length);
+
+            for (char c : v)
+                out.writeChar(c);
+        } else if (value instanceof int[] v) {
+            out.writeByte(INT_ARRAY);
+            writeLength(out, v.length);
+
+            for (int i : v)
+                out.writeInt(i);
+        } else if (value instanceof long[] v) {
+            out.writeByte(LONG_ARRAY);
+            writeLength(out, v.length);
+
+            for (long l : v)
+                out.writeLong(l);
+        } else if (value instanceof float[] v) {
+            out.writeByte(FLOAT_ARRAY);
+            writeLength(out, v.length);
+
+            for (float f : v)
+                out.writeFloat(f);
+        } else if (value instanceof double[] v) {
+            out.writeByte(DOUBLE_ARRAY);
+            writeLength(out, v.length);
+
+            for (double d : v)
+                out.writeDouble(d);
+        } else if (value instanceof Enum<?> v) {
+            out.writeByte(ENUM);
+            writeClass(out, v.getDeclaringClass(), classes);
+            writeLength(out, v.ordinal());
+        } else if (isPlainObject(value.getClass())) {
+            out.writeByte(OBJECT);
+            writeClass(out, value.getClass(), classes);
+
+            for (Field field : FIELDS.get(value.getClass()))
+                writeValue(out, getField(field, value), classes);
+        } else if (value instanceof Serializable) {
+            var baos = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+
+            out.writeByte(SERIALIZED);
+            writeLength(out, baos.size());
+            baos.writeTo(out);
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in, List<Class<?>> classes) throws IOException {
+        final var tag = in.readByte();
+
+        return switch (tag) {
+            case NULL -> null;
+            case BOOLEAN -> in.readBoolean();
+            case BYTE -> in.readByte();
+            case SHORT -> in.readShort();
+            case CHAR -> in.readChar();
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case FLOAT -> in.readFloat();
+            case DOUBLE -> in.readDouble();
+            case STRING -> readString(in);
+            case BOOLEAN_ARRAY -> {
+                var v = new boolean[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readBoolean();
+
+                yield v;
+            }
+            case BYTE_ARRAY -> {
+                var v = new byte[readLength(in)];
+                in.readFully(v);
+
+                yield v;
+            }
+            case SHORT_ARRAY -> {
+                var v = new short[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readShort();
+
+                yield v;
+            }
+            case CHAR_ARRAY -> {
+                var v = new char[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readChar();
+
+                yield v;
+            }
+            case INT_ARRAY -> {
+                var v = new int[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readInt();
+
+                yield v;
+            }
+            case LONG_ARRAY -> {
+                var v = new long[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readLong();
+
+                yield v;
+            }
+            case FLOAT_ARRAY -> {
+                var v = new float[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readFloat();
+
+                yield v;
+            }
+            case DOUBLE_ARRAY -> {
+                var v = new double[readLength(in)];
+
+                for (int i = 0; i < v.length; i++)
+                    v[i] = in.readDouble();
+
+                yield v;
+            }
+            case ENUM -> readClass(in, classes).getEnumConstants()[readLength(in)];
+            case OBJECT -> readObject(in, readClass(in, classes), classes);
+            case SERIALIZED -> {
+                var bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    yield ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            default -> throw new StreamCorruptedException("Unknown value tag: " + tag);
+        };
+    }
+
+    private Object readObject(DataInputStream in, Class<?> type, List<Class<?>> classes) throws IOException {
+        final var fields = FIELDS.get(type);
+
+        try {
+            if (type.isRecord()) {
+                var args = new Object[fields.length];
+
+                for (int i = 0; i < fields.length; i++)
+                    args[i] = readValue(in, classes);
+
+                return RECORD_CONSTRUCTORS.get(type).newInstance(args);
+            }
+
+            var instance = UNSAFE.allocateInstance(type);
+
+            for (Field field : fields)
+                field.set(instance, readValue(in, classes));
+
+            return instance;
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Could not instantiate " + type.getName(), e);
+        }
+    }
+
+    private void writeClass(DataOutputStream out, Class<?> type, Map<Class<?>, Integer> classes) throws IOException {
+        var index = classes.get(type);
+
+        if (index != null) {
+            writeLength(out, index);
+            return;
+        }
+
+        index = classes.size();
+        classes.put(type, index);
+
+        writeLength(out, index);
+        writeString(out, type.getName());
+    }
+
+    private Class<?> readClass(DataInputStream in, List<Class<?>> classes) throws IOException {
+        final var index = readLength(in);
+
+        if (index < classes.size())
+            return classes.get(index);
+
+        final var name = readString(in);
+
+        try {
+            var type = Class.forName(name, true, classLoader());
+            classes.add(type);
+
+            return type;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(UTF_8);
+
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeLength(DataOutputStream out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+
+        out.writeByte(length);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            final var b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return length;
+        }
+
+        throw new StreamCorruptedException("Malformed length");
+    }
+
+    private static Object getField(Field field, Object target) throws IOException {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static boolean isPlainObject(Class<?> type) {
+        return !type.isArray()
+                && !type.isInterface()
+                && !type.isHidden()
+                && !type.getName().startsWith("java.")
+                && !type.getName().startsWith("javax.")
+                && !type.getName().startsWith("sun.");
+    }
+
+    private static Field[] collectFields(Class<?> type) {
+        final var fields = new ArrayList<Field>();
+
+        if (type.isRecord()) {
+            for (RecordComponent component : type.getRecordComponents()) {
+                try {
+                    fields.add(type.getDeclaredField(component.getName()));
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        } else {
+            final var hierarchy = new ArrayDeque<Class<?>>();
+
+            for (Class<?> current = type; current != null && isPlainObject(current); current = current.getSuperclass())
+                hierarchy.push(current);
+
+            hierarchy.forEach(current -> Arrays.stream(current.getDeclaredFields())
+                    .filter(field -> (field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0)
+                    .forEach(fields::add));
+        }
+
+        fields.forEach(field -> field.setAccessible(true));
+
+        return fields.toArray(Field[]::new);
+    }
+
+    private static ClassLoader classLoader() {
+        final var contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        return contextClassLoader != null ? contextClassLoader : BinaryCodec.class.getClassLoader();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.otus.offheap.codec;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.io.OffHeapOutputStream;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Deflate stage between codecs and arenas. An encoded payload is compressed if its class is listed in
+ * {@code compressed-classes} or it takes at least {@code compression-threshold} bytes, and is kept compressed
+ * only if that makes it smaller. Compression is off unless one of the two is configured.
+ */
+@Component
+@RequiredArgsConstructor
+public class BlockCompressor {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final AllocatorProperties properties;
+
+    private Set<String> classNames = Set.of();
+
+    @PostConstruct
+    private void init() {
+        classNames = Set.copyOf(properties.getCompressedClasses());
+    }
+
+    public boolean isEnabled() {
+        return properties.getCompressionThreshold() > 0 || !classNames.isEmpty();
+    }
+
+    public boolean accepts(Class<?> type, long size) {
+        return classNames.contains(type.getName())
+                || (properties.getCompressionThreshold() > 0 && size >= properties.getCompressionThreshold());
+    }
+
+    /**
+     * Appends the compressed payload to the target.
+     *
+     * @return false, with the target left as it was, if compression does not make the payload smaller
+     */
+    public boolean compress(OffHeapOutputStream payload, OffHeapOutputStream target) throws IOException {
+        final var start = target.size();
+        final var deflater = new Deflater(properties.getCompressionLevel());
+
+        try {
+            // Not closed: that would close the target
+            final var out = new DeflaterOutputStream(target, deflater, BUFFER_SIZE);
+
+            payload.toInputStream().transferTo(out);
+            out.finish();
+        } finally {
+            deflater.end();
+        }
+
+        if (target.size() - start < payload.size())
+            return true;
+
+        target.truncate(start);
+
+        return false;
+    }
+
+    /**
+     * @return stream inflating the payload as it is read, its closing releases the inflater
+     */
+    public InputStream inflate(InputStream payload) {
+        final var inflater = new Inflater();
+
+        return new InflaterInputStream(payload, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package ru.otus.offheap.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface Codec<T> {
+
+    void encode(T obj, OutputStream out) throws IOException;
+
+    T decode(InputStream in) throws IOException;
+}
@@ -0,0 +1,106 @@
+package ru.otus.offheap.codec;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Codecs by the id written into block headers. Persisted blocks outlive the process, so ids must not depend on
+ * the order codecs are registered in: built-in codecs have fixed ids and a custom codec gets one derived from
+ * its class name. A restarted allocator decodes its blocks once the same codec classes are registered again.
+ * <p>
+ * One id stands for one codec, so a codec class is registered with a single instance. Anonymous, local and
+ * hidden classes, lambdas included, are named by the compiler or the JVM and may be named differently by
+ * the next build, so they are rejected.
+ */
+@Component
+@RequiredArgsConstructor
+public class CodecRegistry {
+
+    public static final int JAVA_SERIALIZATION = 0;
+    public static final int BINARY = 1;
+    public static final int RAW = 2;
+    public static final int CHUNK = 3;
+
+    private static final int CUSTOM = 1 << 30;
+
+    private final AllocatorProperties properties;
+
+    private final Map<Integer, Codec<?>> codecs = new ConcurrentHashMap<>(Map.of(
+            JAVA_SERIALIZATION, new JavaSerializationCodec(),
+            BINARY, new BinaryCodec(),
+            RAW, new RawCodec(),
+            CHUNK, new RawCodec()));
+    private final Map<Class<?>, Integer> classCodecs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        properties.getBinaryCodecClasses().forEach(className -> classCodecs.put(loadClass(className), BINARY));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the codec class has no stable name
+     * @throws IllegalStateException if the id of the codec is taken by another codec class, or another instance
+     * of the codec class not equal to this one is registered
+     */
+    public synchronized <T> void register(Class<T> type, Codec<? super T> codec) {
+        final var codecClass = codec.getClass();
+
+        if (codecClass.isAnonymousClass() || codecClass.isLocalClass() || codecClass.isHidden())
+            throw new IllegalArgumentException("Codec " + codecClass.getName()
+                    + " has no stable class name, its id would change between builds");
+
+        final var id = idOf(codecClass);
+        final var registered = codecs.get(id);
+
+        if (registered != null && registered.getClass() != codecClass)
+            throw new IllegalStateException("Codec " + codecClass.getName() + " has the same id as "
+                    + registered.getClass().getName());
+
+        if (registered != null && !registered.equals(codec))
+            throw new IllegalStateException("Another instance of codec " + codecClass.getName()
+                    + " is registered, blocks written by it would be decoded by this one");
+
+        codecs.putIfAbsent(id, codec);
+        classCodecs.put(type, id);
+    }
+
+    public int idFor(Class<?> type) {
+        return classCodecs.getOrDefault(type, JAVA_SERIALIZATION);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Codec<Object> byId(int id) {
+        final var codec = codecs.get(id);
+
+        if (codec == null)
+            throw new IllegalStateException("Codec " + id + " is not registered");
+
+        return (Codec<Object>) codec;
+    }
+
+    /**
+     * @return id of a custom codec, outside of the built-in ids
+     */
+    static int idOf(Class<?> codecClass) {
+        final var crc = new CRC32C();
+        crc.update(codecClass.getName().getBytes(UTF_8));
+
+        return CUSTOM | ((int) crc.getValue() & (CUSTOM - 1));
+    }
+
+    private static Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unknown class configured for binary codec: " + className, e);
+        }
+    }
+}
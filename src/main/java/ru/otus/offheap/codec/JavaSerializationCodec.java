@@ -0,0 +1,30 @@
+package ru.otus.offheap.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+public class JavaSerializationCodec implements Codec<Serializable> {
+
+    @Override
+    public void encode(Serializable obj, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    @Override
+    public Serializable decode(InputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+
+        try {
+            return (Serializable) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ru.otus.offheap.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Payload bytes as they are. Used by blocks written in place, e.g. off-heap collections.
+ */
+public class RawCodec implements Codec<byte[]> {
+
+    @Override
+    public void encode(byte[] obj, OutputStream out) throws IOException {
+        out.write(obj);
+    }
+
+    @Override
+    public byte[] decode(InputStream in) throws IOException {
+        return in.readAllBytes();
+    }
+}
@@ -0,0 +1,114 @@
+package ru.otus.offheap.collection;
+
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.util.function.LongUnaryOperator;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Collection kept in one allocator block and accessed in place. The block is an ordinary unnamed block
+ * attached to the root, so it can be linked and is collected like any other. Compaction and promotion
+ * may move it, so every access resolves its address under the storage lock: reads under the read lock and
+ * in-place writes under the write lock, since a read lock does not invalidate optimistic readers.
+ * <p>
+ * A collection is not thread safe. A growing collection moves to a bigger block and gets a new handle.
+ */
+public abstract class OffHeapCollection {
+
+    private final AllocatorService allocatorService;
+    private final MemoryBlockStorage blockStorage;
+
+    private long handle;
+
+    protected OffHeapCollection(AllocatorService allocatorService, MemoryBlockStorage blockStorage, long bytes) {
+        this.allocatorService = allocatorService;
+        this.blockStorage = blockStorage;
+        this.handle = allocatorService.reserve(bytes);
+    }
+
+    public long handle() {
+        return handle;
+    }
+
+    /**
+     * Frees the block, the collection must not be used afterwards.
+     */
+    public void free() {
+        allocatorService.free(handle);
+    }
+
+    /**
+     * Runs the reading action with the address of the block. The block can not move until the action returns.
+     */
+    protected long read(LongUnaryOperator action) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return action.applyAsLong(blockStorage.getByHandle(handle).getAddress());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs the modifying action with the address of the block. The block is written in place, so the write lock
+     * is taken: optimistic readers of the block are invalidated and other writers are excluded.
+     */
+    protected long write(LongUnaryOperator action) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            return action.applyAsLong(blockStorage.getByHandle(handle).getAddress());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    protected long blockSize() {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return blockStorage.getByHandle(handle).getSize();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Moves the contents to a new block of the given size, the rest of the new block is zeroed.
+     */
+    protected void resize(long bytes) {
+        resize(bytes, (from, fromSize, to) -> UNSAFE.copyMemory(from, to, Math.min(fromSize, bytes)));
+    }
+
+    /**
+     * Moves to a new zeroed block of the given size, the mover transfers the contents.
+     */
+    protected void resize(long bytes, Mover mover) {
+        final var newHandle = allocatorService.reserve(bytes);
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            final var from = blockStorage.getByHandle(handle);
+
+            mover.move(from.getAddress(), from.getSize(), blockStorage.getByHandle(newHandle).getAddress());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        allocatorService.free(handle);
+        handle = newHandle;
+    }
+
+    @FunctionalInterface
+    protected interface Mover {
+
+        void move(long from, long fromSize, long to);
+    }
+}
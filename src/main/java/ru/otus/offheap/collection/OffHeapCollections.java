@@ -0,0 +1,47 @@
+package ru.otus.offheap.collection;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.cache.EvictionPolicy;
+import ru.otus.offheap.cache.OffHeapCache;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.io.Serializable;
+
+/**
+ * Factory of collections stored in allocator blocks.
+ */
+@Component
+@RequiredArgsConstructor
+public class OffHeapCollections {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final AllocatorService allocatorService;
+    private final MemoryBlockStorage blockStorage;
+
+    public OffHeapLongArray longArray(long length) {
+        return new OffHeapLongArray(allocatorService, blockStorage, length);
+    }
+
+    public OffHeapLongLongHashMap longLongMap(int expectedSize) {
+        return new OffHeapLongLongHashMap(allocatorService, blockStorage, expectedSize);
+    }
+
+    public OffHeapIntList intList() {
+        return new OffHeapIntList(allocatorService, blockStorage, DEFAULT_CAPACITY);
+    }
+
+    public OffHeapRecordList recordList(int recordSize) {
+        return new OffHeapRecordList(allocatorService, blockStorage, recordSize, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity bytes of cached entries
+     */
+    public <K extends Serializable, V extends Serializable> OffHeapCache<K, V> cache(long capacity, EvictionPolicy policy,
+                                                                                   int expectedEntries) {
+        return new OffHeapCache<>(this, allocatorService, blockStorage, capacity, policy, expectedEntries);
+    }
+}
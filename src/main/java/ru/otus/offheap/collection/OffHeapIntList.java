@@ -0,0 +1,85 @@
+package ru.otus.offheap.collection;
+
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.util.Objects;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Growable list of ints. The size is kept in the block header, the capacity doubles on growth.
+ */
+public class OffHeapIntList extends OffHeapCollection {
+
+    private static final long HEADER_SIZE = Long.BYTES;
+
+    private int size;
+    private int capacity;
+
+    public OffHeapIntList(AllocatorService allocatorService, MemoryBlockStorage blockStorage, int initialCapacity) {
+        super(allocatorService, blockStorage, bytes(Math.max(initialCapacity, 1)));
+
+        this.capacity = Math.max(initialCapacity, 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(int value) {
+        if (size == capacity) {
+            capacity = Math.multiplyExact(capacity, 2);
+            resize(bytes(capacity));
+        }
+
+        final var index = size++;
+
+        write(address -> {
+            UNSAFE.putInt(address + HEADER_SIZE + (long) index * Integer.BYTES, value);
+            UNSAFE.putInt(address, index + 1);
+            return 0;
+        });
+    }
+
+    public int get(int index) {
+        Objects.checkIndex(index, size);
+
+        return (int) read(address -> UNSAFE.getInt(address + HEADER_SIZE + (long) index * Integer.BYTES));
+    }
+
+    public void set(int index, int value) {
+        Objects.checkIndex(index, size);
+
+        write(address -> {
+            UNSAFE.putInt(address + HEADER_SIZE + (long) index * Integer.BYTES, value);
+            return 0;
+        });
+    }
+
+    public void clear() {
+        size = 0;
+
+        write(address -> {
+            UNSAFE.putInt(address, 0);
+            return 0;
+        });
+    }
+
+    public int[] toArray() {
+        final var result = new int[size];
+
+        read(address -> {
+            for (int i = 0; i < result.length; i++)
+                result[i] = UNSAFE.getInt(address + HEADER_SIZE + (long) i * Integer.BYTES);
+
+            return 0;
+        });
+
+        return result;
+    }
+
+    private static long bytes(int capacity) {
+        return HEADER_SIZE + (long) capacity * Integer.BYTES;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.otus.offheap.collection;
+
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.util.Objects;
+import java.util.function.LongUnaryOperator;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Fixed length array of longs, initially zeroed.
+ */
+public class OffHeapLongArray extends OffHeapCollection {
+
+    private final long length;
+
+    public OffHeapLongArray(AllocatorService allocatorService, MemoryBlockStorage blockStorage, long length) {
+        super(allocatorService, blockStorage, length * Long.BYTES);
+
+        this.length = length;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long get(long index) {
+        Objects.checkIndex(index, length);
+
+        return read(address -> UNSAFE.getLong(address + index * Long.BYTES));
+    }
+
+    public void set(long index, long value) {
+        Objects.checkIndex(index, length);
+
+        write(address -> {
+            UNSAFE.putLong(address + index * Long.BYTES, value);
+            return 0;
+        });
+    }
+
+    public void fill(long value) {
+        write(address -> {
+            for (long i = 0; i < length; i++)
+                UNSAFE.putLong(address + i * Long.BYTES, value);
+
+            return 0;
+        });
+    }
+
+    public void replaceAll(LongUnaryOperator operator) {
+        write(address -> {
+            for (long i = 0; i < length; i++)
+                UNSAFE.putLong(address + i * Long.BYTES, operator.applyAsLong(UNSAFE.getLong(address + i * Long.BYTES)));
+
+            return 0;
+        });
+    }
+
+    public long[] toArray() {
+        final var result = new long[Math.toIntExact(length)];
+
+        read(address -> {
+            for (int i = 0; i < result.length; i++)
+                result[i] = UNSAFE.getLong(address + (long) i * Long.BYTES);
+
+            return 0;
+        });
+
+        return result;
+    }
+}
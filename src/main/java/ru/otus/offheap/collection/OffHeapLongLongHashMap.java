@@ -0,0 +1,206 @@
+package ru.otus.offheap.collection;
+
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Open addressing map from long to long with linear probing. Key 0 marks a free entry, so its value
+ * is kept in the header; removal shifts the following entries back instead of leaving tombstones.
+ * The table doubles when it is filled by three quarters.
+ */
+public class OffHeapLongLongHashMap extends OffHeapCollection {
+
+    private static final long FREE = 0;
+    private static final long ENTRY_SIZE = 2 * Long.BYTES;
+    private static final long HAS_FREE_KEY = 0;
+    private static final long FREE_KEY_VALUE = Long.BYTES;
+    private static final long HEADER_SIZE = 2 * Long.BYTES;
+    private static final int MIN_CAPACITY = 16;
+
+    private int capacity;
+    private int mask;
+    private int size;
+
+    public OffHeapLongLongHashMap(AllocatorService allocatorService, MemoryBlockStorage blockStorage, int expectedSize) {
+        super(allocatorService, blockStorage, bytes(capacityFor(expectedSize)));
+
+        this.capacity = capacityFor(expectedSize);
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(long key) {
+        return read(address -> key == FREE ? UNSAFE.getLong(address + HAS_FREE_KEY)
+                : find(address, key) >= 0 ? 1 : 0) != 0;
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        return read(address -> {
+            if (key == FREE)
+                return UNSAFE.getLong(address + HAS_FREE_KEY) != 0 ? UNSAFE.getLong(address + FREE_KEY_VALUE) : defaultValue;
+
+            final var entry = find(address, key);
+
+            return entry >= 0 ? UNSAFE.getLong(entryAddress(address, entry) + Long.BYTES) : defaultValue;
+        });
+    }
+
+    /**
+     * @return true if the key was not in the map
+     */
+    public boolean put(long key, long value) {
+        if ((size + 1) * 4L > capacity * 3L)
+            grow();
+
+        final var added = write(address -> {
+            if (key == FREE) {
+                final var absent = UNSAFE.getLong(address + HAS_FREE_KEY) == 0;
+
+                UNSAFE.putLong(address + HAS_FREE_KEY, 1);
+                UNSAFE.putLong(address + FREE_KEY_VALUE, value);
+
+                return absent ? 1 : 0;
+            }
+
+            var entry = indexOf(key);
+
+            for (long current; (current = UNSAFE.getLong(entryAddress(address, entry))) != FREE; entry = (entry + 1) & mask) {
+                if (current == key) {
+                    UNSAFE.putLong(entryAddress(address, entry) + Long.BYTES, value);
+                    return 0;
+                }
+            }
+
+            UNSAFE.putLong(entryAddress(address, entry), key);
+            UNSAFE.putLong(entryAddress(address, entry) + Long.BYTES, value);
+
+            return 1;
+        }) != 0;
+
+        if (added)
+            size++;
+
+        return added;
+    }
+
+    /**
+     * @return true if the key was in the map
+     */
+    public boolean remove(long key) {
+        final var removed = write(address -> {
+            if (key == FREE) {
+                final var present = UNSAFE.getLong(address + HAS_FREE_KEY) != 0;
+
+                UNSAFE.putLong(address + HAS_FREE_KEY, 0);
+
+                return present ? 1 : 0;
+            }
+
+            final var entry = find(address, key);
+
+            if (entry < 0)
+                return 0;
+
+            shiftKeys(address, entry);
+
+            return 1;
+        }) != 0;
+
+        if (removed)
+            size--;
+
+        return removed;
+    }
+
+    private int find(long address, long key) {
+        for (int entry = indexOf(key); ; entry = (entry + 1) & mask) {
+            final var current = UNSAFE.getLong(entryAddress(address, entry));
+
+            if (current == key)
+                return entry;
+
+            if (current == FREE)
+                return -1;
+        }
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving back entries whose probe sequence passes through it.
+     */
+    private void shiftKeys(long address, int entry) {
+        for (; ; ) {
+            final var last = entry;
+            long current;
+
+            entry = (last + 1) & mask;
+
+            for (; ; entry = (entry + 1) & mask) {
+                if ((current = UNSAFE.getLong(entryAddress(address, entry))) == FREE) {
+                    UNSAFE.putLong(entryAddress(address, last), FREE);
+                    return;
+                }
+
+                final var home = indexOf(current);
+
+                if (last <= entry ? last >= home || home > entry : last >= home && home > entry)
+                    break;
+            }
+
+            UNSAFE.putLong(entryAddress(address, last), current);
+            UNSAFE.putLong(entryAddress(address, last) + Long.BYTES, UNSAFE.getLong(entryAddress(address, entry) + Long.BYTES));
+        }
+    }
+
+    private void grow() {
+        final var oldMask = mask;
+        final var newCapacity = Math.multiplyExact(capacity, 2);
+
+        resize(bytes(newCapacity), (from, fromSize, to) -> {
+            UNSAFE.copyMemory(from, to, HEADER_SIZE);
+
+            mask = newCapacity - 1;
+
+            for (int entry = 0; entry <= oldMask; entry++) {
+                final var key = UNSAFE.getLong(entryAddress(from, entry));
+
+                if (key == FREE)
+                    continue;
+
+                var target = indexOf(key);
+
+                while (UNSAFE.getLong(entryAddress(to, target)) != FREE)
+                    target = (target + 1) & mask;
+
+                UNSAFE.putLong(entryAddress(to, target), key);
+                UNSAFE.putLong(entryAddress(to, target) + Long.BYTES, UNSAFE.getLong(entryAddress(from, entry) + Long.BYTES));
+            }
+        });
+
+        capacity = newCapacity;
+    }
+
+    private int indexOf(long key) {
+        final var hash = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static long entryAddress(long address, int entry) {
+        return address + HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+
+    private static long bytes(int capacity) {
+        return HEADER_SIZE + capacity * ENTRY_SIZE;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        final var required = Math.max(MIN_CAPACITY, (int) Math.min(1 << 30, (long) expectedSize * 4 / 3 + 1));
+
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.otus.offheap.collection;
+
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.MemoryBlockStorage;
+
+import java.util.Objects;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Growable list of fixed width records. Fields are read and written in place by offset within a record,
+ * new records are zeroed.
+ */
+public class OffHeapRecordList extends OffHeapCollection {
+
+    private final int recordSize;
+
+    private int size;
+    private int capacity;
+
+    public OffHeapRecordList(AllocatorService allocatorService, MemoryBlockStorage blockStorage,
+                             int recordSize, int initialCapacity) {
+        super(allocatorService, blockStorage, (long) recordSize * Math.max(initialCapacity, 1));
+
+        if (recordSize <= 0)
+            throw new IllegalArgumentException("Record size must be positive: " + recordSize);
+
+        this.recordSize = recordSize;
+        this.capacity = Math.max(initialCapacity, 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int recordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @return index of the new zeroed record
+     */
+    public int add() {
+        if (size == capacity) {
+            capacity = Math.multiplyExact(capacity, 2);
+            resize((long) recordSize * capacity);
+        }
+
+        return size++;
+    }
+
+    public long getLong(int index, int offset) {
+        final var position = position(index, offset, Long.BYTES);
+
+        return read(address -> UNSAFE.getLong(address + position));
+    }
+
+    public void putLong(int index, int offset, long value) {
+        final var position = position(index, offset, Long.BYTES);
+
+        write(address -> {
+            UNSAFE.putLong(address + position, value);
+            return 0;
+        });
+    }
+
+    public int getInt(int index, int offset) {
+        final var position = position(index, offset, Integer.BYTES);
+
+        return (int) read(address -> UNSAFE.getInt(address + position));
+    }
+
+    public void putInt(int index, int offset, int value) {
+        final var position = position(index, offset, Integer.BYTES);
+
+        write(address -> {
+            UNSAFE.putInt(address + position, value);
+            return 0;
+        });
+    }
+
+    public double getDouble(int index, int offset) {
+        return Double.longBitsToDouble(getLong(index, offset));
+    }
+
+    public void putDouble(int index, int offset, double value) {
+        putLong(index, offset, Double.doubleToRawLongBits(value));
+    }
+
+    private long position(int index, int offset, int width) {
+        Objects.checkIndex(index, size);
+        Objects.checkFromIndexSize(offset, width, recordSize);
+
+        return (long) index * recordSize + offset;
+    }
+}
@@ -0,0 +1,51 @@
+package ru.otus.offheap.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static ru.otus.offheap.constants.AllocatorConstants.BUFFER_SIZE;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "offheap.allocator")
+public class AllocatorProperties {
+
+    private String storage = "heap";
+    private boolean tlabEnabled = false;
+    private long tlabSize = 16 * 1024;
+    private List<String> binaryCodecClasses = new ArrayList<>();
+    private long arenaSize = BUFFER_SIZE;
+    private double arenaGrowthFactor = 2.0;
+    private long maxArenaSize = 64L * 1024 * 1024;
+    private long maxCapacity = 1024L * 1024 * 1024;
+    private String persistenceDir;
+    private Duration checkpointInterval = Duration.ofSeconds(30);
+    private int gcStepBudget = 10_000;
+    private Duration gcStepTime = Duration.ofMillis(1);
+    private boolean backgroundGcEnabled = false;
+    private Duration backgroundGcInterval = Duration.ofMillis(100);
+    private double gcFreeRatio = 0.1;
+    private double gcFragmentation = 0.75;
+    private long gcAllocationRate = 0;
+    private int gcParallelism = 1;
+    private long nurserySize = 0;
+    private double gcNurseryOccupancy = 0.8;
+    private boolean referenceCounting = false;
+    private int refCountBatch = 1024;
+    private int refCountCycleRoots = 1024;
+    private int asyncParallelism = Runtime.getRuntime().availableProcessors();
+    private int asyncBatchSize = 256;
+    private Duration expiryTick = Duration.ofMillis(10);
+    private long compressionThreshold = 0;
+    private List<String> compressedClasses = new ArrayList<>();
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private boolean deduplication = false;
+    private long largeObjectThreshold = 0;
+    private long largeObjectChunkSize = 64 * 1024;
+}
@@ -3,4 +3,6 @@ package ru.otus.offheap.constants;
 public class AllocatorConstants {
 
     public static final int BUFFER_SIZE = 256 * 1024;
+    public static final int SERIALIZATION_BUFFER_SIZE = 1024;
+    public static final long READ_SNAPSHOT_LIMIT = 64 * 1024;
 }
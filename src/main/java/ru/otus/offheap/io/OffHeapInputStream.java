@@ -0,0 +1,74 @@
+package ru.otus.offheap.io;
+
+import java.io.InputStream;
+import java.util.Objects;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * Input stream reading a fixed off-heap region without copying it to the heap first.
+ */
+public class OffHeapInputStream extends InputStream {
+
+    private final long address;
+    private final long size;
+    private long position;
+    private long mark;
+
+    public OffHeapInputStream(long address, long size) {
+        this.address = address;
+        this.size = size;
+    }
+
+    @Override
+    public int read() {
+        return position < size ? UNSAFE.getByte(address + position++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+
+        if (len == 0)
+            return 0;
+
+        if (position >= size)
+            return -1;
+
+        final var count = (int) Math.min(len, size - position);
+
+        UNSAFE.copyMemory(null, address + position, b, ARRAY_BYTE_BASE_OFFSET + off, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        final var skipped = Math.max(0, Math.min(n, size - position));
+        position += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+}
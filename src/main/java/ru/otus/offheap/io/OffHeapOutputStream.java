@@ -0,0 +1,113 @@
+package ru.otus.offheap.io;
+
+import ru.otus.offheap.util.XxHash64;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * Growable output stream backed by native memory. The collected bytes can be moved
+ * into an off-heap block with a single {@link #copyTo(long)}.
+ */
+public class OffHeapOutputStream extends OutputStream {
+
+    private long address;
+    private long capacity;
+    private long size;
+
+    public OffHeapOutputStream(long initialCapacity) {
+        this.capacity = Math.max(initialCapacity, 1);
+        this.address = UNSAFE.allocateMemory(capacity);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(size + 1);
+        UNSAFE.putByte(address + size++, (byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureCapacity(size + len);
+
+        UNSAFE.copyMemory(b, ARRAY_BYTE_BASE_OFFSET + off, null, address + size, len);
+        size += len;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void copyTo(long targetAddress) {
+        UNSAFE.copyMemory(address, targetAddress, size);
+    }
+
+    public void copyTo(long offset, long length, long targetAddress) {
+        Objects.checkFromIndexSize(offset, length, size);
+        UNSAFE.copyMemory(address + offset, targetAddress, length);
+    }
+
+    public long hash() {
+        return XxHash64.hash(address, size, 0);
+    }
+
+    /**
+     * @return true if the collected bytes equal the {@code size()} bytes at the address
+     */
+    public boolean contentEquals(long otherAddress) {
+        long i = 0;
+
+        for (; i + Long.BYTES <= size; i += Long.BYTES)
+            if (UNSAFE.getLong(address + i) != UNSAFE.getLong(otherAddress + i))
+                return false;
+
+        for (; i < size; i++)
+            if (UNSAFE.getByte(address + i) != UNSAFE.getByte(otherAddress + i))
+                return false;
+
+        return true;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Drops the bytes written after the first {@code newSize}.
+     */
+    public void truncate(long newSize) {
+        Objects.checkIndex(newSize, size + 1);
+        size = newSize;
+    }
+
+    /**
+     * Reads the collected bytes in place. The stream must not be written to while they are read.
+     */
+    public InputStream toInputStream() {
+        return new OffHeapInputStream(address, size);
+    }
+
+    @Override
+    public void close() {
+        if (address != 0) {
+            UNSAFE.freeMemory(address);
+            address = 0;
+        }
+    }
+
+    private void ensureCapacity(long required) {
+        if (address == 0)
+            throw new IllegalStateException("Stream is closed");
+
+        if (required <= capacity)
+            return;
+
+        capacity = Math.max(required, capacity * 2);
+        address = UNSAFE.reallocateMemory(address, capacity);
+    }
+}
@@ -19,9 +19,17 @@ public class MemoryBlock {
     @Include private final long size;
     @Include private final long address;
     private List<MemoryBlock> links;
+    private int index;
+    private int generation;
 
     private String name;
     private String fullClassName;
+    private int codec;
+
+    /**
+     * Payload size before compression, 0 if the payload is stored as is.
+     */
+    private long rawSize;
     private boolean deleted;
     private boolean root;
 
@@ -33,12 +41,32 @@ public class MemoryBlock {
 
         newBlock.name = this.name;
         newBlock.fullClassName = this.fullClassName;
+        newBlock.codec = this.codec;
+        newBlock.rawSize = this.rawSize;
+        newBlock.index = this.index;
+        newBlock.generation = this.generation;
         newBlock.deleted = this.deleted;
         newBlock.links = new ArrayList<>(links);
 
         return newBlock;
     }
 
+    public boolean isCompressed() {
+        return rawSize > 0;
+    }
+
+    public long handle() {
+        return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    public static int slotOf(long handle) {
+        return (int) handle;
+    }
+
+    public static int generationOf(long handle) {
+        return (int) (handle >>> 32);
+    }
+
     @Override
     public String toString() {
         return format("%s:\n    size [%d], address [0x%s], class [%s], childs [%s]\n\n",
@@ -0,0 +1,36 @@
+package ru.otus.offheap.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Limits of a lazy graph walk. The requested object is at depth 0, its direct children at depth 1.
+ * Objects outside [minDepth, maxDepth] or of another class are not returned, but the walk still
+ * goes through them down to maxDepth.
+ */
+@Getter
+@Builder
+public class TraversalOptions {
+
+    public static final TraversalOptions ALL = TraversalOptions.builder().build();
+
+    @Builder.Default
+    private final int minDepth = 0;
+
+    @Builder.Default
+    private final int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Canonical class name of the returned objects, any class if null.
+     */
+    private final String fullClassName;
+
+    public static TraversalOptions directChildren() {
+        return TraversalOptions.builder().minDepth(1).maxDepth(1).build();
+    }
+
+    public boolean accepts(MemoryBlock block, int depth) {
+        return depth >= minDepth && depth <= maxDepth
+                && (fullClassName == null || fullClassName.equals(block.getFullClassName()));
+    }
+}
@@ -1,19 +1,136 @@
 package ru.otus.offheap.service;
 
+import ru.otus.offheap.codec.Codec;
+import ru.otus.offheap.model.TraversalOptions;
+
+import java.io.InputStream;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface AllocatorService {
 
     String set(Serializable obj);
 
+    /**
+     * Same as {@link #set(Serializable)}, but the object is removed once the ttl has passed: by {@link #expire()}
+     * or by the first get after the deadline. As with {@link #remove}, its children are left to the collector.
+     */
+    String set(Serializable obj, Duration ttl);
+
+    long put(Serializable obj);
+
+    long put(Serializable obj, Duration ttl);
+
+    /**
+     * Allocates an unnamed block of zeroed bytes to be written in place. It is an ordinary block
+     * for linking and collection, {@link #get(long)} returns its contents as a byte array.
+     *
+     * @return handle of the block
+     */
+    long reserve(long size);
+
+    /**
+     * Stores the objects in one contiguous region under a single lock acquisition.
+     *
+     * @return names of the stored objects, in the iteration order of the collection
+     */
+    List<String> setAll(Collection<? extends Serializable> objects);
+
+    /**
+     * Same as {@link #setAll}, but the objects are left unnamed.
+     *
+     * @return handles of the stored objects, in the iteration order of the collection
+     */
+    long[] putAll(Collection<? extends Serializable> objects);
+
     List<Serializable> get(String name);
 
+    List<Serializable> get(long handle);
+
+    /**
+     * @return object graphs of the names, in the same order, read under a single lock acquisition
+     */
+    List<List<Serializable>> getAll(Collection<String> names);
+
+    /**
+     * Walks the same graph as {@link #get(String)}, in the same order, but decodes objects one by one
+     * as they are pulled. Each step holds the read lock briefly, so the walk sees concurrent changes:
+     * blocks freed before they are reached are skipped.
+     */
+    Iterator<Serializable> iterator(String name, TraversalOptions options);
+
+    default Iterator<Serializable> iterator(String name) {
+        return iterator(name, TraversalOptions.ALL);
+    }
+
+    Stream<Serializable> stream(String name, TraversalOptions options);
+
+    default Stream<Serializable> stream(String name) {
+        return stream(name, TraversalOptions.ALL);
+    }
+
+    /**
+     * Stored payload of the object, as encoded and possibly compressed, read straight out of its blocks.
+     * Each read holds the read lock briefly and fails if the object has been removed meanwhile.
+     */
+    InputStream openStream(String name);
+
+    long handle(String name);
+
     void remove(String name);
 
+    /**
+     * Blocks of deduplicated names can not be freed by handle, since a handle does not tell which of the names
+     * sharing the block goes; such objects are removed by name.
+     *
+     * @throws IllegalArgumentException if the handle is of a deduplicated block
+     */
+    void free(long handle);
+
+    /**
+     * Removes all named objects at once. Nothing is removed if any of the names is unknown.
+     */
+    void removeAll(Collection<String> names);
+
+    /**
+     * Removes all objects whose ttl has passed under a single lock acquisition, in O(expired) time.
+     *
+     * @return number of removed objects
+     */
+    int expire();
+
+    /**
+     * Saves the metadata of persistent arenas, a crash afterwards falls back to this state.
+     * Runs every {@code checkpoint-interval} by itself, does nothing without {@code persistence-dir}.
+     */
+    void checkpoint();
+
     void link(String parent, String child);
 
+    void link(long parent, long child);
+
     void unlink(String parent, String child);
 
+    void unlink(long parent, long child);
+
     long free();
+
+    /**
+     * Total payload bytes allocated since start.
+     */
+    long allocatedBytes();
+
+    /**
+     * Blocks keep an id derived from the codec class, so persisted blocks are read after a restart once the same
+     * codec class is registered again. A codec class is registered with one instance, which may serve many types;
+     * anonymous, local and lambda codecs are rejected.
+     *
+     * @throws IllegalArgumentException if the codec class has no stable name
+     * @throws IllegalStateException if another codec instance or class already has the id of this one
+     */
+    <T extends Serializable> void registerCodec(Class<T> type, Codec<? super T> codec);
 }
@@ -4,27 +4,53 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.springframework.stereotype.Service;
+import ru.otus.offheap.arena.AllocationChunk;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.codec.BlockCompressor;
+import ru.otus.offheap.codec.Codec;
+import ru.otus.offheap.codec.CodecRegistry;
+import ru.otus.offheap.config.AllocatorProperties;
 import ru.otus.offheap.exception.NotEnoughMemoryException;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.io.OffHeapInputStream;
+import ru.otus.offheap.io.OffHeapOutputStream;
 import ru.otus.offheap.model.MemoryBlock;
-import sun.misc.Unsafe;
+import ru.otus.offheap.model.TraversalOptions;
+import ru.otus.offheap.util.LatencyHistogram;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.lang.Long.toHexString;
 import static java.lang.String.format;
-import static ru.otus.offheap.constants.AllocatorConstants.BUFFER_SIZE;
+import static ru.otus.offheap.constants.AllocatorConstants.READ_SNAPSHOT_LIMIT;
+import static ru.otus.offheap.constants.AllocatorConstants.SERIALIZATION_BUFFER_SIZE;
+import static ru.otus.offheap.util.OffHeapLongIntMap.NO_VALUE;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 @Service
 @RequiredArgsConstructor
@@ -32,145 +58,945 @@ public final class AllocatorServiceImpl implements AllocatorService {
 
     @Getter
     private final MemoryBlockStorage blockStorage;
+    private final AllocatorProperties properties;
+    private final CodecRegistry codecs;
+    private final ArenaManager arenas;
+    private final WriteBarrier writeBarrier;
+    private final ReferenceCounter referenceCounter;
+    private final ExpiryWheel expiryWheel;
+    private final BlockCompressor compressor;
+    private final DedupIndex dedupIndex;
 
-    private long basePointer;
-    private volatile long offset;
-    private volatile boolean initialized;
+    /**
+     * Latencies of allocator calls started while a garbage collection was in progress.
+     */
+    @Getter
+    private final LatencyHistogram collectionLatencies = new LatencyHistogram();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    private final ThreadLocal<AllocationChunk> allocationChunks = new ThreadLocal<>();
+
+    private long sequence;
+    private volatile boolean destroyed;
+    private ScheduledExecutorService checkpointer;
+
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+
+    @PostConstruct
+    private void init() {
+        this.sequence = arenas.getRestoredSequence();
+
+        final var interval = properties.getCheckpointInterval().toNanos();
+
+        if (properties.getPersistenceDir() != null && interval > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+                final var thread = new Thread(task, "offheap-checkpoint");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            checkpointer.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public String set(final Serializable obj) {
+        return dedupIndex.isEnabled() ? storeShared(obj) : store(obj, true, null).getName();
+    }
+
+    @Override
+    public String set(Serializable obj, Duration ttl) {
+        return store(obj, true, ttl).getName();
+    }
+
+    @Override
+    public long put(Serializable obj) {
+        return store(obj, false, null).handle();
+    }
+
+    @Override
+    public long put(Serializable obj, Duration ttl) {
+        return store(obj, false, ttl).handle();
+    }
+
+    @SneakyThrows
+    private MemoryBlock store(Serializable obj, boolean named, Duration ttl) {
+        if (destroyed)
+            throw new RuntimeException("Off heap buffer is already released");
+
+        final var started = startTimer();
+        final var codecId = codecs.idFor(obj.getClass());
+
+        try (OffHeapOutputStream out = new OffHeapOutputStream(SERIALIZATION_BUFFER_SIZE)) {
+
+            final var rawSize = encode(obj, codecId, out);
+
+            if (isLarge(out.size()))
+                return allocateChunked(obj.getClass(), out, codecId, rawSize, named, ttl);
+
+            return allocate(obj, out, codecId, rawSize, named, ttl);
+        } finally {
+            stopTimer(started);
+        }
+    }
+
+    /**
+     * Stores the object unless a byte-identical one is already indexed, in which case a new name of the indexed
+     * block is returned. Blocks with a colliding hash, but other bytes, are stored as usual. Large objects are
+     * chunked and never shared.
+     */
+    @SneakyThrows
+    private String storeShared(Serializable obj) {
+        if (destroyed)
+            throw new RuntimeException("Off heap buffer is already released");
+
+        final var started = startTimer();
+        final var codecId = codecs.idFor(obj.getClass());
+
+        try (OffHeapOutputStream out = new OffHeapOutputStream(SERIALIZATION_BUFFER_SIZE)) {
+
+            final var rawSize = encode(obj, codecId, out);
+
+            if (isLarge(out.size()))
+                return allocateChunked(obj.getClass(), out, codecId, rawSize, true, null).getName();
+
+            final var hash = out.hash();
+
+            final var lock = blockStorage.getLock();
+            final var stamp = lock.writeLock();
+
+            try {
+                var content = dedupIndex.find(hash);
+
+                if (content != NO_VALUE) {
+                    final var shared = findByHandle(dedupIndex.handle(content));
 
-    private static final Unsafe UNSAFE;
+                    if (shared != null && shared.getSize() == out.size() && shared.getCodec() == codecId
+                            && shared.getRawSize() == rawSize && out.contentEquals(shared.getAddress())) {
+                        final var name = nameOf(obj.getClass(), sequence++);
 
-    static {
+                        dedupIndex.share(content, name);
+
+                        return name;
+                    }
+
+                    // The indexed block has other bytes, the index keeps it
+                    if (shared != null) {
+                        final var memoryBlock = allocateLocked(obj.getClass(), out.size(), codecId, rawSize, true, null);
+                        out.copyTo(memoryBlock.getAddress());
+
+                        return memoryBlock.getName();
+                    }
+                }
+
+                final var memoryBlock = allocateLocked(obj.getClass(), out.size(), codecId, rawSize, false, null);
+                final var name = nameOf(obj.getClass(), sequence++);
+
+                out.copyTo(memoryBlock.getAddress());
+                content = dedupIndex.add(hash, memoryBlock.handle(), memoryBlock.getSize());
+                dedupIndex.share(content, name);
+
+                return name;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } finally {
+            stopTimer(started);
+        }
+    }
+
+    /**
+     * @return the block or null if it has been freed
+     */
+    private MemoryBlock findByHandle(long handle) {
         try {
-            Field f = Unsafe.class.getDeclaredField("theUnsafe");
-            f.setAccessible(true);
-            UNSAFE = (Unsafe) f.get(null);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+            return blockStorage.getByHandle(handle);
+        } catch (ObjectNotFoundException e) {
+            return null;
         }
     }
 
-    @PostConstruct
-    private void init() {
-        this.basePointer = UNSAFE.allocateMemory(BUFFER_SIZE);
-        this.initialized = true;
+    /**
+     * Names of deduplicated objects are resolved through the index to the shared block.
+     */
+    private MemoryBlock byName(String name) {
+        if (!dedupIndex.isEnabled())
+            return blockStorage.getByName(name);
+
+        final var content = dedupIndex.contentOf(name);
+
+        return content == NO_VALUE ? blockStorage.getByName(name) : blockStorage.getByHandle(dedupIndex.handle(content));
+    }
+
+    /**
+     * Appends the encoded object to the stream, compressed if it qualifies for compression and gets smaller.
+     *
+     * @return size before compression, 0 if the object is stored as is
+     */
+    private long encode(Serializable obj, int codecId, OffHeapOutputStream out) throws IOException {
+        if (!compressor.isEnabled()) {
+            codecs.byId(codecId).encode(obj, out);
+            return 0;
+        }
+
+        try (OffHeapOutputStream plain = new OffHeapOutputStream(SERIALIZATION_BUFFER_SIZE)) {
+            codecs.byId(codecId).encode(obj, plain);
+
+            if (compressor.accepts(obj.getClass(), plain.size()) && compressor.compress(plain, out))
+                return plain.size();
+
+            plain.toInputStream().transferTo(out);
+
+            return 0;
+        }
+    }
+
+    /**
+     * Compaction and young collections move blocks as soon as the lock is released, so the payload is copied
+     * under the lock. Only a block placed in the open chunk of this thread's buffer, which they leave alone,
+     * is copied out of the lock.
+     */
+    private MemoryBlock allocate(Serializable obj, OffHeapOutputStream out, int codecId, long rawSize, boolean named,
+                                 Duration ttl) {
+        final var buffer = reserveAllocationChunk(out.size());
+
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+        final MemoryBlock memoryBlock;
+
+        try {
+            memoryBlock = allocateLocked(obj.getClass(), out.size(), codecId, rawSize, named, buffer);
+
+            if (buffer == null || !buffer.contains(memoryBlock.getAddress()))
+                out.copyTo(memoryBlock.getAddress());
+
+            if (ttl != null)
+                expiryWheel.schedule(memoryBlock.handle(), ttl);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (buffer != null && buffer.contains(memoryBlock.getAddress()))
+            out.copyTo(memoryBlock.getAddress());
+
+        return memoryBlock;
     }
 
+    private boolean isLarge(long length) {
+        return properties.getLargeObjectThreshold() > 0 && length > properties.getLargeObjectThreshold();
+    }
+
+    /**
+     * Places the payload in a chain of {@code large-object-chunk-size} blocks, so no contiguous run of its size
+     * is needed. The head is the object block with the first chunk, every chunk is linked by its predecessor
+     * as the first child.
+     */
+    private MemoryBlock allocateChunked(Class<?> type, OffHeapOutputStream out, int codecId, long rawSize,
+                                        boolean named, Duration ttl) {
+        final var chunkSize = properties.getLargeObjectChunkSize();
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            if (out.size() > free())
+                throw new NotEnoughMemoryException("Needed " + out.size() + ", but has " + free());
+
+            final var head = allocateLocked(type, Math.min(chunkSize, out.size()), codecId, rawSize, named, null);
+            var previous = head.handle();
+
+            out.copyTo(0, head.getSize(), head.getAddress());
+
+            try {
+                for (long offset = head.getSize(); offset < out.size(); offset += chunkSize) {
+                    final var length = Math.min(chunkSize, out.size() - offset);
+                    final var chunk = allocateLocked(byte[].class, length, CodecRegistry.CHUNK, 0, false, null);
+
+                    out.copyTo(offset, length, chunk.getAddress());
+
+                    // Compaction may have moved the predecessor, it is resolved again
+                    linkBlocks(blockStorage.getByHandle(previous), chunk);
+                    previous = chunk.handle();
+                }
+            } catch (NotEnoughMemoryException e) {
+                removeBlock(blockStorage.getByHandle(head.handle()));
+                throw e;
+            }
+
+            if (ttl != null)
+                expiryWheel.schedule(head.handle(), ttl);
+
+            return blockStorage.getByHandle(head.handle());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static boolean isChunked(MemoryBlock block) {
+        return block.getCodec() != CodecRegistry.CHUNK && nextChunk(block) != null;
+    }
+
+    /**
+     * @return chunk following the block or null if the payload ends in it
+     */
+    static MemoryBlock nextChunk(MemoryBlock block) {
+        final var links = block.getLinks();
+
+        return !links.isEmpty() && links.get(0).getCodec() == CodecRegistry.CHUNK ? links.get(0) : null;
+    }
+
+    private MemoryBlock allocateLocked(Class<?> type, long length, int codecId, long rawSize, boolean named,
+                                       AllocationChunk buffer) {
+        if (length > free())
+            throw new NotEnoughMemoryException("Needed " + length + ", but has " + free());
+
+        final var youngAddress = buffer == null ? arenas.nurseryTail(length) : -1;
+        var reusable = buffer == null && youngAddress < 0 && blockStorage.hasFreeBlock(length);
+        var tailAddress = buffer != null ? buffer.cursor() : youngAddress >= 0 ? youngAddress
+                : reusable ? -1 : arenas.tail(length);
+
+        // Enough free bytes, but scattered: gather them by compaction unless a collection cycle is running
+        if (!reusable && tailAddress < 0 && !writeBarrier.isActive() && arenas.compactAll() > 0) {
+            reusable = blockStorage.hasFreeBlock(length);
+            tailAddress = reusable ? -1 : arenas.tail(length);
+        }
+
+        if (!reusable && tailAddress < 0)
+            throw new NotEnoughMemoryException("Needed " + length + " contiguous bytes, but arena capacity is exhausted");
+
+        final var memoryBlock = register(type, tailAddress, length, codecId, rawSize, named, youngAddress < 0);
+
+        if (memoryBlock.getAddress() == tailAddress) {
+            if (buffer != null)
+                buffer.advance(length);
+            else if (youngAddress >= 0)
+                arenas.commitNursery(length);
+            else
+                arenas.commit(length);
+        }
+
+        allocatedBytes.add(length);
+
+        return memoryBlock;
+    }
+
+    /**
+     * Adds the block to the storage and attaches it to the root. Unless reuse is allowed, the block
+     * is kept at the given address.
+     */
+    private MemoryBlock register(Class<?> type, long address, long length, int codecId, long rawSize, boolean named,
+                                 boolean reuseFreeSpace) {
+        var memoryBlock = MemoryBlock.builder()
+                .address(address)
+                .size(length)
+                .name(named ? prepareName(type) : null)
+                .links(new ArrayList<>())
+                .fullClassName(type.getCanonicalName())
+                .codec(codecId)
+                .rawSize(rawSize)
+                .build();
+
+        memoryBlock = reuseFreeSpace ? blockStorage.insert(memoryBlock) : blockStorage.insertAt(memoryBlock);
+        referenceCounter.onInsert(memoryBlock);
+
+        linkBlock(blockStorage.getRootBlock(), memoryBlock);
+
+        return memoryBlock;
+    }
+
+    @Override
+    public long reserve(long size) {
+        if (destroyed)
+            throw new RuntimeException("Off heap buffer is already released");
+
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            final var memoryBlock = allocateLocked(byte[].class, size, CodecRegistry.RAW, 0, false, null);
+
+            UNSAFE.setMemory(memoryBlock.getAddress(), size, (byte) 0);
+
+            return memoryBlock.handle();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<String> setAll(Collection<? extends Serializable> objects) {
+        return storeAll(objects, true).stream().map(MemoryBlock::getName).toList();
+    }
+
+    @Override
+    public long[] putAll(Collection<? extends Serializable> objects) {
+        return storeAll(objects, false).stream().mapToLong(MemoryBlock::handle).toArray();
+    }
+
+    /**
+     * Encodes the whole batch into one buffer first, so the storage lock is held only to place it.
+     */
     @SneakyThrows
-    public synchronized String set(final Serializable obj) {
-        if (!initialized)
-            throw new RuntimeException("Off heap buffer is not initialized");
+    private List<MemoryBlock> storeAll(Collection<? extends Serializable> objects, boolean named) {
+        if (destroyed)
+            throw new RuntimeException("Off heap buffer is already released");
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        final var started = startTimer();
+        final var batch = List.copyOf(objects);
+        final var codecIds = new int[batch.size()];
+        final var rawSizes = new long[batch.size()];
+        final var ends = new long[batch.size()];
 
-            oos.writeObject(obj);
-            oos.flush();
+        try (OffHeapOutputStream out = new OffHeapOutputStream(SERIALIZATION_BUFFER_SIZE)) {
 
-            final Queue<Byte> queue = new ArrayDeque<>();
-            long length = prepareBytesQueue(baos, queue);
+            for (int i = 0; i < batch.size(); i++) {
+                codecIds[i] = codecs.idFor(batch.get(i).getClass());
+                rawSizes[i] = encode(batch.get(i), codecIds[i], out);
+                ends[i] = out.size();
+            }
 
-            final String name = prepareName(obj);
+            final var lock = blockStorage.getLock();
+            final var stamp = lock.writeLock();
 
-            if (length > free())
-                throw new NotEnoughMemoryException("Needed " + length + ", but has " + free());
+            try {
+                return allocateBatch(batch, codecIds, rawSizes, ends, out, named);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } finally {
+            stopTimer(started);
+        }
+    }
+
+    /**
+     * Places the batch in one region at the tail of the current arena, bypassing the nursery. If there is
+     * no contiguous room for the whole batch, the objects are allocated one by one, and a failure removes
+     * the objects already placed.
+     */
+    private List<MemoryBlock> allocateBatch(List<? extends Serializable> batch, int[] codecIds, long[] rawSizes,
+                                            long[] ends, OffHeapOutputStream out, boolean named) {
+        final var total = out.size();
+
+        if (total > free())
+            throw new NotEnoughMemoryException("Needed " + total + ", but has " + free());
+
+        var region = arenas.tail(total);
 
-            var rootBlock = blockStorage.getRootBlock();
+        if (region < 0 && !writeBarrier.isActive() && arenas.compactAll() > 0)
+            region = arenas.tail(total);
+
+        if (region >= 0) {
+            out.copyTo(region);
+            arenas.commit(total);
+            allocatedBytes.add(total);
+        }
+
+        final var blocks = new ArrayList<MemoryBlock>(batch.size());
+        long start = 0;
+
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                final var length = ends[i] - start;
 
-            var memoryBlock = MemoryBlock.builder()
-                    .address(basePointer + offset)
-                    .size(length)
-                    .name(name)
-                    .links(new ArrayList<>())
-                    .fullClassName(obj.getClass().getCanonicalName())
-                    .build();
+                if (region >= 0) {
+                    blocks.add(register(batch.get(i).getClass(), region + start, length, codecIds[i], rawSizes[i],
+                            named, false));
+                } else {
+                    final var block = allocateLocked(batch.get(i).getClass(), length, codecIds[i], rawSizes[i], named,
+                            null);
 
-            rootBlock.getLinks().add(memoryBlock);
+                    out.copyTo(start, length, block.getAddress());
+                    blocks.add(block);
+                }
+
+                start = ends[i];
+            }
+        } catch (NotEnoughMemoryException e) {
+            // The caller never learns the names of the placed objects, the root would hold them forever
+            for (MemoryBlock block : blocks)
+                removeBlock(blockStorage.getByHandle(block.handle()));
+
+            throw e;
+        }
+
+        return blocks;
+    }
+
+    private AllocationChunk reserveAllocationChunk(long length) {
+        // Blocks of a buffer are written out of the lock, a checkpoint could save them unwritten
+        if (!properties.isTlabEnabled() || properties.getPersistenceDir() != null || length > properties.getTlabSize())
+            return null;
+
+        var chunk = allocationChunks.get();
+
+        if (chunk == null || chunk.remaining() < length) {
+            chunk = refill(chunk);
+            allocationChunks.set(chunk);
+        }
 
-            memoryBlock = blockStorage.insert(memoryBlock);
+        return chunk == null || chunk.remaining() < length ? null : chunk;
+    }
+
+    private AllocationChunk refill(AllocationChunk chunk) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            if (chunk != null)
+                arenas.returnChunk(chunk);
+
+            arenas.retireOrphanedChunks();
+
+            return arenas.reserveChunk(properties.getTlabSize());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public List<Serializable> get(String name) {
+        return read(() -> byName(name));
+    }
+
+    @Override
+    public List<Serializable> get(long handle) {
+        return read(() -> blockStorage.getByHandle(handle));
+    }
+
+    /**
+     * Removes the block if its deadline has passed, even though the wheel has not reached it yet.
+     */
+    private void expireIfDue(Supplier<MemoryBlock> resolver) {
+        if (expiryWheel.scheduled() == 0)
+            return;
+
+        final var lock = blockStorage.getLock();
+        var stamp = lock.readLock();
+
+        try {
+            if (!expiryWheel.isExpired(resolver.get().handle()))
+                return;
+
+            final var writeStamp = lock.tryConvertToWriteLock(stamp);
+
+            if (writeStamp == 0) {
+                lock.unlockRead(stamp);
+                stamp = lock.writeLock();
+            } else {
+                stamp = writeStamp;
+            }
 
-            int cnt = 0;
+            final var memoryBlock = resolver.get();
 
-            for (byte b : queue)
-                UNSAFE.putByte(memoryBlock.getAddress() + cnt++, b);
+            if (!expiryWheel.isExpired(memoryBlock.handle()))
+                return;
 
-            offset += cnt;
+            removeBlock(memoryBlock);
 
-            return name;
+            throw new ObjectNotFoundException("Object has expired: " + memoryBlock.getName());
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    @Override
+    @SneakyThrows
+    public List<List<Serializable>> getAll(Collection<String> names) {
+        for (String name : names)
+            expireIfDue(() -> byName(name));
+
+        final var lock = blockStorage.getLock();
+        final var started = startTimer();
+        final var stamp = lock.readLock();
+
+        try {
+            final var graphs = new ArrayList<List<Serializable>>(names.size());
+
+            for (String name : names)
+                graphs.add(decodeInPlace(collectBlocks(byName(name))));
+
+            return graphs;
+        } finally {
+            lock.unlockRead(stamp);
+            stopTimer(started);
+        }
+    }
+
+    @Override
+    public Iterator<Serializable> iterator(String name, TraversalOptions options) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return new GraphIterator(byName(name).handle(), options);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Stream<Serializable> stream(String name, TraversalOptions options) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(name, options),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public long handle(String name) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return byName(name).handle();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private List<Serializable> read(Supplier<MemoryBlock> resolver) {
+        expireIfDue(resolver);
+
+        final var lock = blockStorage.getLock();
+        final var started = startTimer();
+
+        arenas.enterRead();
+
+        try {
+            return readOptimistically(resolver, lock);
+        } finally {
+            arenas.exitRead();
+            stopTimer(started);
         }
     }
 
     @SneakyThrows
-    public synchronized List<Serializable> get(String name) {
+    private List<Serializable> readOptimistically(Supplier<MemoryBlock> resolver, StampedLock lock) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            final var stamp = lock.tryOptimisticRead();
+
+            if (stamp == 0)
+                continue;
+
+            try {
+                final var blocks = collectBlocks(resolver.get());
+
+                if (!lock.validate(stamp))
+                    continue;
+
+                // Chunks are read in place, the snapshot covers single blocks only
+                if (blocks.stream().anyMatch(AllocatorServiceImpl::isChunked)
+                        || blocks.stream().mapToLong(MemoryBlock::getSize).sum() > READ_SNAPSHOT_LIMIT)
+                    break;
+
+                final var payloads = blocks.stream()
+                        .map(this::snapshot)
+                        .toList();
+
+                if (lock.validate(stamp))
+                    return decodeSnapshots(payloads);
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+            }
+        }
+
+        final var stamp = lock.readLock();
+
+        try {
+            return decodeInPlace(collectBlocks(resolver.get()));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Depth-first, pre-order walk of the graph below the block. Every block is listed once,
+     * so shared children and cycles are safe; the explicit stack keeps deep chains off the call stack.
+     * Chunks belong to the payload of their head and are not listed.
+     */
+    private List<MemoryBlock> collectBlocks(MemoryBlock memoryBlock) {
+        final var blocks = new ArrayList<MemoryBlock>();
+        final var visited = new BitSet();
+        final var stack = new ArrayDeque<MemoryBlock>();
+        final var children = new ArrayList<MemoryBlock>();
+
+        stack.push(memoryBlock);
+
+        while (!stack.isEmpty()) {
+            final var block = stack.pop();
+
+            if (visited.get(block.getIndex()) || block.getCodec() == CodecRegistry.CHUNK)
+                continue;
+
+            visited.set(block.getIndex());
+            blocks.add(block);
+
+            children.clear();
+            children.addAll(block.getLinks());
+
+            for (int i = children.size() - 1; i >= 0; i--)
+                stack.push(children.get(i));
+        }
+
+        return blocks;
+    }
+
+    private Payload snapshot(MemoryBlock memoryBlock) {
+        final var bytes = new byte[(int) memoryBlock.getSize()];
+
+        UNSAFE.copyMemory(null, memoryBlock.getAddress(), bytes, ARRAY_BYTE_BASE_OFFSET, bytes.length);
+
+        return new Payload(memoryBlock.getCodec(), memoryBlock.isCompressed(), bytes);
+    }
+
+    private List<Serializable> decodeSnapshots(List<Payload> payloads) throws IOException {
         final var list = new ArrayList<Serializable>();
 
-        readObjects(blockStorage.getByName(name), list);
+        for (Payload payload : payloads)
+            list.add(decode(payload.codec(), payload.compressed(), new ByteArrayInputStream(payload.bytes())));
 
         return list;
     }
 
-    @SneakyThrows
-    private void readObjects(MemoryBlock memoryBlock, final List<Serializable> list) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+    private List<Serializable> decodeInPlace(List<MemoryBlock> blocks) throws IOException {
+        final var list = new ArrayList<Serializable>();
+
+        for (MemoryBlock block : blocks)
+            list.add(decode(block));
+
+        return list;
+    }
+
+    /**
+     * Compressed payloads are inflated as they are read, straight out of the block and its chunks.
+     * Must be called under the storage lock.
+     */
+    private Serializable decode(MemoryBlock block) throws IOException {
+        return decode(block.getCodec(), block.isCompressed(), payloadOf(block, null));
+    }
+
+    private InputStream payloadOf(MemoryBlock block, StampedLock lock) {
+        return isChunked(block) ? new ChunkInputStream(blockStorage, block, lock)
+                : new OffHeapInputStream(block.getAddress(), block.getSize());
+    }
+
+    @Override
+    public InputStream openStream(String name) {
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return new ChunkInputStream(blockStorage, byName(name), lock);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Serializable decode(int codec, boolean compressed, InputStream payload) throws IOException {
+        try (InputStream in = compressed ? compressor.inflate(payload) : payload) {
+            return (Serializable) codecs.byId(codec).decode(in);
+        }
+    }
+
+    public void remove(String name) {
+        write(() -> removeName(name));
+    }
+
+    @Override
+    public void free(long handle) {
+        write(() -> {
+            final var memoryBlock = blockStorage.getByHandle(handle);
+
+            if (dedupIndex.isShared(memoryBlock.handle()))
+                throw new IllegalArgumentException("Block 0x" + toHexString(handle)
+                        + " belongs to deduplicated names and is removed by name");
+
+            removeBlock(memoryBlock);
+        });
+    }
 
-            for (int i = 0; i < memoryBlock.getSize(); i++)
-                baos.write(UNSAFE.getByte(memoryBlock.getAddress() + i));
+    @Override
+    public void removeAll(Collection<String> names) {
+        write(() -> {
+            final var distinct = names.stream().distinct().toList();
 
-            baos.flush();
+            // Resolved first, so an unknown name fails the call before anything is removed
+            distinct.forEach(this::byName);
+            distinct.forEach(this::removeName);
+        });
+    }
 
-            try (ByteArrayInputStream is = new ByteArrayInputStream(baos.toByteArray());
-                 ObjectInputStream ois = new ObjectInputStream(is)) {
-                list.add((Serializable) ois.readObject());
+    /**
+     * A deduplicated name is dropped from the index, the shared block goes with its last name.
+     */
+    private void removeName(String name) {
+        final var content = dedupIndex.isEnabled() ? dedupIndex.contentOf(name) : NO_VALUE;
+
+        if (content == NO_VALUE) {
+            removeBlock(blockStorage.getByName(name));
+            return;
+        }
+
+        final var memoryBlock = findByHandle(dedupIndex.handle(content));
+
+        if (dedupIndex.release(name) && memoryBlock != null)
+            removeBlock(memoryBlock);
+    }
+
+    @Override
+    public int expire() {
+        if (expiryWheel.scheduled() == 0)
+            return 0;
+
+        final var started = startTimer();
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            var expired = 0;
+
+            for (long handle : expiryWheel.advance()) {
+                final MemoryBlock memoryBlock;
+
+                // The collector may have reclaimed the block before its deadline
+                try {
+                    memoryBlock = blockStorage.getByHandle(handle);
+                } catch (ObjectNotFoundException e) {
+                    continue;
+                }
+
+                removeBlock(memoryBlock);
+                expired++;
             }
 
-            memoryBlock.getLinks().forEach(linkedBlock -> readObjects(linkedBlock, list));
+            return expired;
+        } finally {
+            lock.unlockWrite(stamp);
+            stopTimer(started);
         }
     }
 
-    public synchronized void remove(String name) {
-        var memoryBlock = blockStorage.getByName(name);
+    /**
+     * Chunks of a large object go with it, unless the reference counter has already freed them.
+     * Decrements queued before the removal may free the block itself, then it is not removed once more.
+     */
+    private void removeBlock(MemoryBlock memoryBlock) {
+        final var chunks = new ArrayList<Long>();
+
+        for (var chunk = nextChunk(memoryBlock); chunk != null; chunk = nextChunk(chunk))
+            chunks.add(chunk.handle());
+
+        expiryWheel.cancel(memoryBlock.handle());
 
-        blockStorage.remove(memoryBlock);
+        if (referenceCounter.onRemove(memoryBlock)) {
+            writeBarrier.onRemove(memoryBlock);
+            blockStorage.remove(memoryBlock);
+        }
+
+        for (long handle : chunks) {
+            final var chunk = findByHandle(handle);
+
+            if (chunk != null && referenceCounter.onRemove(chunk)) {
+                writeBarrier.onRemove(chunk);
+                blockStorage.remove(chunk);
+            }
+        }
     }
 
     @Override
-    public synchronized void link(String parent, String child) {
-        var parentBlock = blockStorage.getByName(parent);
-        var childBlock = blockStorage.getByName(child);
-        parentBlock.getLinks().add(childBlock);
+    public void link(String parent, String child) {
+        write(() -> linkBlocks(byName(parent), byName(child)));
+    }
 
-        getBlockStorage().getRootBlock().getLinks().remove(childBlock);
+    @Override
+    public void link(long parent, long child) {
+        write(() -> linkBlocks(blockStorage.getByHandle(parent), blockStorage.getByHandle(child)));
+    }
+
+    private void linkBlocks(MemoryBlock parentBlock, MemoryBlock childBlock) {
+        linkBlock(parentBlock, childBlock);
+
+        // A shared block stays held by the root until its last name is removed
+        if (!dedupIndex.isShared(childBlock.handle()))
+            unlinkBlock(blockStorage.getRootBlock(), childBlock);
+    }
+
+    private void linkBlock(MemoryBlock parentBlock, MemoryBlock childBlock) {
+        blockStorage.link(parentBlock, childBlock);
+        writeBarrier.onLink(parentBlock, childBlock);
+        referenceCounter.onLink(childBlock);
     }
 
     @Override
     public void unlink(String parent, String child) {
-        var parentBlock = blockStorage.getByName(parent);
+        write(() -> unlinkBlock(byName(parent), byName(child)));
+    }
+
+    @Override
+    public void unlink(long parent, long child) {
+        write(() -> unlinkBlock(blockStorage.getByHandle(parent), blockStorage.getByHandle(child)));
+    }
 
-        var count = new AtomicInteger();
+    private void unlinkBlock(MemoryBlock parentBlock, MemoryBlock childBlock) {
+        if (!blockStorage.unlink(parentBlock, childBlock))
+            return;
 
-        parentBlock.setLinks(parentBlock.getLinks().stream()
-                .filter(block -> !block.getName().equals(child) && count.incrementAndGet() < 1)
-                .toList()
-        );
+        writeBarrier.onUnlink(parentBlock, childBlock);
+        referenceCounter.onUnlink(childBlock);
+    }
+
+    private void write(Runnable action) {
+        final var started = startTimer();
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.writeLock();
 
-        blockStorage.remove(parentBlock);
-        blockStorage.insert(parentBlock);
+        try {
+            action.run();
+        } finally {
+            lock.unlockWrite(stamp);
+            stopTimer(started);
+        }
+    }
+
+    private long startTimer() {
+        return writeBarrier.isActive() ? System.nanoTime() : 0;
+    }
+
+    private void stopTimer(long started) {
+        if (started != 0)
+            collectionLatencies.record(System.nanoTime() - started);
+    }
+
+    @Override
+    public <T extends Serializable> void registerCodec(Class<T> type, Codec<? super T> codec) {
+        codecs.register(type, codec);
     }
 
     public long free() {
-        return BUFFER_SIZE - blockStorage.totalSize();
+        return arenas.maxCapacity() - blockStorage.totalSize();
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void checkpoint() {
+        write(() -> arenas.checkpoint(sequence));
     }
 
     @PreDestroy
     private void desctruct() {
-        blockStorage.clear();
-        UNSAFE.freeMemory(basePointer);
+        destroyed = true;
+
+        if (checkpointer != null)
+            checkpointer.shutdownNow();
+
+        arenas.close(sequence);
     }
 
     @Override
     public String toString() {
         final var res = new StringBuilder();
 
-        res.append(format("Total: [%d] bytes\n", BUFFER_SIZE));
+        res.append(format("Total: [%d] bytes in [%d] arenas\n", arenas.capacity(), arenas.arenaCount()));
         res.append(format("Free:  [%d] bytes\n", free()));
 
         blockStorage.stream().forEach(res::append);
@@ -178,29 +1004,101 @@ public final class AllocatorServiceImpl implements AllocatorService {
         return res.toString();
     }
 
-    @SneakyThrows
-    private long prepareBytesQueue(ByteArrayOutputStream baos, Queue<Byte> queue) {
-        long length = 0;
+    private String prepareName(Class<?> type) {
+        return nameOf(type, sequence++);
+    }
 
-        try (ByteArrayInputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+    private static String nameOf(Class<?> type, long id) {
+        return type.getSimpleName() + "_" + toHexString(id);
+    }
 
-            while (true) {
-                var bytes = is.readNBytes(2048);
+    private record Payload(int codec, boolean compressed, byte[] bytes) {
+    }
 
-                if (bytes.length == 0)
-                    break;
+    /**
+     * Pre-order walk keeping only handles of pending blocks, so its footprint depends on the fan-out
+     * along the current path rather than on the graph size.
+     */
+    private final class GraphIterator implements Iterator<Serializable> {
+
+        private final TraversalOptions options;
+        private final BitSet visited = new BitSet();
+
+        private long[] handles = new long[16];
+        private int[] depths = new int[16];
+        private int size;
+        private Serializable next;
 
-                length += bytes.length;
+        private GraphIterator(long handle, TraversalOptions options) {
+            this.options = options;
 
-                for (byte b : bytes)
-                    queue.add(b);
+            push(handle, 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && size > 0)
+                next = pull();
+
+            return next != null;
+        }
+
+        @Override
+        public Serializable next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final var result = next;
+            next = null;
+
+            return result;
+        }
+
+        @SneakyThrows
+        private Serializable pull() {
+            final var lock = blockStorage.getLock();
+            final var stamp = lock.readLock();
+
+            try {
+                final var handle = handles[--size];
+                final var depth = depths[size];
+                final MemoryBlock block;
+
+                try {
+                    block = blockStorage.getByHandle(handle);
+                } catch (ObjectNotFoundException e) {
+                    return null;
+                }
+
+                if (visited.get(block.getIndex()) || block.getCodec() == CodecRegistry.CHUNK)
+                    return null;
+
+                visited.set(block.getIndex());
+
+                if (depth < options.getMaxDepth()) {
+                    final var children = block.getLinks().stream().mapToLong(MemoryBlock::handle).toArray();
+
+                    for (int i = children.length - 1; i >= 0; i--)
+                        push(children[i], depth + 1);
+                }
+
+                if (!options.accepts(block, depth))
+                    return null;
+
+                return decode(block);
+            } finally {
+                lock.unlockRead(stamp);
             }
         }
 
-        return length;
-    }
+        private void push(long handle, int depth) {
+            if (size == handles.length) {
+                handles = Arrays.copyOf(handles, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
 
-    private String prepareName(Serializable obj) {
-        return obj.getClass().getSimpleName() + "_" + toHexString(offset);
+            handles[size] = handle;
+            depths[size++] = depth;
+        }
     }
 }
@@ -0,0 +1,35 @@
+package ru.otus.offheap.service;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking facade of {@link AllocatorService}. Calls return at once, the work runs on the configured
+ * executor; futures of a failed call complete exceptionally with the exception of the synchronous call.
+ */
+public interface AsyncAllocatorService {
+
+    /**
+     * Requests queued by any number of callers are stored in batches, so the storage lock is taken
+     * once per batch rather than once per object. Futures still complete per object.
+     */
+    CompletableFuture<String> set(Serializable obj);
+
+    CompletableFuture<Long> put(Serializable obj);
+
+    CompletableFuture<List<Serializable>> get(String name);
+
+    CompletableFuture<List<Serializable>> get(long handle);
+
+    CompletableFuture<List<List<Serializable>>> getAll(Collection<String> names);
+
+    CompletableFuture<Void> remove(String name);
+
+    CompletableFuture<Void> free(long handle);
+
+    CompletableFuture<Void> link(String parent, String child);
+
+    CompletableFuture<Void> unlink(String parent, String child);
+}
@@ -0,0 +1,175 @@
+package ru.otus.offheap.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.exception.NotEnoughMemoryException;
+
+import javax.annotation.PreDestroy;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs allocator calls on an executor of {@code async-parallelism} threads, or on the one passed in,
+ * e.g. a virtual thread per task executor. Encoding and decoding already happen outside the storage lock,
+ * and the lock is a {@link java.util.concurrent.locks.StampedLock}, so no call pins a carrier thread.
+ * <p>
+ * {@link #set} requests go to a lock-free queue drained by a single task at a time, which stores them
+ * by {@link AllocatorService#setAll} in batches of up to {@code async-batch-size}.
+ */
+@Service
+@Slf4j
+public class AsyncAllocatorServiceImpl implements AsyncAllocatorService {
+
+    private final AllocatorService allocatorService;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int batchSize;
+
+    private final Queue<PendingSet> pendingSets = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    @Autowired
+    public AsyncAllocatorServiceImpl(AllocatorService allocatorService, AllocatorProperties properties) {
+        this(allocatorService, properties, new ForkJoinPool(properties.getAsyncParallelism()), true);
+    }
+
+    /**
+     * @param executor executor owned by the caller, it is not shut down with the service
+     */
+    public AsyncAllocatorServiceImpl(AllocatorService allocatorService, AllocatorProperties properties,
+                                     ExecutorService executor) {
+        this(allocatorService, properties, executor, false);
+    }
+
+    private AsyncAllocatorServiceImpl(AllocatorService allocatorService, AllocatorProperties properties,
+                                      ExecutorService executor, boolean ownExecutor) {
+        this.allocatorService = allocatorService;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.batchSize = properties.getAsyncBatchSize();
+    }
+
+    @Override
+    public CompletableFuture<String> set(Serializable obj) {
+        final var request = new PendingSet(obj, new CompletableFuture<>());
+
+        pendingSets.add(request);
+        scheduleDrain();
+
+        return request.result();
+    }
+
+    @Override
+    public CompletableFuture<Long> put(Serializable obj) {
+        return CompletableFuture.supplyAsync(() -> allocatorService.put(obj), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<Serializable>> get(String name) {
+        return CompletableFuture.supplyAsync(() -> allocatorService.get(name), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<Serializable>> get(long handle) {
+        return CompletableFuture.supplyAsync(() -> allocatorService.get(handle), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<List<Serializable>>> getAll(Collection<String> names) {
+        return CompletableFuture.supplyAsync(() -> allocatorService.getAll(names), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(String name) {
+        return CompletableFuture.runAsync(() -> allocatorService.remove(name), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> free(long handle) {
+        return CompletableFuture.runAsync(() -> allocatorService.free(handle), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> link(String parent, String child) {
+        return CompletableFuture.runAsync(() -> allocatorService.link(parent, child), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> unlink(String parent, String child) {
+        return CompletableFuture.runAsync(() -> allocatorService.unlink(parent, child), executor);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (ownExecutor)
+            executor.shutdown();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true))
+            executor.execute(this::drainSets);
+    }
+
+    private void drainSets() {
+        try {
+            final var batch = new ArrayList<PendingSet>(batchSize);
+            PendingSet request;
+
+            while ((request = pendingSets.poll()) != null) {
+                batch.add(request);
+
+                if (batch.size() == batchSize) {
+                    store(batch);
+                    batch.clear();
+                }
+            }
+
+            store(batch);
+        } finally {
+            draining.set(false);
+
+            // A request queued after the last poll, but before the flag was reset, would be left behind
+            if (!pendingSets.isEmpty())
+                scheduleDrain();
+        }
+    }
+
+    private void store(List<PendingSet> batch) {
+        if (batch.isEmpty())
+            return;
+
+        try {
+            final var names = allocatorService.setAll(batch.stream().map(PendingSet::obj).toList());
+
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).result().complete(names.get(i));
+        } catch (NotEnoughMemoryException e) {
+            // Part of the batch may already be placed, so it is not retried
+            batch.forEach(request -> request.result().completeExceptionally(e));
+        } catch (Exception e) {
+            log.debug("Batch of {} objects failed, storing them one by one", batch.size(), e);
+
+            // Encoding failed before anything was stored: one bad object must not fail the whole batch
+            for (PendingSet request : batch) {
+                try {
+                    request.result().complete(allocatorService.set(request.obj()));
+                } catch (Exception failure) {
+                    request.result().completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    private record PendingSet(Serializable obj, CompletableFuture<String> result) {
+    }
+}
@@ -0,0 +1,144 @@
+package ru.otus.offheap.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.config.AllocatorProperties;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Daemon thread running incremental collections when a policy fires: the free space ratio drops
+ * below {@code gc-free-ratio}, free space fragmentation exceeds {@code gc-fragmentation}, or the
+ * allocation rate exceeds {@code gc-allocation-rate} bytes per second. The storage lock is held
+ * for one {@code gc-step-time} slice at a time, so mutators run between slices.
+ * A young collection runs first whenever the nursery is filled above {@code gc-nursery-occupancy}.
+ * Objects past their ttl are removed on every check, before the policies are evaluated.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BackgroundCollector {
+
+    private final GarbageCollector garbageCollector;
+    private final AllocatorService allocatorService;
+    private final MemoryBlockStorage blockStorage;
+    private final ArenaManager arenaManager;
+    private final AllocatorProperties properties;
+
+    private ScheduledExecutorService executor;
+    private long lastAllocatedBytes;
+    private long lastCheck;
+    private volatile long completedCycles;
+
+    @PostConstruct
+    private void init() {
+        if (properties.isBackgroundGcEnabled())
+            start();
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            return;
+
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final var thread = new Thread(task, "offheap-gc");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        lastAllocatedBytes = allocatorService.allocatedBytes();
+        lastCheck = System.nanoTime();
+
+        final var interval = properties.getBackgroundGcInterval().toNanos();
+        executor.scheduleWithFixedDelay(this::collectIfNeeded, interval, interval, TimeUnit.NANOSECONDS);
+
+        log.info("Background collector started");
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (executor == null)
+            return;
+
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        executor = null;
+
+        log.info("Background collector stopped");
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public long getCompletedCycles() {
+        return completedCycles;
+    }
+
+    private void collectIfNeeded() {
+        try {
+            final var expired = allocatorService.expire();
+
+            if (expired > 0)
+                log.debug("{} objects expired", expired);
+
+            if (arenaManager.nurseryOccupancy() > properties.getGcNurseryOccupancy())
+                garbageCollector.collectYoung();
+
+            final var reason = trigger();
+
+            if (reason == null)
+                return;
+
+            log.debug("Background collection triggered by {}", reason);
+
+            while (!garbageCollector.collectStep()) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                Thread.yield();
+            }
+
+            completedCycles++;
+        } catch (RuntimeException e) {
+            log.error("Background collection failed", e);
+        }
+    }
+
+    private String trigger() {
+        final var now = System.nanoTime();
+        final var allocated = allocatorService.allocatedBytes();
+        final var rate = (allocated - lastAllocatedBytes) * 1e9 / Math.max(1, now - lastCheck);
+
+        lastAllocatedBytes = allocated;
+        lastCheck = now;
+
+        final var freeRatio = (double) allocatorService.free() / arenaManager.maxCapacity();
+
+        if (freeRatio < properties.getGcFreeRatio())
+            return format("free ratio %.3f", freeRatio);
+
+        if (properties.getGcAllocationRate() > 0 && rate > properties.getGcAllocationRate())
+            return format("allocation rate %.0f bytes/s", rate);
+
+        final var lock = blockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            final var fragmentation = blockStorage.fragmentation();
+
+            return fragmentation > properties.getGcFragmentation() ? format("fragmentation %.3f", fragmentation) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
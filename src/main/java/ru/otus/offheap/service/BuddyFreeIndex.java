@@ -0,0 +1,172 @@
+package ru.otus.offheap.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Long.numberOfTrailingZeros;
+
+/**
+ * Index of free space kept as binary buddies: pieces of 2^k bytes aligned to their size, so the buddy
+ * of a piece is found by flipping bit k of its address. A freed range is cut into the largest aligned
+ * pieces, each merged with its free buddy level by level; an allocation splits the smallest fitting
+ * piece in halves down to its order. Both take O(log n) steps.
+ * <p>
+ * Arenas share no aligned base, so the free pieces of each order are kept in a set of addresses,
+ * and a bitmap of non-empty orders leads to the smallest fitting one.
+ */
+public class BuddyFreeIndex {
+
+    private static final int ORDERS = 63;
+
+    private final TreeMap<Long, Integer> pieces = new TreeMap<>();
+    private final List<Set<Long>> freeLists = new ArrayList<>(ORDERS);
+    private long nonEmptyOrders;
+    private long totalFree;
+
+    public BuddyFreeIndex() {
+        for (int i = 0; i < ORDERS; i++)
+            freeLists.add(new LinkedHashSet<>());
+    }
+
+    /**
+     * @return bytes granted to a block of the size
+     */
+    public static long extentOf(long size) {
+        return 1L << orderOf(size);
+    }
+
+    public void add(long address, long size) {
+        final var end = address + size;
+
+        while (address < end) {
+            final var order = Math.min(numberOfTrailingZeros(address), floorOrder(end - address));
+
+            release(address, Math.min(order, ORDERS - 1));
+            address += 1L << Math.min(order, ORDERS - 1);
+        }
+    }
+
+    /**
+     * @return address of a free piece with room for the size or -1
+     */
+    public long find(long size) {
+        final var order = orderOf(size);
+
+        if (order >= ORDERS)
+            return -1;
+
+        final var fitting = nonEmptyOrders & (-1L << order);
+
+        return fitting == 0 ? -1 : freeLists.get(numberOfTrailingZeros(fitting)).iterator().next();
+    }
+
+    /**
+     * Takes {@link #extentOf} the size bytes, splitting the smallest fitting piece.
+     *
+     * @return address of the taken piece or -1 if there is none
+     */
+    public long allocate(long size) {
+        final var address = find(size);
+
+        if (address < 0)
+            return -1;
+
+        final var order = orderOf(size);
+        var pieceOrder = pieces.get(address);
+
+        unregister(address, pieceOrder);
+
+        while (pieceOrder > order) {
+            pieceOrder--;
+            register(address + (1L << pieceOrder), pieceOrder);
+        }
+
+        return address;
+    }
+
+    public void removeRange(long from, long to) {
+        new ArrayList<>(pieces.subMap(from, to).entrySet())
+                .forEach(piece -> unregister(piece.getKey(), piece.getValue()));
+    }
+
+    /**
+     * @return free pieces in address order, by address and size
+     */
+    public Map<Long, Long> extents() {
+        final var extents = new TreeMap<Long, Long>();
+
+        pieces.forEach((address, order) -> extents.put(address, 1L << order));
+
+        return extents;
+    }
+
+    public long totalFree() {
+        return totalFree;
+    }
+
+    /**
+     * @return 1 - largest piece / total free space, 0 when free space is a single piece
+     */
+    public double fragmentation() {
+        return totalFree == 0 ? 0 : 1 - (double) (1L << (63 - numberOfLeadingZeros(nonEmptyOrders))) / totalFree;
+    }
+
+    public void clear() {
+        pieces.clear();
+        freeLists.forEach(Set::clear);
+        nonEmptyOrders = 0;
+        totalFree = 0;
+    }
+
+    /**
+     * Frees the piece, merging it with its buddy while the buddy is free as a whole.
+     */
+    private void release(long address, int order) {
+        while (order < ORDERS - 1) {
+            final var buddy = address ^ (1L << order);
+            final var buddyOrder = pieces.get(buddy);
+
+            if (buddyOrder == null || buddyOrder != order)
+                break;
+
+            unregister(buddy, order);
+            address = Math.min(address, buddy);
+            order++;
+        }
+
+        register(address, order);
+    }
+
+    private void register(long address, int order) {
+        pieces.put(address, order);
+        freeLists.get(order).add(address);
+        nonEmptyOrders |= 1L << order;
+        totalFree += 1L << order;
+    }
+
+    private void unregister(long address, int order) {
+        pieces.remove(address);
+
+        final var freeList = freeLists.get(order);
+
+        freeList.remove(address);
+
+        if (freeList.isEmpty())
+            nonEmptyOrders &= ~(1L << order);
+
+        totalFree -= 1L << order;
+    }
+
+    private static int orderOf(long size) {
+        return size <= 1 ? 0 : 64 - numberOfLeadingZeros(size - 1);
+    }
+
+    private static int floorOrder(long size) {
+        return 63 - numberOfLeadingZeros(size);
+    }
+}
@@ -0,0 +1,336 @@
+package ru.otus.offheap.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+import static java.lang.Long.toHexString;
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Block storage reusing free space through a {@link BuddyFreeIndex}. A block placed in free space gets
+ * the whole power-of-two buddy, which is given back and coalesced as soon as the block is removed,
+ * so there is nothing left for {@link #mergeDeletedBlocks}. Blocks placed by the arenas keep their exact size.
+ * <p>
+ * The part of a buddy beyond its block size is counted as used: it is the internal fragmentation
+ * traded for constant-time coalescing, see {@link #getSlackBytes()}.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "offheap.allocator", name = "storage", havingValue = "buddy")
+public class BuddyMemoryBlockStorage implements MemoryBlockStorage {
+
+    private final TreeMap<Long, MemoryBlock> blocks = new TreeMap<>();
+    private final Map<String, MemoryBlock> namedBlocks = new ConcurrentHashMap<>();
+    private final BuddyFreeIndex freeBlocks = new BuddyFreeIndex();
+    private final HandleTable handles = new HandleTable();
+    private final ParentIndex parents = new ParentIndex();
+
+    /**
+     * Buddy sizes of the blocks placed in free space, by address, when larger than the block.
+     */
+    private final TreeMap<Long, Long> extents = new TreeMap<>();
+    private final TreeMap<Long, Long> heldSpace = new TreeMap<>();
+    private boolean holdingFreedSpace;
+    private MemoryBlock rootBlock;
+    private long size = 0;
+
+    /**
+     * Bytes of granted buddies not covered by their blocks.
+     */
+    @Getter
+    private long slackBytes = 0;
+
+    @Getter
+    private final StampedLock lock = new StampedLock();
+
+    private static final String ROOT_NAME = "root_block";
+    private static final String DELETED_NAME = "deleted";
+
+    @Override
+    public MemoryBlock insert(MemoryBlock block) {
+        return insert(block, true);
+    }
+
+    @Override
+    public MemoryBlock insertAt(MemoryBlock block) {
+        return insert(block, false);
+    }
+
+    private MemoryBlock insert(MemoryBlock block, boolean reuseFreeSpace) {
+        if (block.getName() != null && namedBlocks.containsKey(block.getName()))
+            throw new RuntimeException("Block [" + block.getName() + "] already exists");
+
+        if (reuseFreeSpace && !block.isRoot() && block.getSize() > 0) {
+            final var freeAddress = freeBlocks.allocate(block.getSize());
+
+            if (freeAddress >= 0) {
+                final var extent = BuddyFreeIndex.extentOf(block.getSize());
+
+                log.info("Reusing a buddy of {} bytes at [0x{}] for {} bytes", extent, toHexString(freeAddress),
+                        block.getSize());
+
+                block = block.clone(freeAddress);
+
+                if (extent > block.getSize()) {
+                    extents.put(freeAddress, extent);
+                    slackBytes += extent - block.getSize();
+                }
+            }
+        }
+
+        blocks.put(block.getAddress(), block);
+        handles.register(block);
+        size += block.getSize();
+
+        if (block.getName() != null)
+            namedBlocks.put(block.getName(), block);
+
+        if (block.isRoot())
+            rootBlock = block;
+
+        return block;
+    }
+
+    @Override
+    public void remove(MemoryBlock memoryBlock) {
+        if (memoryBlock.isRoot())
+            return;
+
+        final var block = blocks.get(memoryBlock.getAddress());
+
+        if (block == null || block.isDeleted())
+            return;
+
+        free(block);
+        parents.detach(block);
+    }
+
+    @Override
+    public void release(MemoryBlock block) {
+        if (block.isRoot() || block.isDeleted())
+            return;
+
+        free(block);
+        parents.forget(block);
+    }
+
+    private void free(MemoryBlock block) {
+        block.setDeleted(true);
+        handles.unregister(block);
+        blocks.remove(block.getAddress(), block);
+
+        if (block.getName() != null)
+            namedBlocks.remove(block.getName(), block);
+
+        size -= block.getSize();
+        freeSpace(block.getAddress(), block.getSize() + dropSlack(block.getAddress(), block.getSize()));
+    }
+
+    /**
+     * Forgets the buddy granted at the address.
+     *
+     * @return bytes of the buddy beyond the block size
+     */
+    private long dropSlack(long address, long blockSize) {
+        final var extent = extents.remove(address);
+        final var slack = extent == null ? 0 : extent - blockSize;
+
+        slackBytes -= slack;
+
+        return slack;
+    }
+
+    @Override
+    public void link(MemoryBlock parent, MemoryBlock child) {
+        parent.getLinks().add(child);
+        parents.link(parent, child);
+    }
+
+    @Override
+    public boolean unlink(MemoryBlock parent, MemoryBlock child) {
+        if (!parent.getLinks().remove(child))
+            return false;
+
+        parents.unlink(parent, child);
+
+        return true;
+    }
+
+    @Override
+    public boolean hasFreeBlock(long requiredSize) {
+        return freeBlocks.find(requiredSize) >= 0;
+    }
+
+    @Override
+    public void holdFreedSpace() {
+        holdingFreedSpace = true;
+    }
+
+    @Override
+    public void releaseHeldSpace() {
+        heldSpace.forEach(freeBlocks::add);
+        heldSpace.clear();
+    }
+
+    private void freeSpace(long address, long length) {
+        if (holdingFreedSpace)
+            heldSpace.put(address, length);
+        else
+            freeBlocks.add(address, length);
+    }
+
+    @Override
+    public void addFreeSpace(long address, long size) {
+        freeBlocks.add(address, size);
+    }
+
+    @Override
+    public boolean releaseRegion(long from, long to) {
+        if (blocks.subMap(from, to).values().stream().anyMatch(block -> !block.isRoot())
+                || !heldSpace.subMap(from, to).isEmpty())
+            return false;
+
+        dropFreeSpace(from, to);
+
+        return true;
+    }
+
+    /**
+     * Blocks of the region are trimmed to their size, as the caller is about to lay it out anew.
+     */
+    @Override
+    public void dropFreeSpace(long from, long to) {
+        freeBlocks.removeRange(from, to);
+        heldSpace.subMap(from, to).clear();
+
+        for (var address : new ArrayList<>(extents.subMap(from, to).keySet()))
+            dropSlack(address, blocks.get(address).getSize());
+    }
+
+    @Override
+    public void relocate(Map<MemoryBlock, Long> moves) {
+        final var relocated = new IdentityHashMap<MemoryBlock, MemoryBlock>();
+
+        moves.keySet().forEach(block -> {
+            blocks.remove(block.getAddress(), block);
+            dropSlack(block.getAddress(), block.getSize());
+        });
+        moves.forEach((block, address) -> {
+            final var newBlock = block.clone(address);
+
+            blocks.put(address, newBlock);
+            handles.replace(block, newBlock);
+            relocated.put(block, newBlock);
+
+            if (newBlock.getName() != null)
+                namedBlocks.replace(newBlock.getName(), block, newBlock);
+        });
+
+        parents.relocate(relocated);
+    }
+
+    @Override
+    public MemoryBlock getByName(String name) {
+        final var block = namedBlocks.get(name);
+
+        if (block == null || block.isRoot())
+            throw new ObjectNotFoundException("Could not find object: " + name);
+
+        return block;
+    }
+
+    @Override
+    public MemoryBlock getByHandle(long handle) {
+        final var block = handles.get(handle);
+
+        if (block == null || block.isRoot())
+            throw new ObjectNotFoundException("Could not find object by handle: 0x" + toHexString(handle));
+
+        return block;
+    }
+
+    @Override
+    public void mergeDeletedBlocks() {
+        // Buddies are coalesced as soon as blocks are released
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        namedBlocks.clear();
+        freeBlocks.clear();
+        handles.clear();
+        parents.clear();
+        extents.clear();
+        heldSpace.clear();
+        holdingFreedSpace = false;
+        rootBlock = null;
+        size = 0;
+        slackBytes = 0;
+    }
+
+    @Override
+    public Stream<MemoryBlock> stream() {
+        final var all = new ArrayList<>(blocks.values());
+
+        freeBlocks.extents().forEach((address, length) -> all.add(MemoryBlock.builder()
+                .index(-1)
+                .address(address)
+                .size(length)
+                .links(new ArrayList<>())
+                .deleted(true)
+                .fullClassName("")
+                .name(DELETED_NAME)
+                .build()));
+
+        return all.stream().sorted(comparingLong(MemoryBlock::getAddress));
+    }
+
+    /**
+     * Live blocks only, free space is not kept as blocks.
+     */
+    @Override
+    public Stream<MemoryBlock> streamFrom(long address) {
+        return blocks.tailMap(address, true).values().stream();
+    }
+
+    @Override
+    public int totalSize() {
+        return (int) (size + slackBytes);
+    }
+
+    @Override
+    public int indexCapacity() {
+        return handles.capacity();
+    }
+
+    @Override
+    public double fragmentation() {
+        return freeBlocks.fragmentation();
+    }
+
+    @Override
+    public MemoryBlock getRootBlock() {
+        if (rootBlock == null)
+            return insert(MemoryBlock.builder()
+                    .name(ROOT_NAME)
+                    .links(new ArrayList<>())
+                    .root(true)
+                    .fullClassName("")
+                    .build());
+
+        return rootBlock;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.otus.offheap.service;
+
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * Payload of a block followed by the chunks chained to it, read in place. Chunks are resolved by handle,
+ * so the stream survives compaction. Given a lock, every read holds it briefly and fails if the object has been
+ * removed meanwhile; without one, the caller holds the lock for the whole reading.
+ */
+final class ChunkInputStream extends InputStream {
+
+    private final MemoryBlockStorage storage;
+    private final StampedLock lock;
+    private final byte[] single = new byte[1];
+
+    private long chunk;
+    private long position;
+    private boolean finished;
+
+    ChunkInputStream(MemoryBlockStorage storage, MemoryBlock head, StampedLock lock) {
+        this.storage = storage;
+        this.lock = lock;
+        this.chunk = head.handle();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+
+        if (len == 0)
+            return 0;
+
+        final var stamp = lock == null ? 0 : lock.readLock();
+
+        try {
+            var read = 0;
+
+            while (read < len && !finished) {
+                final var block = resolve();
+
+                if (position == block.getSize()) {
+                    next(block);
+                    continue;
+                }
+
+                final var count = (int) Math.min(len - read, block.getSize() - position);
+
+                UNSAFE.copyMemory(null, block.getAddress() + position, b, ARRAY_BYTE_BASE_OFFSET + off + read, count);
+                position += count;
+                read += count;
+            }
+
+            return read == 0 ? -1 : read;
+        } finally {
+            if (lock != null)
+                lock.unlockRead(stamp);
+        }
+    }
+
+    private MemoryBlock resolve() throws IOException {
+        try {
+            return storage.getByHandle(chunk);
+        } catch (ObjectNotFoundException e) {
+            throw new IOException("Object was removed while being read", e);
+        }
+    }
+
+    private void next(MemoryBlock block) {
+        final var next = AllocatorServiceImpl.nextChunk(block);
+
+        if (next != null) {
+            chunk = next.handle();
+            position = 0;
+        } else {
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ru.otus.offheap.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.util.ClassNameDictionary;
+import ru.otus.offheap.util.OffHeapLongIntMap;
+import ru.otus.offheap.util.OffHeapRecordTable;
+
+import javax.annotation.PreDestroy;
+
+import static ru.otus.offheap.util.OffHeapLongIntMap.NO_VALUE;
+
+/**
+ * Content index of the {@code deduplication} mode. A stored payload is found by its xxHash64, and every name
+ * given to it by {@code set} shares one unnamed block held by the root. The block is removed with its last name.
+ * <p>
+ * Contents, names and the indices are kept in native memory; names are indexed by their sequence number and keep
+ * the id of their class name prefix, which must match as well. Lookups are safe for optimistic readers, changes
+ * must be made under the storage write lock.
+ */
+@Component
+@RequiredArgsConstructor
+public class DedupIndex {
+
+    // Content record layout
+    private static final int HANDLE = 0;
+    private static final int HASH = 8;
+    private static final int SHARES = 16;
+    private static final int SIZE = 24;
+    private static final int RECORD_SIZE = 32;
+
+    // Name record layout
+    private static final int CONTENT = 0;
+    private static final int PREFIX_ID = 4;
+    private static final int NAME_RECORD_SIZE = 8;
+
+    private final AllocatorProperties properties;
+
+    private final OffHeapRecordTable contents = new OffHeapRecordTable(RECORD_SIZE);
+    private final OffHeapLongIntMap contentsByHash = new OffHeapLongIntMap();
+    private final OffHeapRecordTable names = new OffHeapRecordTable(NAME_RECORD_SIZE);
+    private final OffHeapLongIntMap namesBySequence = new OffHeapLongIntMap();
+    private final ClassNameDictionary prefixes = new ClassNameDictionary();
+    private final OffHeapLongIntMap contentsByHandle = new OffHeapLongIntMap();
+
+    /**
+     * Payload bytes not allocated thanks to sharing.
+     */
+    @Getter
+    private long savedBytes;
+
+    /**
+     * The index is not persisted, so the mode is off with {@code persistence-dir}.
+     */
+    public boolean isEnabled() {
+        return properties.isDeduplication() && properties.getPersistenceDir() == null;
+    }
+
+    /**
+     * @return content with the hash or {@link OffHeapLongIntMap#NO_VALUE}
+     */
+    public int find(long hash) {
+        return contentsByHash.get(key(hash));
+    }
+
+    /**
+     * Indexes the block under the hash, replacing the content previously found by it.
+     *
+     * @return the new content, not shared by any name yet
+     */
+    public int add(long hash, long handle, long size) {
+        final var content = contents.allocate();
+
+        contents.putLong(content, HANDLE, handle);
+        contents.putLong(content, HASH, hash);
+        contents.putInt(content, SHARES, 0);
+        contents.putLong(content, SIZE, size);
+        contentsByHash.put(key(hash), content);
+        contentsByHandle.put(handle, content);
+
+        return content;
+    }
+
+    public void share(int content, String name) {
+        if (contents.getInt(content, SHARES) > 0)
+            savedBytes += contents.getLong(content, SIZE);
+
+        final var record = names.allocate();
+
+        names.putInt(record, CONTENT, content);
+        names.putInt(record, PREFIX_ID, prefixes.intern(name.substring(0, name.lastIndexOf('_'))));
+        contents.putInt(content, SHARES, contents.getInt(content, SHARES) + 1);
+        namesBySequence.put(sequenceOf(name), record);
+    }
+
+    public long handle(int content) {
+        return contents.getLong(content, HANDLE);
+    }
+
+    public int shares(int content) {
+        return contents.getInt(content, SHARES);
+    }
+
+    /**
+     * @return true if the block is shared by deduplicated names
+     */
+    public boolean isShared(long handle) {
+        return contentsByHandle.get(handle) != NO_VALUE;
+    }
+
+    /**
+     * @return content shared by the name or {@link OffHeapLongIntMap#NO_VALUE}
+     * @throws ObjectNotFoundException if the sequence of the name is shared under another class name
+     */
+    public int contentOf(String name) {
+        final var record = nameRecord(name);
+
+        return record == NO_VALUE ? NO_VALUE : names.getInt(record, CONTENT);
+    }
+
+    /**
+     * Forgets the name. The content is dropped together with its last name.
+     *
+     * @return true if that was the last name, so the block is to be removed
+     */
+    public boolean release(String name) {
+        final var record = nameRecord(name);
+
+        if (record == NO_VALUE)
+            return false;
+
+        final var content = names.getInt(record, CONTENT);
+
+        namesBySequence.remove(sequenceOf(name));
+        names.free(record);
+
+        final var shares = contents.getInt(content, SHARES) - 1;
+
+        if (shares > 0) {
+            contents.putInt(content, SHARES, shares);
+            savedBytes -= contents.getLong(content, SIZE);
+
+            return false;
+        }
+
+        final var hash = contents.getLong(content, HASH);
+
+        // The hash may already lead to a newer content if this one went stale
+        if (contentsByHash.get(key(hash)) == content)
+            contentsByHash.remove(key(hash));
+
+        contentsByHandle.remove(contents.getLong(content, HANDLE));
+        contents.free(content);
+
+        return true;
+    }
+
+    @PreDestroy
+    public void clear() {
+        contents.clear();
+        contentsByHash.clear();
+        names.clear();
+        namesBySequence.clear();
+        prefixes.clear();
+        contentsByHandle.clear();
+        savedBytes = 0;
+    }
+
+    /**
+     * The map reserves a negative key, hashes are indexed by their lower 63 bits.
+     */
+    private static long key(long hash) {
+        return hash & Long.MAX_VALUE;
+    }
+
+    /**
+     * @return name record or {@link OffHeapLongIntMap#NO_VALUE} if the sequence is not shared
+     */
+    private int nameRecord(String name) {
+        final var sequence = sequenceOf(name);
+        final var record = sequence < 0 ? NO_VALUE : namesBySequence.get(sequence);
+
+        if (record == NO_VALUE)
+            return NO_VALUE;
+
+        final var prefix = prefixes.name(names.getInt(record, PREFIX_ID));
+
+        if (prefix.length() != name.lastIndexOf('_') || !name.startsWith(prefix))
+            throw new ObjectNotFoundException("Could not find object: " + name);
+
+        return record;
+    }
+
+    private static long sequenceOf(String name) {
+        final var separator = name.lastIndexOf('_');
+
+        try {
+            return separator < 0 ? -1 : Long.parseLong(name, separator + 1, name.length(), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
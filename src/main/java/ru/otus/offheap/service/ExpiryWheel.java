@@ -0,0 +1,218 @@
+package ru.otus.offheap.service;
+
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.util.OffHeapLongIntMap;
+import ru.otus.offheap.util.OffHeapRecordTable;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static ru.otus.offheap.util.OffHeapLongIntMap.NO_VALUE;
+
+/**
+ * Hierarchical timing wheel of object deadlines with ticks of {@code expiry-tick}. Level i has 64 slots
+ * of 64^i ticks each, so scheduling and cancelling are O(1) and advancing touches only the slots the clock
+ * has passed: timers of a passed higher level slot are either expired or cascaded to a lower level.
+ * Advancing costs O(expired + cascaded), not O(scheduled).
+ * <p>
+ * Timers are kept in native memory and indexed by block handle. Must be called under the storage write lock.
+ */
+@Component
+public class ExpiryWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+    private static final int NIL = -1;
+
+    // Timer record layout
+    private static final int HANDLE = 0;
+    private static final int DEADLINE = 8;
+    private static final int PREVIOUS = 16;
+    private static final int NEXT = 20;
+    private static final int BUCKET = 24;
+    private static final int RECORD_SIZE = 32;
+
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final OffHeapRecordTable timers = new OffHeapRecordTable(RECORD_SIZE);
+    private final OffHeapLongIntMap timersByHandle = new OffHeapLongIntMap();
+    private final int[] buckets = new int[LEVELS * SLOTS];
+
+    private long currentTick;
+    private long[] expired = new long[64];
+    private int expiredCount;
+    private volatile int scheduled;
+
+    public ExpiryWheel(AllocatorProperties properties) {
+        this.tickNanos = properties.getExpiryTick().toNanos();
+
+        Arrays.fill(buckets, NIL);
+    }
+
+    /**
+     * Sets the deadline of the block, replacing the previous one.
+     */
+    public void schedule(long handle, Duration ttl) {
+        cancel(handle);
+
+        final var timer = timers.allocate();
+        final var deadline = now() + ttl.toNanos();
+
+        timers.putLong(timer, HANDLE, handle);
+        timers.putLong(timer, DEADLINE, deadline);
+        timersByHandle.put(handle, timer);
+        place(timer, deadline / tickNanos);
+
+        scheduled++;
+    }
+
+    public void cancel(long handle) {
+        final var timer = timersByHandle.get(handle);
+
+        if (timer == NO_VALUE)
+            return;
+
+        unlink(timer);
+        release(timer, handle);
+    }
+
+    public boolean isExpired(long handle) {
+        final var timer = timersByHandle.get(handle);
+
+        return timer != NO_VALUE && timers.getLong(timer, DEADLINE) <= now();
+    }
+
+    /**
+     * @return time left until the deadline of the block, negative if it has passed, or null if none is scheduled
+     */
+    public Duration remaining(long handle) {
+        final var timer = timersByHandle.get(handle);
+
+        return timer == NO_VALUE ? null : Duration.ofNanos(timers.getLong(timer, DEADLINE) - now());
+    }
+
+    /**
+     * May be read without the lock.
+     *
+     * @return number of scheduled deadlines
+     */
+    public int scheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Moves the wheel to the current time. Expired timers are dropped.
+     *
+     * @return handles of the expired blocks
+     */
+    public long[] advance() {
+        final var now = now();
+        final var nowTick = now / tickNanos;
+        final var previousTick = currentTick;
+
+        currentTick = nowTick;
+        expiredCount = 0;
+
+        for (int level = 0; level < LEVELS; level++) {
+            final var shift = SLOT_BITS * level;
+            final var from = previousTick >>> shift;
+            final var to = nowTick >>> shift;
+
+            // Slots of higher levels are coarser, none of them has been passed either
+            if (level > 0 && from == to)
+                break;
+
+            final var passed = Math.min(SLOTS, to - from + 1);
+
+            for (long i = 0; i < passed; i++)
+                expireBucket(level * SLOTS + (int) ((from + i) & (SLOTS - 1)), now);
+        }
+
+        return Arrays.copyOf(expired, expiredCount);
+    }
+
+    @PreDestroy
+    public void clear() {
+        timers.clear();
+        timersByHandle.clear();
+        Arrays.fill(buckets, NIL);
+        scheduled = 0;
+    }
+
+    private void expireBucket(int bucket, long now) {
+        var timer = buckets[bucket];
+
+        // Timers not due yet are placed again, possibly into this very bucket
+        buckets[bucket] = NIL;
+
+        while (timer != NIL) {
+            final var next = timers.getInt(timer, NEXT);
+            final var deadline = timers.getLong(timer, DEADLINE);
+
+            if (deadline <= now) {
+                final var handle = timers.getLong(timer, HANDLE);
+
+                if (expiredCount == expired.length)
+                    expired = Arrays.copyOf(expired, expiredCount * 2);
+
+                expired[expiredCount++] = handle;
+                release(timer, handle);
+            } else {
+                place(timer, deadline / tickNanos);
+            }
+
+            timer = next;
+        }
+    }
+
+    /**
+     * Puts the timer on the lowest level whose span covers the remaining ticks. Deadlines beyond the top level
+     * wrap around and are placed again when their slot is passed.
+     */
+    private void place(int timer, long deadlineTick) {
+        final var remaining = deadlineTick - currentTick;
+        var level = 0;
+
+        while (level < LEVELS - 1 && remaining >= 1L << (SLOT_BITS * (level + 1)))
+            level++;
+
+        final var bucket = level * SLOTS + (int) ((Math.max(deadlineTick, currentTick) >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        final var head = buckets[bucket];
+
+        timers.putInt(timer, BUCKET, bucket);
+        timers.putInt(timer, PREVIOUS, NIL);
+        timers.putInt(timer, NEXT, head);
+
+        if (head != NIL)
+            timers.putInt(head, PREVIOUS, timer);
+
+        buckets[bucket] = timer;
+    }
+
+    private void unlink(int timer) {
+        final var previous = timers.getInt(timer, PREVIOUS);
+        final var next = timers.getInt(timer, NEXT);
+
+        if (previous != NIL)
+            timers.putInt(previous, NEXT, next);
+        else
+            buckets[timers.getInt(timer, BUCKET)] = next;
+
+        if (next != NIL)
+            timers.putInt(next, PREVIOUS, previous);
+    }
+
+    private void release(int timer, long handle) {
+        timersByHandle.remove(handle);
+        timers.free(timer);
+
+        scheduled--;
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.otus.offheap.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Index of free extents (runs of adjacent deleted blocks).
+ * Small extents are kept in power-of-two size class lists, large ones in a size-ordered map.
+ */
+public class FreeBlockIndex {
+
+    private static final int LARGE_CLASS = 16;
+    private static final int EXACT_CLASS_SCAN_LIMIT = 8;
+
+    private final TreeMap<Long, Long> extents = new TreeMap<>();
+    private final List<Set<Long>> sizeClasses = new ArrayList<>(LARGE_CLASS);
+    private final TreeMap<Long, Set<Long>> largeExtents = new TreeMap<>();
+
+    public FreeBlockIndex() {
+        for (int i = 0; i < LARGE_CLASS; i++)
+            sizeClasses.add(new LinkedHashSet<>());
+    }
+
+    public void add(long address, long size) {
+        if (size <= 0)
+            return;
+
+        var left = extents.floorEntry(address);
+
+        if (left != null && left.getKey() + left.getValue() == address) {
+            unregister(left.getKey(), left.getValue());
+            address = left.getKey();
+            size += left.getValue();
+        }
+
+        var right = extents.get(address + size);
+
+        if (right != null) {
+            unregister(address + size, right);
+            size += right;
+        }
+
+        register(address, size);
+    }
+
+    public void take(long address, long size) {
+        var extentSize = extents.get(address);
+
+        if (extentSize == null || extentSize < size)
+            throw new IllegalStateException("No free extent of " + size + " bytes at " + address);
+
+        unregister(address, extentSize);
+
+        if (extentSize > size)
+            register(address + size, extentSize - size);
+    }
+
+    public long find(long size) {
+        int sizeClass = sizeClassOf(size);
+
+        if (sizeClass < LARGE_CLASS) {
+            var exactClass = sizeClasses.get(sizeClass);
+            Iterator<Long> it = exactClass.iterator();
+
+            for (int i = 0; i < EXACT_CLASS_SCAN_LIMIT && it.hasNext(); i++) {
+                var address = it.next();
+
+                if (extents.get(address) >= size)
+                    return address;
+            }
+
+            for (int i = sizeClass + 1; i < LARGE_CLASS; i++) {
+                var biggerClass = sizeClasses.get(i);
+
+                if (!biggerClass.isEmpty())
+                    return biggerClass.iterator().next();
+            }
+        }
+
+        Map.Entry<Long, Set<Long>> large = largeExtents.ceilingEntry(size);
+
+        return large == null ? -1 : large.getValue().iterator().next();
+    }
+
+    public void removeRange(long from, long to) {
+        new ArrayList<>(extents.subMap(from, to).entrySet())
+                .forEach(extent -> unregister(extent.getKey(), extent.getValue()));
+    }
+
+    public Map<Long, Long> extents() {
+        return extents;
+    }
+
+    public long totalFree() {
+        return extents.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return 1 - largest extent / total free space, 0 when free space is a single extent
+     */
+    public double fragmentation() {
+        long total = 0;
+        long largest = 0;
+
+        for (long size : extents.values()) {
+            total += size;
+            largest = Math.max(largest, size);
+        }
+
+        return total == 0 ? 0 : 1 - (double) largest / total;
+    }
+
+    public void clear() {
+        extents.clear();
+        sizeClasses.forEach(Set::clear);
+        largeExtents.clear();
+    }
+
+    private void register(long address, long size) {
+        extents.put(address, size);
+
+        int sizeClass = sizeClassOf(size);
+
+        if (sizeClass < LARGE_CLASS)
+            sizeClasses.get(sizeClass).add(address);
+        else
+            largeExtents.computeIfAbsent(size, s -> new LinkedHashSet<>()).add(address);
+    }
+
+    private void unregister(long address, long size) {
+        extents.remove(address);
+
+        int sizeClass = sizeClassOf(size);
+
+        if (sizeClass < LARGE_CLASS) {
+            sizeClasses.get(sizeClass).remove(address);
+            return;
+        }
+
+        var sameSize = largeExtents.get(size);
+        sameSize.remove(address);
+
+        if (sameSize.isEmpty())
+            largeExtents.remove(size);
+    }
+
+    private static int sizeClassOf(long size) {
+        return 63 - numberOfLeadingZeros(Math.max(size, 1));
+    }
+}
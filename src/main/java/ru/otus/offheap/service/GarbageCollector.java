@@ -3,4 +3,24 @@ package ru.otus.offheap.service;
 public interface GarbageCollector {
 
     void performGC();
+
+    /**
+     * Runs one slice of an incremental collection, bounded by the configured work and time budget.
+     * The allocator keeps serving calls between slices.
+     *
+     * @return true if the slice finished the collection cycle
+     */
+    boolean collectStep();
+
+    /**
+     * Moves live blocks to the start of their arenas, one arena per lock hold, so scattered holes
+     * merge into one free extent per arena.
+     */
+    void compact();
+
+    /**
+     * Copies nursery blocks reachable from the remembered set to the ordinary arenas and empties the nursery.
+     * The work is proportional to the young blocks, old blocks are neither marked nor swept.
+     */
+    void collectYoung();
 }
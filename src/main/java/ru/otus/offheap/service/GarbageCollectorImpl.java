@@ -3,52 +3,342 @@ package ru.otus.offheap.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.config.AllocatorProperties;
 import ru.otus.offheap.model.MemoryBlock;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.lang.String.format;
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class GarbageCollectorImpl implements GarbageCollector {
 
+    private static final int SWEEP_BATCH = 256;
+
     private final MemoryBlockStorage memoryBlockStorage;
+    private final ArenaManager arenaManager;
+    private final WriteBarrier writeBarrier;
+    private final ReferenceCounter referenceCounter;
+    private final AllocatorProperties properties;
+
+    private MarkState markState;
+    private boolean sweeping;
+    private long sweepCursor;
+    private List<MemoryBlock> rootLinks;
+    private int rootCursor;
+    private int collectedBlocks;
+    private ForkJoinPool markPool;
 
     @Override
     public void performGC() {
-        memoryBlockStorage.mergeDeletedBlocks();
+        final var lock = memoryBlockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            collectGarbage(new Budget(Long.MAX_VALUE, Long.MAX_VALUE));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean collectStep() {
+        final var lock = memoryBlockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            return collectGarbage(new Budget(properties.getGcStepBudget(), properties.getGcStepTime().toNanos()));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void compact() {
+        final var lock = memoryBlockStorage.getLock();
+        final var before = fragmentation();
+        long gathered = 0;
+
+        for (int i = 0; ; i++) {
+            final var stamp = lock.writeLock();
+
+            try {
+                if (i >= arenaManager.arenaCount())
+                    break;
 
-        var blocks = ((MemoryBlockStorageImpl) memoryBlockStorage).getBlocks();
-        var aliveBlockAddressess = new HashSet<Long>();
+                // The sweep walks blocks by address, so a cycle in progress has to finish before blocks move
+                if (markState != null)
+                    collectGarbage(new Budget(Long.MAX_VALUE, Long.MAX_VALUE));
 
-        collectAliveLinks(memoryBlockStorage.getRootBlock(), aliveBlockAddressess, blocks);
+                gathered += arenaManager.compact(i);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
 
-        AtomicInteger collectedBlocks = new AtomicInteger();
+        log.info("Compaction gathered {} free bytes, fragmentation {} -> {}",
+                gathered, format("%.3f", before), format("%.3f", fragmentation()));
+    }
 
-        blocks.forEach((address, block) -> {
-            if (block.isDeleted() || block.isRoot())
+    @Override
+    public void collectYoung() {
+        final var lock = memoryBlockStorage.getLock();
+        final var stamp = lock.writeLock();
+
+        try {
+            if (!arenaManager.hasNursery())
                 return;
 
-            if (!aliveBlockAddressess.contains(address)) {
-                block.setDeleted(true);
-                collectedBlocks.incrementAndGet();
+            // Promotion moves blocks, so a cycle in progress has to finish first, as for compaction
+            if (markState != null)
+                collectGarbage(new Budget(Long.MAX_VALUE, Long.MAX_VALUE));
+
+            referenceCounter.flush();
+            collectNursery();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Nursery blocks are written under the storage lock, so every block seen here already holds its payload.
+     */
+    private void collectNursery() {
+        final var started = System.nanoTime();
+        final var live = new BitSet();
+        final var survivors = traceYoung(live);
+        final var moves = new LinkedHashMap<MemoryBlock, Long>();
+        final var unmoved = new ArrayList<MemoryBlock>();
+        long promotedBytes = 0;
+
+        for (MemoryBlock block : survivors) {
+            final var address = unmoved.isEmpty() ? arenaManager.promote(block.getSize()) : -1;
+
+            if (address < 0) {
+                unmoved.add(block);
+                continue;
             }
+
+            UNSAFE.copyMemory(block.getAddress(), address, block.getSize());
+            moves.put(block, address);
+            promotedBytes += block.getSize();
+        }
+
+        memoryBlockStorage.relocate(moves);
+
+        final var top = arenaManager.nurseryTop();
+        final var dead = memoryBlockStorage.streamFrom(arenaManager.nurseryStart())
+                .takeWhile(block -> block.getAddress() < top)
+                .filter(block -> !block.isDeleted() && !live.get(block.getIndex()))
+                .toList();
+
+        dead.forEach(block -> {
+            referenceCounter.onRelease(block);
+            memoryBlockStorage.release(block);
         });
 
+        if (unmoved.isEmpty())
+            arenaManager.resetNursery();
+        else
+            log.warn("Arenas are exhausted, {} young blocks stay in the nursery", unmoved.size());
+
+        writeBarrier.resetRemembered(unmoved);
+
+        log.info("Young collection promoted {} blocks ({} bytes), collected {} blocks in {} us",
+                moves.size(), promotedBytes, dead.size(), (System.nanoTime() - started) / 1000);
+    }
+
+    /**
+     * Depth-first walk from the remembered set that never leaves the nursery.
+     */
+    private List<MemoryBlock> traceYoung(BitSet live) {
+        final var survivors = new ArrayList<MemoryBlock>();
+        final var stack = new ArrayDeque<>(writeBarrier.rememberedBlocks());
+
+        while (!stack.isEmpty()) {
+            final var block = stack.pop();
+
+            if (block.isDeleted() || !arenaManager.isYoung(block.getAddress()) || live.get(block.getIndex()))
+                continue;
+
+            live.set(block.getIndex());
+            survivors.add(block);
+            block.getLinks().forEach(stack::push);
+        }
+
+        return survivors;
+    }
+
+    private double fragmentation() {
+        final var lock = memoryBlockStorage.getLock();
+        final var stamp = lock.readLock();
+
+        try {
+            return memoryBlockStorage.fragmentation();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean collectGarbage(Budget budget) {
+        if (markState == null)
+            startCycle();
+
+        if (!sweeping) {
+            if (budget.isUnbounded() && properties.getGcParallelism() > 1)
+                markInParallel();
+
+            if (!mark(budget))
+                return false;
+
+            sweeping = true;
+            writeBarrier.beginSweep();
+        }
+
+        if (!sweep(budget))
+            return false;
+
+        finishCycle();
+
+        return true;
+    }
+
+    private void startCycle() {
+        referenceCounter.flush();
+        memoryBlockStorage.mergeDeletedBlocks();
+
+        markState = new MarkState(memoryBlockStorage);
+        sweeping = false;
+        sweepCursor = 0;
+        collectedBlocks = 0;
+
+        final var links = memoryBlockStorage.getRootBlock().getLinks();
+
+        rootLinks = links instanceof RandomAccess ? links : List.copyOf(links);
+        rootCursor = rootLinks.size();
+        writeBarrier.begin(markState);
+    }
+
+    private boolean mark(Budget budget) {
+        if (!shadeRootLinks(budget))
+            return false;
+
+        while (markState.hasGray()) {
+            if (budget.exhausted())
+                return false;
+
+            markState.scanNext();
+        }
+
+        return true;
+    }
+
+    /**
+     * Shades the root links from the last one down, a step at a time. Links the root gains or loses meanwhile
+     * are shaded by the write barrier. Removing a link below the cursor moves an already shaded link down to it
+     * and nothing unvisited above it, so a link may be shaded twice but is never skipped. Lists without random
+     * access are copied at the start of the cycle.
+     */
+    private boolean shadeRootLinks(Budget budget) {
+        while (rootCursor > 0) {
+            if (budget.exhausted())
+                return false;
+
+            rootCursor = Math.min(rootCursor, rootLinks.size()) - 1;
+            markState.shade(rootLinks.get(rootCursor));
+        }
+
+        return true;
+    }
+
+    private void markInParallel() {
+        if (markPool == null)
+            markPool = new ForkJoinPool(properties.getGcParallelism());
+
+        final var started = System.nanoTime();
+
+        markState.markAll(ParallelMarker.mark(memoryBlockStorage.getRootBlock().getLinks(),
+                memoryBlockStorage.indexCapacity(), markPool));
+        rootCursor = 0;
+
+        log.debug("Parallel mark took {} us", (System.nanoTime() - started) / 1000);
+    }
+
+    private boolean sweep(Budget budget) {
+        while (!budget.exhausted()) {
+            final var batch = memoryBlockStorage.streamFrom(sweepCursor).limit(SWEEP_BATCH).toList();
+
+            if (batch.isEmpty())
+                return true;
+
+            for (MemoryBlock block : batch) {
+                if (block.isDeleted() || markState.isMarked(block))
+                    continue;
+
+                referenceCounter.onRelease(block);
+                memoryBlockStorage.release(block);
+                writeBarrier.forget(block);
+                collectedBlocks++;
+            }
+
+            sweepCursor = batch.get(batch.size() - 1).getAddress() + 1;
+        }
+
+        return false;
+    }
+
+    private void finishCycle() {
+        writeBarrier.end();
+        markState = null;
+        rootLinks = null;
+        sweeping = false;
+
         log.info("Collected {} blocks", collectedBlocks);
+
+        final var releasedArenas = arenaManager.releaseEmptyArenas();
+
+        if (releasedArenas > 0)
+            log.info("Released {} empty arenas", releasedArenas);
     }
 
-    private void collectAliveLinks(MemoryBlock memoryBlock, Set<Long> blockAddresses, Map<Long, MemoryBlock> blocks) {
-        if (!memoryBlock.isRoot())
-            blockAddresses.add(memoryBlock.getAddress());
+    @PreDestroy
+    private void destroy() {
+        if (markPool != null)
+            markPool.shutdownNow();
+    }
 
-        memoryBlock.getLinks().forEach(link -> {
-            var childBlock = blocks.get(link.getAddress());
+    private static final class Budget {
 
-            collectAliveLinks(childBlock, blockAddresses, blocks);
-        });
+        private static final int CLOCK_CHECK_INTERVAL = 64;
+
+        private long work;
+        private final long deadline;
+
+        private Budget(long work, long timeNanos) {
+            this.work = work;
+            this.deadline = timeNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeNanos;
+        }
+
+        private boolean isUnbounded() {
+            return work == Long.MAX_VALUE && deadline == Long.MAX_VALUE;
+        }
+
+        private boolean exhausted() {
+            if (--work < 0)
+                return true;
+
+            return deadline != Long.MAX_VALUE && work % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadline;
+        }
     }
 }
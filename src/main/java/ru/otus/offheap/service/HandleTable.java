@@ -0,0 +1,89 @@
+package ru.otus.offheap.service;
+
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.Arrays;
+
+/**
+ * Slot table resolving block handles for the heap storage. A handle packs the slot index
+ * into the low 32 bits and the slot generation into the high 32 bits; the generation is
+ * bumped whenever the slot is released, so handles of removed blocks are detected as stale.
+ */
+public class HandleTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile MemoryBlock[] blocks = new MemoryBlock[INITIAL_CAPACITY];
+    private volatile int[] generations = new int[INITIAL_CAPACITY];
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int highWaterMark;
+
+    public void register(MemoryBlock block) {
+        final int slot;
+
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWaterMark == blocks.length)
+                grow();
+
+            slot = highWaterMark++;
+        }
+
+        block.setIndex(slot);
+        block.setGeneration(generations[slot]);
+        blocks[slot] = block;
+    }
+
+    public void unregister(MemoryBlock block) {
+        final var slot = block.getIndex();
+
+        if (slot < 0 || slot >= highWaterMark || blocks[slot] != block)
+            return;
+
+        blocks[slot] = null;
+        generations[slot]++;
+
+        if (freeCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+
+        freeSlots[freeCount++] = slot;
+    }
+
+    public void replace(MemoryBlock block, MemoryBlock relocated) {
+        final var slot = block.getIndex();
+
+        if (slot >= 0 && slot < highWaterMark && blocks[slot] == block)
+            blocks[slot] = relocated;
+    }
+
+    public MemoryBlock get(long handle) {
+        final var slot = MemoryBlock.slotOf(handle);
+        final var currentBlocks = blocks;
+        final var currentGenerations = generations;
+
+        if (slot < 0 || slot >= currentBlocks.length || slot >= currentGenerations.length)
+            return null;
+
+        final var block = currentBlocks[slot];
+
+        return block != null && currentGenerations[slot] == MemoryBlock.generationOf(handle) ? block : null;
+    }
+
+    public int capacity() {
+        return highWaterMark;
+    }
+
+    public void clear() {
+        blocks = new MemoryBlock[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        freeCount = 0;
+        highWaterMark = 0;
+    }
+
+    private void grow() {
+        generations = Arrays.copyOf(generations, generations.length * 2);
+        blocks = Arrays.copyOf(blocks, blocks.length * 2);
+    }
+}
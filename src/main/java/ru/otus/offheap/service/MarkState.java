@@ -0,0 +1,81 @@
+package ru.otus.offheap.service;
+
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tri-color marking state of one incremental collection. Marked blocks are gray while they wait
+ * in the stack and black once their links are scanned; everything else is white. The root is always black.
+ * Marks are bits over block indices, which survive relocation and are reused only by new, live blocks.
+ */
+final class MarkState {
+
+    private final MemoryBlockStorage storage;
+    private final BitSet marked = new BitSet();
+    private final ArrayDeque<MemoryBlock> gray = new ArrayDeque<>();
+
+    MarkState(MemoryBlockStorage storage) {
+        this.storage = storage;
+    }
+
+    void shade(MemoryBlock block) {
+        if (block.isRoot() || block.isDeleted() || marked.get(block.getIndex()))
+            return;
+
+        marked.set(block.getIndex());
+        gray.push(block);
+    }
+
+    boolean isMarked(MemoryBlock block) {
+        return block.isRoot() || marked.get(block.getIndex());
+    }
+
+    /**
+     * Takes over marks computed elsewhere, e.g. by a parallel mark of the whole graph.
+     */
+    void markAll(BitSet blocks) {
+        marked.or(blocks);
+        gray.clear();
+    }
+
+    boolean hasGray() {
+        return !gray.isEmpty();
+    }
+
+    /**
+     * Scans the links of the next gray block, turning it black.
+     */
+    void scanNext() {
+        final var block = gray.pop();
+
+        if (block.isDeleted())
+            return;
+
+        List<MemoryBlock> released = null;
+
+        for (MemoryBlock child : block.getLinks()) {
+            if (!child.isDeleted()) {
+                shade(child);
+                continue;
+            }
+
+            if (released == null)
+                released = new ArrayList<>();
+
+            released.add(child);
+        }
+
+        // Only a block resurrected by name during the sweep can still point to a collected child
+        if (released != null)
+            released.forEach(child -> storage.unlink(block, child));
+    }
+
+    void drain() {
+        while (hasGray())
+            scanNext();
+    }
+}
@@ -2,23 +2,90 @@ package ru.otus.offheap.service;
 
 import ru.otus.offheap.model.MemoryBlock;
 
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Stream;
 
 public interface MemoryBlockStorage {
 
     MemoryBlock insert(MemoryBlock memoryBlock);
 
+    /**
+     * Same as {@link #insert}, but the block keeps its own address even if free space could be reused.
+     */
+    MemoryBlock insertAt(MemoryBlock memoryBlock);
+
     void remove(MemoryBlock memoryBlock);
 
+    void release(MemoryBlock memoryBlock);
+
+    void link(MemoryBlock parent, MemoryBlock child);
+
+    /**
+     * @return false if the parent had no link to the child
+     */
+    boolean unlink(MemoryBlock parent, MemoryBlock child);
+
+    boolean hasFreeBlock(long requiredSize);
+
+    /**
+     * From now on the space of removed and released blocks is held back from reuse until {@link #releaseHeldSpace},
+     * and regions holding it are not released.
+     */
+    void holdFreedSpace();
+
+    /**
+     * Makes the held space reusable. Space freed afterwards is held again.
+     */
+    void releaseHeldSpace();
+
+    void addFreeSpace(long address, long size);
+
+    /**
+     * Forgets all free space in [from, to) if no live block lies there.
+     *
+     * @return false if the region still holds live blocks
+     */
+    boolean releaseRegion(long from, long to);
+
+    /**
+     * Forgets all deleted blocks and free space in [from, to), live blocks are kept.
+     */
+    void dropFreeSpace(long from, long to);
+
+    /**
+     * Moves block metadata to new addresses, the payload must already be copied there.
+     * Names, handles and links of the moved blocks stay valid.
+     */
+    void relocate(Map<MemoryBlock, Long> moves);
+
     MemoryBlock getByName(String name);
 
+    MemoryBlock getByHandle(long handle);
+
     void mergeDeletedBlocks();
 
     void clear();
 
     Stream<MemoryBlock> stream();
 
+    /**
+     * Blocks starting at or after the address, in address order.
+     */
+    default Stream<MemoryBlock> streamFrom(long address) {
+        return stream().filter(block -> block.getAddress() >= address);
+    }
+
     int totalSize();
 
+    /**
+     * Upper bound (exclusive) of block indices currently in use.
+     */
+    int indexCapacity();
+
+    double fragmentation();
+
     MemoryBlock getRootBlock();
+
+    StampedLock getLock();
 }
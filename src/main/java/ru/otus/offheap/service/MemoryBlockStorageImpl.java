@@ -2,30 +2,40 @@ package ru.otus.offheap.service;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import ru.otus.offheap.exception.ObjectNotFoundException;
 import ru.otus.offheap.model.MemoryBlock;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Stream;
 
-import static java.util.Collections.emptyList;
 import static java.util.Comparator.comparingLong;
 
 @Service
 @Slf4j
+@ConditionalOnProperty(prefix = "offheap.allocator", name = "storage", havingValue = "heap", matchIfMissing = true)
 public class MemoryBlockStorageImpl implements MemoryBlockStorage {
 
     @Getter
     private final TreeMap<Long, MemoryBlock> blocks = new TreeMap<>();
-    private final Map<String, MemoryBlock> namedBlocks = new HashMap<>();
+    private final Map<String, MemoryBlock> namedBlocks = new ConcurrentHashMap<>();
+    private final FreeBlockIndex freeBlocks = new FreeBlockIndex();
+    private final HandleTable handles = new HandleTable();
+    private final ParentIndex parents = new ParentIndex();
+    private final TreeMap<Long, Long> heldSpace = new TreeMap<>();
+    private boolean holdingFreedSpace;
+    private MemoryBlock rootBlock;
     private int size = 0;
 
+    @Getter
+    private final StampedLock lock = new StampedLock();
+
     private static final MemoryBlock ROOT_BLOCK = MemoryBlock.builder()
             .name("root_block")
             .links(new ArrayList<>())
@@ -37,104 +47,84 @@ public class MemoryBlockStorageImpl implements MemoryBlockStorage {
 
     @Override
     public MemoryBlock insert(MemoryBlock block) {
-        if (namedBlocks.containsKey(block.getName()))
-            throw new RuntimeException("Block [" + block.getName() + "] already exists");
-
-        if (!blocks.isEmpty()) {
-            var suitableBlocks = findBlocksForMerging(block.getSize());
-
-            if (!suitableBlocks.isEmpty()) {
-                log.info("Found {} blocks for merging. Reusing {} bytes",
-                        suitableBlocks.size(),
-                        suitableBlocks.stream().mapToLong(MemoryBlock::getSize).sum()
-                );
-
-                var usedSpace = new AtomicLong();
-
-                suitableBlocks.stream().map(MemoryBlock::getAddress)
-                        .forEach(address -> {
-                            var currentDeletedBlock = blocks.get(address);
-
-                            usedSpace.addAndGet(currentDeletedBlock.getSize());
-                            blocks.remove(address);
-                        });
+        return insert(block, true);
+    }
 
-                final var unusedSpace = - (block.getSize() - usedSpace.get());
+    @Override
+    public MemoryBlock insertAt(MemoryBlock block) {
+        return insert(block, false);
+    }
 
-                block = block.clone(suitableBlocks.iterator().next().getAddress());
+    private MemoryBlock insert(MemoryBlock block, boolean reuseFreeSpace) {
+        if (block.getName() != null && namedBlocks.containsKey(block.getName()))
+            throw new RuntimeException("Block [" + block.getName() + "] already exists");
 
-                if (unusedSpace > 0) {
-                    var newDeletedBlock = MemoryBlock.builder()
-                            .deleted(true)
-                            .root(false)
-                            .links(new ArrayList<>())
-                            .name(DELETED_NAME)
-                            .fullClassName("")
-                            .size(unusedSpace)
-                            .address(block.getAddress() + block.getSize())
-                            .build();
+        if (reuseFreeSpace && !block.isRoot() && block.getSize() > 0) {
+            var freeAddress = freeBlocks.find(block.getSize());
 
-                    insert(newDeletedBlock);
-                }
-            }
+            if (freeAddress >= 0)
+                block = reuseDeletedBlocks(block, freeAddress);
         }
 
         blocks.put(block.getAddress(), block);
-        namedBlocks.put(block.getName(), block);
+        handles.register(block);
         size += block.getSize();
 
+        if (block.getName() != null)
+            namedBlocks.put(block.getName(), block);
+
+        if (block.isRoot())
+            rootBlock = block;
+
         return block;
     }
 
-    public void mergeDeletedBlocks() {
-        List<List<MemoryBlock>> groupedDeletedBlocks = new ArrayList<>();
-        List<MemoryBlock> currentList = new ArrayList<>();
-
-        boolean first = true;
-        long prevLastAddress = -1;
+    private MemoryBlock reuseDeletedBlocks(MemoryBlock block, long startAddress) {
+        var deletedBlocks = blocks.tailMap(startAddress, true).values().iterator();
 
-        for (MemoryBlock block : blocks.values()) {
-            if (!block.isDeleted() || block.isRoot())
-                continue;
+        long usedSpace = 0;
+        int reusedBlocks = 0;
 
-            final var currentAddress = block.getAddress();
+        while (usedSpace < block.getSize()) {
+            usedSpace += deletedBlocks.next().getSize();
+            deletedBlocks.remove();
+            reusedBlocks++;
+        }
 
-            if (!first && currentAddress - prevLastAddress != 0) {
-                if (!currentList.isEmpty()) {
-                    groupedDeletedBlocks.add(currentList);
-                    currentList = new ArrayList<>();
-                }
+        log.info("Found {} blocks for merging. Reusing {} bytes", reusedBlocks, usedSpace);
 
-                continue;
-            }
+        freeBlocks.take(startAddress, block.getSize());
+        block = block.clone(startAddress);
 
-            first = false;
-            currentList.add(block);
+        final var unusedSpace = usedSpace - block.getSize();
 
-            prevLastAddress = currentAddress + block.getSize();
-        }
+        if (unusedSpace > 0)
+            putDeletedBlock(block.getAddress() + block.getSize(), unusedSpace);
 
-        groupedDeletedBlocks.add(currentList);
+        return block;
+    }
 
-        groupedDeletedBlocks.stream()
-                .filter(deletedBlocks -> deletedBlocks.size() > 1)
-                .forEach(deletedBlocks -> {
-                    long startAddr = deletedBlocks.get(0).getAddress();
+    private void putDeletedBlock(long address, long size) {
+        blocks.put(address, MemoryBlock.builder()
+                .address(address)
+                .size(size)
+                .links(new ArrayList<>())
+                .deleted(true)
+                .fullClassName("")
+                .name(DELETED_NAME)
+                .build());
+    }
 
-                    var lastBlock = deletedBlocks.get(deletedBlocks.size() - 1);
-                    long size = lastBlock.getAddress() + lastBlock.getSize() - startAddr;
+    public void mergeDeletedBlocks() {
+        freeBlocks.extents().forEach((startAddress, length) -> {
+            var deletedBlocks = blocks.subMap(startAddress, startAddress + length);
 
-                    deletedBlocks.forEach(block -> blocks.remove(block.getAddress()));
+            if (deletedBlocks.size() < 2)
+                return;
 
-                    blocks.put(startAddr, MemoryBlock.builder()
-                                    .address(startAddr)
-                                    .size(size)
-                                    .links(new ArrayList<>())
-                                    .deleted(true)
-                                    .fullClassName("")
-                                    .name(DELETED_NAME)
-                            .build());
-                });
+            deletedBlocks.clear();
+            putDeletedBlock(startAddress, length);
+        });
     }
 
     @Override
@@ -147,52 +137,115 @@ public class MemoryBlockStorageImpl implements MemoryBlockStorage {
 
             if (!block.isDeleted()) {
                 block.setDeleted(true);
-                namedBlocks.remove(memoryBlock.getName());
-                blocks.values().forEach(parentBlock -> parentBlock.getLinks().remove(block));
+                handles.unregister(block);
+                parents.detach(block);
 
                 size -= block.getSize();
+                freeSpace(block.getAddress(), block.getSize());
+
+                if (block.getName() != null)
+                    namedBlocks.remove(block.getName(), block);
             }
         }
     }
 
-    private List<MemoryBlock> findBlocksForMerging(long requiredSize) {
+    @Override
+    public void release(MemoryBlock block) {
+        if (block.isRoot() || block.isDeleted())
+            return;
 
-        int sumSize = 0;
-        long prevLastAddress = -1;
-        var selectedBlocks = new ArrayList<MemoryBlock>();
+        block.setDeleted(true);
+        handles.unregister(block);
+        parents.forget(block);
 
-        boolean first = true;
+        if (block.getName() != null)
+            namedBlocks.remove(block.getName(), block);
 
-        for (Map.Entry<Long, MemoryBlock> e : blocks.entrySet()) {
-            final var currentAddress = e.getKey();
-            final var currentBlock = e.getValue();
+        size -= block.getSize();
+        freeSpace(block.getAddress(), block.getSize());
+    }
 
-            if (!currentBlock.isDeleted() || currentBlock.isRoot())
-                continue;
+    @Override
+    public void link(MemoryBlock parent, MemoryBlock child) {
+        parent.getLinks().add(child);
+        parents.link(parent, child);
+    }
 
-            if (!first && currentAddress - prevLastAddress != 0) {
-                sumSize = 0;
-                selectedBlocks.clear();
-                continue;
-            }
+    @Override
+    public boolean unlink(MemoryBlock parent, MemoryBlock child) {
+        if (!parent.getLinks().remove(child))
+            return false;
 
-            first = false;
-            selectedBlocks.add(currentBlock);
+        parents.unlink(parent, child);
 
-            sumSize += currentBlock.getSize();
+        return true;
+    }
 
-            if (sumSize >= requiredSize)
-                break;
+    @Override
+    public boolean hasFreeBlock(long requiredSize) {
+        return freeBlocks.find(requiredSize) >= 0;
+    }
 
-            prevLastAddress = currentAddress + currentBlock.getSize();
-        }
+    @Override
+    public void holdFreedSpace() {
+        holdingFreedSpace = true;
+    }
+
+    @Override
+    public void releaseHeldSpace() {
+        heldSpace.forEach(freeBlocks::add);
+        heldSpace.clear();
+    }
+
+    private void freeSpace(long address, long length) {
+        if (holdingFreedSpace)
+            heldSpace.put(address, length);
+        else
+            freeBlocks.add(address, length);
+    }
+
+    @Override
+    public void addFreeSpace(long address, long size) {
+        putDeletedBlock(address, size);
+        freeBlocks.add(address, size);
+    }
+
+    @Override
+    public boolean releaseRegion(long from, long to) {
+        var region = blocks.subMap(from, to);
+
+        if (region.values().stream().anyMatch(block -> !block.isDeleted()) || !heldSpace.subMap(from, to).isEmpty())
+            return false;
+
+        dropFreeSpace(from, to);
+
+        return true;
+    }
+
+    @Override
+    public void dropFreeSpace(long from, long to) {
+        blocks.subMap(from, to).values().removeIf(MemoryBlock::isDeleted);
+        freeBlocks.removeRange(from, to);
+        heldSpace.subMap(from, to).clear();
+    }
+
+    @Override
+    public void relocate(Map<MemoryBlock, Long> moves) {
+        final var relocated = new IdentityHashMap<MemoryBlock, MemoryBlock>();
+
+        moves.keySet().forEach(block -> blocks.remove(block.getAddress(), block));
+        moves.forEach((block, address) -> {
+            final var newBlock = block.clone(address);
+
+            blocks.put(address, newBlock);
+            handles.replace(block, newBlock);
+            relocated.put(block, newBlock);
 
-        var suitable = selectedBlocks.stream()
-                .map(MemoryBlock::getSize)
-                .mapToLong(a -> a)
-                .sum() >= requiredSize;
+            if (newBlock.getName() != null)
+                namedBlocks.replace(newBlock.getName(), block, newBlock);
+        });
 
-        return suitable ? selectedBlocks : emptyList();
+        parents.relocate(relocated);
     }
 
     @Override
@@ -208,10 +261,26 @@ public class MemoryBlockStorageImpl implements MemoryBlockStorage {
         return block;
     }
 
+    @Override
+    public MemoryBlock getByHandle(long handle) {
+        var block = handles.get(handle);
+
+        if (block == null || block.isRoot())
+            throw new ObjectNotFoundException("Could not find object by handle: 0x" + Long.toHexString(handle));
+
+        return block;
+    }
+
     @Override
     public void clear() {
         blocks.clear();
         namedBlocks.clear();
+        freeBlocks.clear();
+        handles.clear();
+        parents.clear();
+        heldSpace.clear();
+        holdingFreedSpace = false;
+        rootBlock = null;
     }
 
     @Override
@@ -219,18 +288,28 @@ public class MemoryBlockStorageImpl implements MemoryBlockStorage {
         return blocks.values().stream().sorted(comparingLong(MemoryBlock::getAddress));
     }
 
+    @Override
+    public Stream<MemoryBlock> streamFrom(long address) {
+        return blocks.tailMap(address, true).values().stream();
+    }
+
     @Override
     public int totalSize() {
         return size - 1;
     }
 
     @Override
-    public MemoryBlock getRootBlock() {
-        var rootBlock = blocks.values().stream()
-                .filter(MemoryBlock::isRoot)
-                .findFirst()
-                .orElse(null);
+    public int indexCapacity() {
+        return handles.capacity();
+    }
 
+    @Override
+    public double fragmentation() {
+        return freeBlocks.fragmentation();
+    }
+
+    @Override
+    public MemoryBlock getRootBlock() {
         if (rootBlock == null)
             return insert(ROOT_BLOCK);
 
@@ -0,0 +1,672 @@
+package ru.otus.offheap.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.util.ClassNameDictionary;
+import ru.otus.offheap.util.OffHeapLongIntMap;
+import ru.otus.offheap.util.OffHeapRecordTable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.Long.toHexString;
+import static java.util.Comparator.comparingLong;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static ru.otus.offheap.util.OffHeapLongIntMap.NO_VALUE;
+
+/**
+ * Block storage keeping block headers and links in fixed-layout native tables, so the Java heap
+ * holds no per-object metadata. Blocks handed out are short-lived views over a table slot;
+ * their links are read-only and must be changed through {@link #link} and {@link #unlink}.
+ * Block names are expected in the allocator's {@code <prefix>_<hex sequence>} form; unnamed
+ * blocks are reachable by handle only. The handle slot is the table slot itself.
+ * <p>
+ * Every link record sits in two doubly linked lists: the links of its parent and the incoming links
+ * of its child, so a block is unlinked from all of its parents in time proportional to their number.
+ * <p>
+ * Block records also form a treap ordered by address, priorities are hashed from the slot, so
+ * {@link #streamFrom} walks blocks in address order without sorting the table.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "offheap.allocator", name = "storage", havingValue = "offheap")
+public class OffHeapMemoryBlockStorage implements MemoryBlockStorage {
+
+    private static final int ADDRESS = 0;
+    private static final int SIZE = 8;
+    private static final int SEQUENCE = 16;
+    private static final int FLAGS = 24;
+    private static final int CLASS_ID = 28;
+    private static final int PREFIX_ID = 32;
+    private static final int CODEC = 36;
+    private static final int FIRST_LINK = 40;
+    private static final int LAST_LINK = 44;
+    private static final int LINK_COUNT = 48;
+    private static final int GENERATION = 52;
+    private static final int RAW_SIZE = 56;
+    private static final int FIRST_INCOMING = 64;
+    private static final int TREE_LEFT = 68;
+    private static final int TREE_RIGHT = 72;
+    private static final int BLOCK_RECORD_SIZE = 80;
+
+    private static final int LINK_PARENT = 0;
+    private static final int LINK_CHILD = 4;
+    private static final int LINK_NEXT = 8;
+    private static final int LINK_PREVIOUS = 12;
+    private static final int LINK_NEXT_INCOMING = 16;
+    private static final int LINK_PREVIOUS_INCOMING = 20;
+    private static final int LINK_RECORD_SIZE = 24;
+
+    private static final int FLAG_ROOT = 1;
+    private static final int FLAG_FREE = 2;
+    private static final int NO_LINK = -1;
+
+    private static final String ROOT_NAME = "root_block";
+    private static final String DELETED_NAME = "deleted";
+
+    private final OffHeapRecordTable blockTable = new OffHeapRecordTable(BLOCK_RECORD_SIZE);
+    private final OffHeapRecordTable linkTable = new OffHeapRecordTable(LINK_RECORD_SIZE);
+    private final OffHeapLongIntMap sequenceIndex = new OffHeapLongIntMap();
+    private final ClassNameDictionary dictionary = new ClassNameDictionary();
+    private final FreeBlockIndex freeBlocks = new FreeBlockIndex();
+    private final TreeMap<Long, Long> heldSpace = new TreeMap<>();
+    private boolean holdingFreedSpace;
+
+    @Getter
+    private final StampedLock lock = new StampedLock();
+
+    private int rootSlot = NO_LINK;
+    private int treeRoot = NO_LINK;
+    private long size = 0;
+
+    @Override
+    public MemoryBlock insert(MemoryBlock block) {
+        return insert(block, true);
+    }
+
+    @Override
+    public MemoryBlock insertAt(MemoryBlock block) {
+        return insert(block, false);
+    }
+
+    private MemoryBlock insert(MemoryBlock block, boolean reuseFreeSpace) {
+        if (block.isRoot()) {
+            rootSlot = newRecord(block.getAddress(), block.getSize(), -1, FLAG_ROOT, "", block);
+            return view(rootSlot);
+        }
+
+        final var name = block.getName();
+        final var separator = name == null ? 0 : name.lastIndexOf('_');
+        final var sequence = name == null ? -1 : separator < 0 ? -1 : parseSequence(name, separator);
+
+        if (name != null && sequence < 0)
+            throw new IllegalArgumentException("Unsupported block name: " + name);
+
+        if (name != null && sequenceIndex.get(sequence) != NO_VALUE)
+            throw new RuntimeException("Block [" + name + "] already exists");
+
+        var address = block.getAddress();
+        final var freeAddress = reuseFreeSpace && block.getSize() > 0 ? freeBlocks.find(block.getSize()) : -1;
+
+        if (freeAddress >= 0) {
+            log.info("Reusing {} bytes at [0x{}]", block.getSize(), toHexString(freeAddress));
+
+            freeBlocks.take(freeAddress, block.getSize());
+            address = freeAddress;
+        }
+
+        final var slot = newRecord(address, block.getSize(), sequence, 0, name == null ? "" : name.substring(0, separator), block);
+
+        if (name != null)
+            sequenceIndex.put(sequence, slot);
+
+        size += block.getSize();
+
+        return view(slot);
+    }
+
+    private int newRecord(long address, long blockSize, long sequence, int flags, String prefix, MemoryBlock block) {
+        final var slot = blockTable.allocate();
+
+        blockTable.putLong(slot, ADDRESS, address);
+        blockTable.putLong(slot, SIZE, blockSize);
+        blockTable.putLong(slot, SEQUENCE, sequence);
+        blockTable.putInt(slot, FLAGS, flags);
+        blockTable.putInt(slot, CLASS_ID, dictionary.intern(block.getFullClassName()));
+        blockTable.putInt(slot, PREFIX_ID, dictionary.intern(prefix));
+        blockTable.putInt(slot, CODEC, block.getCodec());
+        blockTable.putLong(slot, RAW_SIZE, block.getRawSize());
+        blockTable.putInt(slot, FIRST_LINK, NO_LINK);
+        blockTable.putInt(slot, LAST_LINK, NO_LINK);
+        blockTable.putInt(slot, LINK_COUNT, 0);
+        blockTable.putInt(slot, FIRST_INCOMING, NO_LINK);
+        treeRoot = treeInsert(treeRoot, slot);
+
+        if (block.getLinks() != null)
+            block.getLinks().forEach(child -> addLink(slot, child.getIndex()));
+
+        return slot;
+    }
+
+    @Override
+    public void remove(MemoryBlock memoryBlock) {
+        if (memoryBlock.isRoot() || !isLive(memoryBlock))
+            return;
+
+        freeRecord(memoryBlock.getIndex());
+    }
+
+    @Override
+    public void release(MemoryBlock memoryBlock) {
+        if (memoryBlock.isRoot() || !isLive(memoryBlock))
+            return;
+
+        freeRecord(memoryBlock.getIndex());
+    }
+
+    /**
+     * Frees the record with its links in both directions, a removed block is dropped from the links of its parents.
+     */
+    private void freeRecord(int slot) {
+        final var address = blockTable.getLong(slot, ADDRESS);
+        final var blockSize = blockTable.getLong(slot, SIZE);
+
+        while (blockTable.getInt(slot, FIRST_LINK) != NO_LINK)
+            freeLink(blockTable.getInt(slot, FIRST_LINK));
+
+        while (blockTable.getInt(slot, FIRST_INCOMING) != NO_LINK)
+            freeLink(blockTable.getInt(slot, FIRST_INCOMING));
+
+        treeRoot = treeRemove(treeRoot, slot);
+
+        sequenceIndex.remove(blockTable.getLong(slot, SEQUENCE));
+        blockTable.putInt(slot, FLAGS, FLAG_FREE);
+        blockTable.putInt(slot, GENERATION, blockTable.getInt(slot, GENERATION) + 1);
+        blockTable.free(slot);
+
+        size -= blockSize;
+        freeSpace(address, blockSize);
+    }
+
+    @Override
+    public void link(MemoryBlock parent, MemoryBlock child) {
+        addLink(parent.getIndex(), child.getIndex());
+    }
+
+    @Override
+    public boolean unlink(MemoryBlock parent, MemoryBlock child) {
+        return removeLink(parent.getIndex(), child.getIndex());
+    }
+
+    private void addLink(int parentSlot, int childSlot) {
+        final var link = linkTable.allocate();
+        final var last = blockTable.getInt(parentSlot, LAST_LINK);
+        final var firstIncoming = blockTable.getInt(childSlot, FIRST_INCOMING);
+
+        linkTable.putInt(link, LINK_PARENT, parentSlot);
+        linkTable.putInt(link, LINK_CHILD, childSlot);
+        linkTable.putInt(link, LINK_NEXT, NO_LINK);
+        linkTable.putInt(link, LINK_PREVIOUS, last);
+        linkTable.putInt(link, LINK_NEXT_INCOMING, firstIncoming);
+        linkTable.putInt(link, LINK_PREVIOUS_INCOMING, NO_LINK);
+
+        if (last == NO_LINK)
+            blockTable.putInt(parentSlot, FIRST_LINK, link);
+        else
+            linkTable.putInt(last, LINK_NEXT, link);
+
+        if (firstIncoming != NO_LINK)
+            linkTable.putInt(firstIncoming, LINK_PREVIOUS_INCOMING, link);
+
+        blockTable.putInt(parentSlot, LAST_LINK, link);
+        blockTable.putInt(parentSlot, LINK_COUNT, blockTable.getInt(parentSlot, LINK_COUNT) + 1);
+        blockTable.putInt(childSlot, FIRST_INCOMING, link);
+    }
+
+    private boolean removeLink(int parentSlot, int childSlot) {
+        for (int link = blockTable.getInt(parentSlot, FIRST_LINK); link != NO_LINK; link = linkTable.getInt(link, LINK_NEXT))
+            if (linkTable.getInt(link, LINK_CHILD) == childSlot) {
+                freeLink(link);
+                return true;
+            }
+
+        return false;
+    }
+
+    /**
+     * Cuts the link out of the links of its parent and the incoming links of its child.
+     */
+    private void freeLink(int link) {
+        final var parentSlot = linkTable.getInt(link, LINK_PARENT);
+        final var childSlot = linkTable.getInt(link, LINK_CHILD);
+        final var next = linkTable.getInt(link, LINK_NEXT);
+        final var previous = linkTable.getInt(link, LINK_PREVIOUS);
+        final var nextIncoming = linkTable.getInt(link, LINK_NEXT_INCOMING);
+        final var previousIncoming = linkTable.getInt(link, LINK_PREVIOUS_INCOMING);
+
+        if (previous == NO_LINK)
+            blockTable.putInt(parentSlot, FIRST_LINK, next);
+        else
+            linkTable.putInt(previous, LINK_NEXT, next);
+
+        if (next == NO_LINK)
+            blockTable.putInt(parentSlot, LAST_LINK, previous);
+        else
+            linkTable.putInt(next, LINK_PREVIOUS, previous);
+
+        if (previousIncoming == NO_LINK)
+            blockTable.putInt(childSlot, FIRST_INCOMING, nextIncoming);
+        else
+            linkTable.putInt(previousIncoming, LINK_NEXT_INCOMING, nextIncoming);
+
+        if (nextIncoming != NO_LINK)
+            linkTable.putInt(nextIncoming, LINK_PREVIOUS_INCOMING, previousIncoming);
+
+        blockTable.putInt(parentSlot, LINK_COUNT, blockTable.getInt(parentSlot, LINK_COUNT) - 1);
+        linkTable.free(link);
+    }
+
+    @Override
+    public boolean hasFreeBlock(long requiredSize) {
+        return freeBlocks.find(requiredSize) >= 0;
+    }
+
+    @Override
+    public void holdFreedSpace() {
+        holdingFreedSpace = true;
+    }
+
+    @Override
+    public void releaseHeldSpace() {
+        heldSpace.forEach(freeBlocks::add);
+        heldSpace.clear();
+    }
+
+    private void freeSpace(long address, long length) {
+        if (holdingFreedSpace)
+            heldSpace.put(address, length);
+        else
+            freeBlocks.add(address, length);
+    }
+
+    @Override
+    public void addFreeSpace(long address, long size) {
+        freeBlocks.add(address, size);
+    }
+
+    @Override
+    public boolean releaseRegion(long from, long to) {
+        if (!heldSpace.subMap(from, to).isEmpty()
+                || streamFrom(from).takeWhile(block -> block.getAddress() < to).anyMatch(block -> !block.isRoot()))
+            return false;
+
+        freeBlocks.removeRange(from, to);
+
+        return true;
+    }
+
+    @Override
+    public void dropFreeSpace(long from, long to) {
+        freeBlocks.removeRange(from, to);
+        heldSpace.subMap(from, to).clear();
+    }
+
+    @Override
+    public void relocate(Map<MemoryBlock, Long> moves) {
+        moves.forEach((block, address) -> {
+            final var slot = block.getIndex();
+
+            treeRoot = treeRemove(treeRoot, slot);
+            blockTable.putLong(slot, ADDRESS, address);
+            treeRoot = treeInsert(treeRoot, slot);
+        });
+    }
+
+    @Override
+    public MemoryBlock getByName(String name) {
+        final var separator = name.lastIndexOf('_');
+        final var slot = separator < 0 ? NO_VALUE : sequenceIndex.get(parseSequence(name, separator));
+
+        if (slot == NO_VALUE || slot == rootSlot)
+            throw new ObjectNotFoundException("Could not find object: " + name);
+
+        final var prefix = dictionary.name(blockTable.getInt(slot, PREFIX_ID));
+
+        if (prefix.length() != separator || !name.startsWith(prefix))
+            throw new ObjectNotFoundException("Could not find object: " + name);
+
+        return view(slot);
+    }
+
+    @Override
+    public MemoryBlock getByHandle(long handle) {
+        final var slot = MemoryBlock.slotOf(handle);
+
+        if (slot < 0 || slot >= blockTable.highWaterMark() || slot == rootSlot || !isLive(slot)
+                || blockTable.getInt(slot, GENERATION) != MemoryBlock.generationOf(handle))
+            throw new ObjectNotFoundException("Could not find object by handle: 0x" + toHexString(handle));
+
+        return view(slot);
+    }
+
+    @Override
+    public void mergeDeletedBlocks() {
+        // Free extents are coalesced as soon as blocks are released
+    }
+
+    @Override
+    public void clear() {
+        blockTable.clear();
+        linkTable.clear();
+        sequenceIndex.clear();
+        dictionary.clear();
+        freeBlocks.clear();
+        heldSpace.clear();
+        holdingFreedSpace = false;
+
+        rootSlot = NO_LINK;
+        treeRoot = NO_LINK;
+        size = 0;
+    }
+
+    @Override
+    public Stream<MemoryBlock> stream() {
+        final var blocks = new ArrayList<MemoryBlock>();
+
+        for (int slot = 0; slot < blockTable.highWaterMark(); slot++)
+            if (isLive(slot))
+                blocks.add(view(slot));
+
+        freeBlocks.extents().forEach((address, length) -> blocks.add(MemoryBlock.builder()
+                .index(NO_LINK)
+                .address(address)
+                .size(length)
+                .links(new ArrayList<>())
+                .deleted(true)
+                .fullClassName("")
+                .name(DELETED_NAME)
+                .build()));
+
+        return blocks.stream().sorted(comparingLong(MemoryBlock::getAddress));
+    }
+
+    /**
+     * Live blocks only, free space is not kept as blocks.
+     */
+    @Override
+    public Stream<MemoryBlock> streamFrom(long address) {
+        return StreamSupport.stream(spliteratorUnknownSize(new TreeIterator(address), ORDERED | NONNULL), false);
+    }
+
+    @Override
+    public int totalSize() {
+        return (int) size;
+    }
+
+    @Override
+    public int indexCapacity() {
+        return blockTable.highWaterMark();
+    }
+
+    @Override
+    public double fragmentation() {
+        return freeBlocks.fragmentation();
+    }
+
+    @Override
+    public MemoryBlock getRootBlock() {
+        if (rootSlot == NO_LINK)
+            return insert(MemoryBlock.builder()
+                    .name(ROOT_NAME)
+                    .links(new ArrayList<>())
+                    .root(true)
+                    .fullClassName("")
+                    .build());
+
+        return view(rootSlot);
+    }
+
+    public long metadataFootprint() {
+        return blockTable.footprint() + linkTable.footprint() + sequenceIndex.footprint();
+    }
+
+    private boolean isLive(MemoryBlock block) {
+        final var slot = block.getIndex();
+
+        return slot >= 0 && slot < blockTable.highWaterMark()
+                && isLive(slot)
+                && blockTable.getInt(slot, GENERATION) == block.getGeneration()
+                && blockTable.getLong(slot, ADDRESS) == block.getAddress();
+    }
+
+    private boolean isLive(int slot) {
+        return (blockTable.getInt(slot, FLAGS) & FLAG_FREE) == 0;
+    }
+
+    private MemoryBlock view(int slot) {
+        final var flags = blockTable.getInt(slot, FLAGS);
+        final var root = (flags & FLAG_ROOT) != 0;
+        final var sequence = blockTable.getLong(slot, SEQUENCE);
+
+        return MemoryBlock.builder()
+                .index(slot)
+                .generation(blockTable.getInt(slot, GENERATION))
+                .address(blockTable.getLong(slot, ADDRESS))
+                .size(blockTable.getLong(slot, SIZE))
+                .name(root ? ROOT_NAME : sequence < 0 ? null
+                        : dictionary.name(blockTable.getInt(slot, PREFIX_ID)) + "_" + toHexString(sequence))
+                .fullClassName(dictionary.name(blockTable.getInt(slot, CLASS_ID)))
+                .codec(blockTable.getInt(slot, CODEC))
+                .rawSize(blockTable.getLong(slot, RAW_SIZE))
+                .root(root)
+                .deleted((flags & FLAG_FREE) != 0)
+                .links(new LinkView(slot))
+                .build();
+    }
+
+    private boolean precedes(int slot, int other) {
+        final var address = blockTable.getLong(slot, ADDRESS);
+        final var otherAddress = blockTable.getLong(other, ADDRESS);
+
+        return address < otherAddress || address == otherAddress && slot < other;
+    }
+
+    private int treeInsert(int node, int slot) {
+        if (node == NO_LINK) {
+            blockTable.putInt(slot, TREE_LEFT, NO_LINK);
+            blockTable.putInt(slot, TREE_RIGHT, NO_LINK);
+
+            return slot;
+        }
+
+        if (precedes(slot, node)) {
+            blockTable.putInt(node, TREE_LEFT, treeInsert(blockTable.getInt(node, TREE_LEFT), slot));
+
+            if (priority(blockTable.getInt(node, TREE_LEFT)) > priority(node))
+                return rotate(node, TREE_LEFT, TREE_RIGHT);
+        } else {
+            blockTable.putInt(node, TREE_RIGHT, treeInsert(blockTable.getInt(node, TREE_RIGHT), slot));
+
+            if (priority(blockTable.getInt(node, TREE_RIGHT)) > priority(node))
+                return rotate(node, TREE_RIGHT, TREE_LEFT);
+        }
+
+        return node;
+    }
+
+    /**
+     * The slot must still have the address it was inserted with.
+     */
+    private int treeRemove(int node, int slot) {
+        if (node == slot)
+            return treeMerge(blockTable.getInt(node, TREE_LEFT), blockTable.getInt(node, TREE_RIGHT));
+
+        final var side = precedes(slot, node) ? TREE_LEFT : TREE_RIGHT;
+
+        blockTable.putInt(node, side, treeRemove(blockTable.getInt(node, side), slot));
+
+        return node;
+    }
+
+    /**
+     * Joins two treaps, every node of the left one preceding every node of the right one.
+     */
+    private int treeMerge(int left, int right) {
+        if (left == NO_LINK)
+            return right;
+
+        if (right == NO_LINK)
+            return left;
+
+        if (priority(left) > priority(right)) {
+            blockTable.putInt(left, TREE_RIGHT, treeMerge(blockTable.getInt(left, TREE_RIGHT), right));
+            return left;
+        }
+
+        blockTable.putInt(right, TREE_LEFT, treeMerge(left, blockTable.getInt(right, TREE_LEFT)));
+
+        return right;
+    }
+
+    /**
+     * Lifts the child of the node on the given side above it.
+     */
+    private int rotate(int node, int side, int otherSide) {
+        final var child = blockTable.getInt(node, side);
+
+        blockTable.putInt(node, side, blockTable.getInt(child, otherSide));
+        blockTable.putInt(child, otherSide, node);
+
+        return child;
+    }
+
+    private static int priority(int slot) {
+        final var hash = slot * 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long parseSequence(String name, int separator) {
+        try {
+            return Long.parseLong(name, separator + 1, name.length(), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * In-order walk of the treap from the first block at or after the address.
+     */
+    private final class TreeIterator implements Iterator<MemoryBlock> {
+
+        private int[] stack = new int[32];
+        private int depth = 0;
+
+        private TreeIterator(long address) {
+            for (int node = treeRoot; node != NO_LINK; ) {
+                if (blockTable.getLong(node, ADDRESS) >= address) {
+                    push(node);
+                    node = blockTable.getInt(node, TREE_LEFT);
+                } else {
+                    node = blockTable.getInt(node, TREE_RIGHT);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public MemoryBlock next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final var slot = stack[--depth];
+
+            for (int node = blockTable.getInt(slot, TREE_RIGHT); node != NO_LINK; node = blockTable.getInt(node, TREE_LEFT))
+                push(node);
+
+            return view(slot);
+        }
+
+        private void push(int node) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, depth * 2);
+
+            stack[depth++] = node;
+        }
+    }
+
+    private final class LinkView extends AbstractList<MemoryBlock> {
+
+        private final int slot;
+
+        private LinkView(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public MemoryBlock get(int index) {
+            Objects.checkIndex(index, size());
+
+            final var it = iterator();
+
+            for (int i = 0; i < index; i++)
+                it.next();
+
+            return it.next();
+        }
+
+        @Override
+        public int size() {
+            return blockTable.getInt(slot, LINK_COUNT);
+        }
+
+        @Override
+        public Iterator<MemoryBlock> iterator() {
+            return new Iterator<>() {
+
+                private int link = blockTable.getInt(slot, FIRST_LINK);
+                private int steps = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return link != NO_LINK;
+                }
+
+                @Override
+                public MemoryBlock next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+
+                    // Bounded walk: a chain rewritten under an optimistic reader must not loop forever
+                    if (++steps > linkTable.highWaterMark())
+                        throw new ConcurrentModificationException();
+
+                    final var child = linkTable.getInt(link, LINK_CHILD);
+                    link = linkTable.getInt(link, LINK_NEXT);
+
+                    return view(child);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.otus.offheap.service;
+
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Work-stealing mark of the whole block graph. Every task drains its own stack and hands half of it
+ * to a new task once it grows past {@link #SPLIT_THRESHOLD}, so wide graphs spread over the pool.
+ * The graph must not change while marking, i.e. the storage write lock is held by the caller.
+ */
+final class ParallelMarker {
+
+    private static final int SPLIT_THRESHOLD = 256;
+
+    private final AtomicLongArray bitmap;
+
+    private ParallelMarker(int capacity) {
+        this.bitmap = new AtomicLongArray((capacity + 63) >>> 6);
+    }
+
+    static BitSet mark(Collection<MemoryBlock> roots, int capacity, ForkJoinPool pool) {
+        final var marker = new ParallelMarker(capacity);
+        final var start = new ArrayDeque<MemoryBlock>();
+
+        for (MemoryBlock root : roots)
+            if (marker.tryMark(root))
+                start.push(root);
+
+        pool.invoke(marker.new MarkTask(start));
+
+        final var words = new long[marker.bitmap.length()];
+
+        for (int i = 0; i < words.length; i++)
+            words[i] = marker.bitmap.get(i);
+
+        return BitSet.valueOf(words);
+    }
+
+    private boolean tryMark(MemoryBlock block) {
+        if (block.isRoot() || block.isDeleted())
+            return false;
+
+        final var index = block.getIndex();
+        final var word = index >>> 6;
+        final var bit = 1L << index;
+
+        while (true) {
+            final var current = bitmap.get(word);
+
+            if ((current & bit) != 0)
+                return false;
+
+            if (bitmap.compareAndSet(word, current, current | bit))
+                return true;
+        }
+    }
+
+    private final class MarkTask extends RecursiveAction {
+
+        private final ArrayDeque<MemoryBlock> stack;
+
+        private MarkTask(ArrayDeque<MemoryBlock> stack) {
+            this.stack = stack;
+        }
+
+        @Override
+        protected void compute() {
+            final List<MarkTask> forked = new ArrayList<>();
+
+            while (!stack.isEmpty()) {
+                for (MemoryBlock child : stack.pop().getLinks())
+                    if (tryMark(child))
+                        stack.push(child);
+
+                if (stack.size() > SPLIT_THRESHOLD) {
+                    final var half = new ArrayDeque<MemoryBlock>();
+
+                    for (int i = stack.size() / 2; i > 0; i--)
+                        half.push(stack.pollLast());
+
+                    final var task = new MarkTask(half);
+                    task.fork();
+                    forked.add(task);
+                }
+            }
+
+            forked.forEach(MarkTask::join);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.otus.offheap.service;
+
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Back references of the heap and buddy storages: parents of each linked block, one entry per link, so removing
+ * a block touches only the blocks linking to it. Blocks are kept by identity, a relocated block is a new instance.
+ */
+public class ParentIndex {
+
+    private final Map<MemoryBlock, List<MemoryBlock>> parents = new IdentityHashMap<>();
+
+    public void link(MemoryBlock parent, MemoryBlock child) {
+        parents.computeIfAbsent(child, block -> new ArrayList<>()).add(parent);
+    }
+
+    public void unlink(MemoryBlock parent, MemoryBlock child) {
+        final var childParents = parents.get(child);
+
+        if (childParents == null)
+            return;
+
+        for (int i = 0; i < childParents.size(); i++)
+            if (childParents.get(i) == parent) {
+                childParents.remove(i);
+                break;
+            }
+
+        if (childParents.isEmpty())
+            parents.remove(child);
+    }
+
+    /**
+     * Removes the block from the links of its parents and forgets it, see {@link #forget}.
+     */
+    public void detach(MemoryBlock block) {
+        final var blockParents = parents.remove(block);
+
+        if (blockParents != null)
+            blockParents.forEach(parent -> parent.getLinks().remove(block));
+
+        forget(block);
+    }
+
+    /**
+     * Forgets the parents of the block and the block as a parent, links of the block itself are kept.
+     */
+    public void forget(MemoryBlock block) {
+        parents.remove(block);
+        block.getLinks().forEach(child -> unlink(block, child));
+    }
+
+    /**
+     * Replaces the moved blocks by their new instances in the links of their parents and in the back references
+     * of their children.
+     */
+    public void relocate(Map<MemoryBlock, MemoryBlock> relocated) {
+        relocated.forEach((block, newBlock) -> {
+            final var blockParents = parents.remove(block);
+
+            if (blockParents != null)
+                parents.put(newBlock, blockParents);
+        });
+
+        relocated.forEach((block, newBlock) -> {
+            for (var parent : parents.getOrDefault(newBlock, List.of()))
+                replace(relocated.getOrDefault(parent, parent).getLinks(), block, newBlock);
+
+            for (var child : newBlock.getLinks())
+                replace(parents.getOrDefault(relocated.getOrDefault(child, child), List.of()), block, newBlock);
+        });
+    }
+
+    public void clear() {
+        parents.clear();
+    }
+
+    private static void replace(List<MemoryBlock> list, MemoryBlock block, MemoryBlock newBlock) {
+        for (int i = 0; i < list.size(); i++)
+            if (list.get(i) == block)
+                list.set(i, newBlock);
+    }
+}
@@ -0,0 +1,390 @@
+package ru.otus.offheap.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.config.AllocatorProperties;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.util.OffHeapIntArray;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Reference counting mode, enabled by {@code reference-counting}. Every link, the one from the root included,
+ * counts; a block whose count drops to zero is freed at once together with the children it held last.
+ * Increments are applied immediately, decrements are queued and applied in batches of {@code ref-count-batch},
+ * so link and unlink stay cheap, and are held back while a tracing collection runs.
+ * <p>
+ * Blocks whose count dropped but not to zero are kept as candidate roots of garbage cycles. When there are
+ * {@code ref-count-cycle-roots} of them, the synchronous trial deletion of Bacon and Rajan frees cycles
+ * that are not referenced from outside. The tracing collector still works as a fallback.
+ * <p>
+ * Counts and colors are kept in native memory by block index. Must be called under the storage write lock.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceCounter {
+
+    private static final int COUNT_MASK = (1 << 28) - 1;
+    private static final int COLOR_SHIFT = 28;
+    private static final int COLOR_MASK = 3 << COLOR_SHIFT;
+    private static final int BUFFERED = 1 << 30;
+
+    private static final int BLACK = 0;
+    private static final int GRAY = 1;
+    private static final int WHITE = 2;
+    private static final int PURPLE = 3;
+
+    private final MemoryBlockStorage storage;
+    private final WriteBarrier writeBarrier;
+    private final AllocatorProperties properties;
+
+    private final OffHeapIntArray states = new OffHeapIntArray();
+    private final List<Long> candidates = new ArrayList<>();
+
+    private long[] pending = new long[64];
+    private int pendingCount;
+    private long reclaimedBlocks;
+    private long reclaimedBytes;
+
+    @PostConstruct
+    private void init() {
+        // Blocks restored from persistent arenas were linked without counting
+        if (isEnabled())
+            storage.stream().filter(block -> !block.isDeleted()).forEach(block -> block.getLinks().forEach(this::increment));
+    }
+
+    public boolean isEnabled() {
+        return properties.isReferenceCounting();
+    }
+
+    /**
+     * Resets the state of a new block, its index may have belonged to a freed one.
+     */
+    public void onInsert(MemoryBlock block) {
+        if (isEnabled())
+            states.set(block.getIndex(), 0);
+    }
+
+    public void onLink(MemoryBlock child) {
+        if (isEnabled())
+            increment(child);
+    }
+
+    public void onUnlink(MemoryBlock child) {
+        if (!isEnabled())
+            return;
+
+        if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+
+        pending[pendingCount++] = child.handle();
+
+        if (pendingCount >= properties.getRefCountBatch())
+            flush();
+    }
+
+    /**
+     * Must be called before the block is removed from the storage: queued decrements may still refer to it.
+     * Decrements that drop the count of the block to zero release its children, so they are not released again.
+     *
+     * @return false if the queued decrements have already freed the block
+     */
+    public boolean onRemove(MemoryBlock block) {
+        if (!isEnabled())
+            return true;
+
+        final var handle = block.handle();
+
+        flush();
+
+        if (resolve(handle) == null)
+            return false;
+
+        // A released block may still be kept as a cycle candidate, its children have been decremented
+        final var children = count(block) == 0 ? List.<MemoryBlock>of() : List.copyOf(block.getLinks());
+
+        states.set(block.getIndex(), 0);
+        children.forEach(this::onUnlink);
+
+        return true;
+    }
+
+    /**
+     * The tracing collector released the block: its links are gone, but nothing is freed in cascade,
+     * since unreachable children are released by the same collection.
+     */
+    void onRelease(MemoryBlock block) {
+        if (!isEnabled())
+            return;
+
+        states.set(block.getIndex(), 0);
+
+        for (MemoryBlock child : block.getLinks())
+            setCount(child, Math.max(0, count(child) - 1));
+    }
+
+    /**
+     * Applies queued decrements and frees blocks left without references. Skipped while a tracing
+     * collection is in progress, since its marks may still point to the blocks.
+     */
+    public void flush() {
+        if (!isEnabled() || writeBarrier.isActive())
+            return;
+
+        while (pendingCount > 0) {
+            final var block = resolve(pending[--pendingCount]);
+
+            if (block != null)
+                decrement(block);
+        }
+
+        if (candidates.size() >= properties.getRefCountCycleRoots())
+            collectCycles();
+    }
+
+    public int count(MemoryBlock block) {
+        return states.get(block.getIndex()) & COUNT_MASK;
+    }
+
+    public long getReclaimedBlocks() {
+        return reclaimedBlocks;
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * Frees garbage cycles reachable from the candidate roots: trial deletion of internal links
+     * leaves a count above zero only in blocks referenced from outside.
+     */
+    public void collectCycles() {
+        if (!isEnabled() || writeBarrier.isActive())
+            return;
+
+        final var roots = markRoots();
+
+        roots.forEach(this::scan);
+
+        for (MemoryBlock root : roots) {
+            setBuffered(root, false);
+            collectWhite(root);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        states.clear();
+    }
+
+    private void increment(MemoryBlock block) {
+        setCount(block, count(block) + 1);
+        setColor(block, BLACK);
+    }
+
+    /**
+     * The cascade is driven by an explicit stack, so releasing a long chain does not grow the call stack.
+     */
+    private void decrement(MemoryBlock first) {
+        final var stack = new ArrayDeque<MemoryBlock>();
+
+        stack.push(first);
+
+        while (!stack.isEmpty()) {
+            final var block = stack.pop();
+
+            // Already freed, e.g. reached once more through a cycle of the released subgraph
+            if (count(block) == 0)
+                continue;
+
+            final var count = count(block) - 1;
+
+            setCount(block, count);
+
+            if (count == 0)
+                release(block, stack);
+            else
+                possibleRoot(block);
+        }
+    }
+
+    private void release(MemoryBlock block, Deque<MemoryBlock> stack) {
+        final var children = List.copyOf(block.getLinks());
+
+        setColor(block, BLACK);
+
+        if (!isBuffered(block))
+            free(block);
+
+        for (int i = children.size() - 1; i >= 0; i--)
+            stack.push(children.get(i));
+    }
+
+    private void possibleRoot(MemoryBlock block) {
+        if (color(block) == PURPLE)
+            return;
+
+        setColor(block, PURPLE);
+
+        if (!isBuffered(block)) {
+            setBuffered(block, true);
+            candidates.add(block.handle());
+        }
+    }
+
+    private List<MemoryBlock> markRoots() {
+        final var roots = new ArrayList<MemoryBlock>();
+
+        for (long handle : candidates) {
+            final var block = resolve(handle);
+
+            if (block == null || !isBuffered(block))
+                continue;
+
+            if (color(block) == PURPLE && count(block) > 0) {
+                markGray(block);
+                roots.add(block);
+            } else {
+                setBuffered(block, false);
+
+                if (color(block) == BLACK && count(block) == 0)
+                    free(block);
+            }
+        }
+
+        candidates.clear();
+
+        return roots;
+    }
+
+    private void markGray(MemoryBlock root) {
+        if (color(root) == GRAY)
+            return;
+
+        final var stack = new ArrayDeque<MemoryBlock>();
+
+        setColor(root, GRAY);
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            for (MemoryBlock child : stack.pop().getLinks()) {
+                setCount(child, Math.max(0, count(child) - 1));
+
+                if (color(child) != GRAY) {
+                    setColor(child, GRAY);
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    private void scan(MemoryBlock root) {
+        final var stack = new ArrayDeque<MemoryBlock>();
+
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            final var block = stack.pop();
+
+            if (color(block) != GRAY)
+                continue;
+
+            if (count(block) > 0) {
+                scanBlack(block);
+            } else {
+                setColor(block, WHITE);
+                block.getLinks().forEach(stack::push);
+            }
+        }
+    }
+
+    private void scanBlack(MemoryBlock root) {
+        final var stack = new ArrayDeque<MemoryBlock>();
+
+        setColor(root, BLACK);
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            for (MemoryBlock child : stack.pop().getLinks()) {
+                setCount(child, count(child) + 1);
+
+                if (color(child) != BLACK) {
+                    setColor(child, BLACK);
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    private void collectWhite(MemoryBlock root) {
+        final var stack = new ArrayDeque<MemoryBlock>();
+
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            final var block = stack.pop();
+
+            if (color(block) != WHITE || isBuffered(block))
+                continue;
+
+            setColor(block, BLACK);
+            block.getLinks().forEach(stack::push);
+            free(block);
+        }
+    }
+
+    private void free(MemoryBlock block) {
+        if (block.isRoot())
+            return;
+
+        reclaimedBlocks++;
+        reclaimedBytes += block.getSize();
+
+        states.set(block.getIndex(), 0);
+        writeBarrier.forget(block);
+        storage.release(block);
+    }
+
+    private MemoryBlock resolve(long handle) {
+        try {
+            return storage.getByHandle(handle);
+        } catch (ObjectNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void setCount(MemoryBlock block, int count) {
+        final var state = states.get(block.getIndex());
+
+        states.set(block.getIndex(), (state & ~COUNT_MASK) | Math.min(count, COUNT_MASK));
+    }
+
+    private int color(MemoryBlock block) {
+        return (states.get(block.getIndex()) & COLOR_MASK) >>> COLOR_SHIFT;
+    }
+
+    private void setColor(MemoryBlock block, int color) {
+        final var state = states.get(block.getIndex());
+
+        states.set(block.getIndex(), (state & ~COLOR_MASK) | (color << COLOR_SHIFT));
+    }
+
+    private boolean isBuffered(MemoryBlock block) {
+        return (states.get(block.getIndex()) & BUFFERED) != 0;
+    }
+
+    private void setBuffered(MemoryBlock block, boolean buffered) {
+        final var state = states.get(block.getIndex());
+
+        states.set(block.getIndex(), buffered ? state | BUFFERED : state & ~BUFFERED);
+    }
+}
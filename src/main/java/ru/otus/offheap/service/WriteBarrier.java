@@ -0,0 +1,110 @@
+package ru.otus.offheap.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Link hooks of the incremental collector. While a collection is in progress every new link
+ * from a marked block shades its child, so a marked block never points to an unmarked one.
+ * During marking, children losing a link are shaded too (snapshot at the beginning), so everything
+ * reachable when the cycle started survives it. Must be called under the storage write lock.
+ * <p>
+ * The barrier also keeps the remembered set of young collections: for every nursery block the number
+ * of links to it from outside the nursery, the root included.
+ */
+@Component
+@RequiredArgsConstructor
+public class WriteBarrier {
+
+    private final ArenaManager arenaManager;
+    private final Map<MemoryBlock, Integer> remembered = new HashMap<>();
+
+    private volatile MarkState markState;
+    private volatile boolean sweeping;
+
+    public boolean isActive() {
+        return markState != null;
+    }
+
+    public void onLink(MemoryBlock parent, MemoryBlock child) {
+        if (isOldToYoung(parent, child))
+            remembered.merge(child, 1, Integer::sum);
+
+        final var state = markState;
+
+        if (state == null || !state.isMarked(parent))
+            return;
+
+        state.shade(child);
+
+        // The sweep is already running: a block reached again by name must keep its whole subgraph
+        if (sweeping)
+            state.drain();
+    }
+
+    public void onUnlink(MemoryBlock parent, MemoryBlock child) {
+        if (isOldToYoung(parent, child))
+            remembered.computeIfPresent(child, (block, count) -> count > 1 ? count - 1 : null);
+
+        final var state = markState;
+
+        if (state != null && !sweeping)
+            state.shade(child);
+    }
+
+    /**
+     * Must be called before the block is removed from the storage.
+     */
+    public void onRemove(MemoryBlock block) {
+        remembered.remove(block);
+        block.getLinks().forEach(child -> onUnlink(block, child));
+    }
+
+    /**
+     * Drops a block released by the collector. Links from released old blocks are not subtracted,
+     * so their young children may survive one more young collection.
+     */
+    void forget(MemoryBlock block) {
+        remembered.remove(block);
+    }
+
+    /**
+     * @return nursery blocks linked from outside the nursery
+     */
+    List<MemoryBlock> rememberedBlocks() {
+        return List.copyOf(remembered.keySet());
+    }
+
+    /**
+     * Replaces the remembered set after a young collection. Promoted blocks are old and need no entry,
+     * blocks left in the nursery are kept unconditionally.
+     */
+    void resetRemembered(List<MemoryBlock> youngSurvivors) {
+        remembered.clear();
+        youngSurvivors.forEach(block -> remembered.put(block, 1));
+    }
+
+    private boolean isOldToYoung(MemoryBlock parent, MemoryBlock child) {
+        return arenaManager.isYoung(child.getAddress()) && (parent.isRoot() || !arenaManager.isYoung(parent.getAddress()));
+    }
+
+    void begin(MarkState state) {
+        this.sweeping = false;
+        this.markState = state;
+    }
+
+    void beginSweep() {
+        this.sweeping = true;
+    }
+
+    void end() {
+        this.markState = null;
+        this.sweeping = false;
+    }
+}
@@ -0,0 +1,38 @@
+package ru.otus.offheap.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ClassNameDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    public synchronized int intern(String name) {
+        final var key = name == null ? "" : name;
+        final var id = ids.get(key);
+
+        if (id != null)
+            return id;
+
+        names.add(key);
+        ids.put(key, names.size() - 1);
+
+        return names.size() - 1;
+    }
+
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public synchronized void clear() {
+        ids.clear();
+        names.clear();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.otus.offheap.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.String.format;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets.
+ * Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(63 - numberOfLeadingZeros(Math.max(nanos, 1)));
+    }
+
+    public long count() {
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+
+        return total;
+    }
+
+    public long percentile(double percentile) {
+        final var total = count();
+
+        if (total == 0)
+            return 0;
+
+        final var threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts.get(i);
+
+            if (seen >= threshold)
+                return 1L << (i + 1);
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        return format("count [%d], p50 <= [%d] ns, p99 <= [%d] ns, p99.9 <= [%d] ns",
+                count(), percentile(50), percentile(99), percentile(99.9));
+    }
+}
@@ -0,0 +1,55 @@
+package ru.otus.offheap.util;
+
+import java.util.Arrays;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Unbounded array of ints in native memory. Pages are allocated zeroed on the first write
+ * to their range and never move; reading beyond the written range returns 0.
+ */
+public class OffHeapIntArray {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    private static final long PAGE_BYTES = (long) PAGE_INTS * Integer.BYTES;
+
+    private long[] pages = new long[0];
+
+    public int get(int index) {
+        final var page = index >>> PAGE_SHIFT;
+
+        return page < pages.length ? UNSAFE.getInt(address(page, index)) : 0;
+    }
+
+    public void set(int index, int value) {
+        final var page = index >>> PAGE_SHIFT;
+
+        if (page >= pages.length)
+            grow(page + 1);
+
+        UNSAFE.putInt(address(page, index), value);
+    }
+
+    public void clear() {
+        for (long page : pages)
+            UNSAFE.freeMemory(page);
+
+        pages = new long[0];
+    }
+
+    private long address(int page, int index) {
+        return pages[page] + (long) (index & (PAGE_INTS - 1)) * Integer.BYTES;
+    }
+
+    private void grow(int pageCount) {
+        final var newPages = Arrays.copyOf(pages, pageCount);
+
+        for (int i = pages.length; i < pageCount; i++) {
+            newPages[i] = UNSAFE.allocateMemory(PAGE_BYTES);
+            UNSAFE.setMemory(newPages[i], PAGE_BYTES, (byte) 0);
+        }
+
+        pages = newPages;
+    }
+}
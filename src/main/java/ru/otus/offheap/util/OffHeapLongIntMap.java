@@ -0,0 +1,175 @@
+package ru.otus.offheap.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Open addressing hash map from non-negative long keys to int values kept in native memory.
+ * Tables replaced on growth are retired rather than freed, so a concurrent optimistic reader
+ * never touches released memory; they are released on {@link #clear()}. The address and the mask of a table
+ * are published together, so a reader never probes a table with the mask of another one.
+ */
+public class OffHeapLongIntMap {
+
+    public static final int NO_VALUE = -1;
+
+    private static final long EMPTY = -1;
+    private static final int ENTRY_SIZE = 16;
+    private static final int VALUE_OFFSET = 8;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<Long> retiredTables = new ArrayList<>();
+
+    private volatile Table table;
+    private int size;
+
+    private record Table(long address, int mask) {
+    }
+
+    public OffHeapLongIntMap() {
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    public int get(long key) {
+        if (key == EMPTY)
+            return NO_VALUE;
+
+        final var current = table;
+        final var currentTable = current.address();
+        final var currentMask = current.mask();
+
+        for (int i = indexOf(key, currentMask), probes = 0; probes <= currentMask; i = (i + 1) & currentMask, probes++) {
+            final var entry = currentTable + (long) i * ENTRY_SIZE;
+            final var entryKey = UNSAFE.getLong(entry);
+
+            if (entryKey == key)
+                return UNSAFE.getInt(entry + VALUE_OFFSET);
+
+            if (entryKey == EMPTY)
+                return NO_VALUE;
+        }
+
+        return NO_VALUE;
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+
+        if ((size + 1) * 4L > (table.mask() + 1L) * 3)
+            resize((table.mask() + 1) * 2);
+
+        if (insert(table.address(), table.mask(), key, value))
+            size++;
+    }
+
+    public void remove(long key) {
+        if (key == EMPTY)
+            return;
+
+        final var mask = table.mask();
+        int i = indexOf(key, mask);
+
+        while (true) {
+            final var entryKey = UNSAFE.getLong(entryAddress(i));
+
+            if (entryKey == EMPTY)
+                return;
+
+            if (entryKey == key)
+                break;
+
+            i = (i + 1) & mask;
+        }
+
+        // Backward shift deletion keeps probe chains intact without tombstones
+        int hole = i;
+
+        for (int j = (hole + 1) & mask; ; j = (j + 1) & mask) {
+            final var entryKey = UNSAFE.getLong(entryAddress(j));
+
+            if (entryKey == EMPTY)
+                break;
+
+            final var home = indexOf(entryKey, mask);
+
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                UNSAFE.copyMemory(entryAddress(j), entryAddress(hole), ENTRY_SIZE);
+                hole = j;
+            }
+        }
+
+        UNSAFE.putLong(entryAddress(hole), EMPTY);
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long footprint() {
+        return (table.mask() + 1L) * ENTRY_SIZE;
+    }
+
+    public void clear() {
+        retiredTables.forEach(UNSAFE::freeMemory);
+        retiredTables.clear();
+        UNSAFE.freeMemory(table.address());
+
+        size = 0;
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    private boolean insert(long targetTable, int targetMask, long key, int value) {
+        for (int i = indexOf(key, targetMask); ; i = (i + 1) & targetMask) {
+            final var entry = targetTable + (long) i * ENTRY_SIZE;
+            final var entryKey = UNSAFE.getLong(entry);
+
+            if (entryKey == EMPTY || entryKey == key) {
+                UNSAFE.putInt(entry + VALUE_OFFSET, value);
+                UNSAFE.putLong(entry, key);
+
+                return entryKey == EMPTY;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        final var oldTable = table.address();
+        final var oldCapacity = table.mask() + 1;
+        final var newTable = UNSAFE.allocateMemory((long) capacity * ENTRY_SIZE);
+        final var newMask = capacity - 1;
+
+        UNSAFE.setMemory(newTable, (long) capacity * ENTRY_SIZE, (byte) 0xFF);
+
+        for (int i = 0; i < oldCapacity; i++) {
+            final var entry = oldTable + (long) i * ENTRY_SIZE;
+            final var key = UNSAFE.getLong(entry);
+
+            if (key != EMPTY)
+                insert(newTable, newMask, key, UNSAFE.getInt(entry + VALUE_OFFSET));
+        }
+
+        retiredTables.add(oldTable);
+        table = new Table(newTable, newMask);
+    }
+
+    private void allocateTable(int capacity) {
+        final var newTable = UNSAFE.allocateMemory((long) capacity * ENTRY_SIZE);
+        UNSAFE.setMemory(newTable, (long) capacity * ENTRY_SIZE, (byte) 0xFF);
+
+        table = new Table(newTable, capacity - 1);
+    }
+
+    private long entryAddress(int index) {
+        return table.address() + (long) index * ENTRY_SIZE;
+    }
+
+    private static int indexOf(long key, int mask) {
+        final var hash = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.otus.offheap.util;
+
+import java.util.Arrays;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * Table of fixed-size records in native memory. Records are addressed by slot and
+ * allocated in pages that are never moved, so a slot stays readable until {@link #clear()}.
+ * Freed slots are chained through the first four bytes of the record; the rest of a freed
+ * record is left intact, so callers initialize every field they rely on after {@link #allocate()}.
+ */
+public class OffHeapRecordTable {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_RECORDS = 1 << PAGE_SHIFT;
+    private static final int NO_SLOT = -1;
+
+    private final int recordSize;
+
+    private volatile long[] pages = new long[0];
+    private int highWaterMark;
+    private int freeSlot = NO_SLOT;
+    private int count;
+
+    public OffHeapRecordTable(int recordSize) {
+        this.recordSize = recordSize;
+    }
+
+    public int allocate() {
+        int slot;
+
+        if (freeSlot != NO_SLOT) {
+            slot = freeSlot;
+            freeSlot = getInt(slot, 0);
+        } else {
+            if (highWaterMark == pages.length * PAGE_RECORDS)
+                addPage();
+
+            slot = highWaterMark++;
+        }
+
+        count++;
+
+        return slot;
+    }
+
+    public void free(int slot) {
+        putInt(slot, 0, freeSlot);
+        freeSlot = slot;
+        count--;
+    }
+
+    public long getLong(int slot, int offset) {
+        return UNSAFE.getLong(recordAddress(slot) + offset);
+    }
+
+    public void putLong(int slot, int offset, long value) {
+        UNSAFE.putLong(recordAddress(slot) + offset, value);
+    }
+
+    public int getInt(int slot, int offset) {
+        return UNSAFE.getInt(recordAddress(slot) + offset);
+    }
+
+    public void putInt(int slot, int offset, int value) {
+        UNSAFE.putInt(recordAddress(slot) + offset, value);
+    }
+
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long footprint() {
+        return (long) pages.length * PAGE_RECORDS * recordSize;
+    }
+
+    public void clear() {
+        for (long page : pages)
+            UNSAFE.freeMemory(page);
+
+        pages = new long[0];
+        highWaterMark = 0;
+        freeSlot = NO_SLOT;
+        count = 0;
+    }
+
+    private long recordAddress(int slot) {
+        return pages[slot >>> PAGE_SHIFT] + (long) (slot & (PAGE_RECORDS - 1)) * recordSize;
+    }
+
+    private void addPage() {
+        final var newPages = Arrays.copyOf(pages, pages.length + 1);
+        final var page = UNSAFE.allocateMemory((long) PAGE_RECORDS * recordSize);
+
+        UNSAFE.setMemory(page, (long) PAGE_RECORDS * recordSize, (byte) 0);
+        newPages[pages.length] = page;
+
+        pages = newPages;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.otus.offheap.util;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+public final class UnsafeHolder {
+
+    public static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            UNSAFE = (Unsafe) f.get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private UnsafeHolder() {
+    }
+}
@@ -0,0 +1,83 @@
+package ru.otus.offheap.util;
+
+import static ru.otus.offheap.util.UnsafeHolder.UNSAFE;
+
+/**
+ * xxHash64 of a native memory region. Words are read in the native byte order, so hashes match the reference
+ * implementation on little-endian machines only; they are meant for in-process lookups, not for storage.
+ */
+public final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    public static long hash(long address, long length, long seed) {
+        final var end = address + length;
+        var position = address;
+        long hash;
+
+        if (length >= 32) {
+            final var limit = end - 32;
+            var v1 = seed + PRIME1 + PRIME2;
+            var v2 = seed + PRIME2;
+            var v3 = seed;
+            var v4 = seed - PRIME1;
+
+            do {
+                v1 = round(v1, UNSAFE.getLong(position));
+                v2 = round(v2, UNSAFE.getLong(position + 8));
+                v3 = round(v3, UNSAFE.getLong(position + 16));
+                v4 = round(v4, UNSAFE.getLong(position + 24));
+                position += 32;
+            } while (position <= limit);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+
+        hash += length;
+
+        for (; position + 8 <= end; position += 8) {
+            hash ^= round(0, UNSAFE.getLong(position));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+
+        if (position + 4 <= end) {
+            hash ^= (UNSAFE.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+
+        for (; position < end; position++) {
+            hash ^= (UNSAFE.getByte(position) & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        return hash;
+    }
+
+    private static long round(long accumulator, long input) {
+        return Long.rotateLeft(accumulator + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long mergeRound(long hash, long value) {
+        return (hash ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+}
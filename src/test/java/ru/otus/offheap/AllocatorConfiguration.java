@@ -1,14 +1,29 @@
 package ru.otus.offheap;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.collection.OffHeapCollections;
+import ru.otus.offheap.codec.BlockCompressor;
+import ru.otus.offheap.codec.CodecRegistry;
+import ru.otus.offheap.config.AllocatorProperties;
 import ru.otus.offheap.service.AllocatorService;
 import ru.otus.offheap.service.AllocatorServiceImpl;
+import ru.otus.offheap.service.AsyncAllocatorService;
+import ru.otus.offheap.service.AsyncAllocatorServiceImpl;
+import ru.otus.offheap.service.BackgroundCollector;
+import ru.otus.offheap.service.BuddyMemoryBlockStorage;
+import ru.otus.offheap.service.DedupIndex;
+import ru.otus.offheap.service.ExpiryWheel;
 import ru.otus.offheap.service.GarbageCollector;
 import ru.otus.offheap.service.GarbageCollectorImpl;
 import ru.otus.offheap.service.MemoryBlockStorage;
 import ru.otus.offheap.service.MemoryBlockStorageImpl;
+import ru.otus.offheap.service.OffHeapMemoryBlockStorage;
+import ru.otus.offheap.service.ReferenceCounter;
+import ru.otus.offheap.service.WriteBarrier;
 
 @SpringJUnitConfig
 @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
@@ -16,17 +31,100 @@ public class AllocatorConfiguration {
 
     @Bean
     @Primary
-    public MemoryBlockStorage memoryBlockStorage() {
-        return new MemoryBlockStorageImpl();
+    public MemoryBlockStorage memoryBlockStorage(@Value("${offheap.allocator.storage:heap}") String storage) {
+        return switch (storage) {
+            case "offheap" -> new OffHeapMemoryBlockStorage();
+            case "buddy" -> new BuddyMemoryBlockStorage();
+            default -> new MemoryBlockStorageImpl();
+        };
     }
 
     @Bean
-    public AllocatorService allocatorService(MemoryBlockStorage memoryBlockStorage) {
-        return new AllocatorServiceImpl(memoryBlockStorage);
+    public AllocatorProperties allocatorProperties() {
+        return new AllocatorProperties();
     }
 
     @Bean
-    public GarbageCollector gaGrabageCollector(MemoryBlockStorage memoryBlockStorage) {
-        return new GarbageCollectorImpl(memoryBlockStorage);
+    public CodecRegistry codecRegistry(AllocatorProperties allocatorProperties) {
+        return new CodecRegistry(allocatorProperties);
+    }
+
+    @Bean
+    public BlockCompressor blockCompressor(AllocatorProperties allocatorProperties) {
+        return new BlockCompressor(allocatorProperties);
+    }
+
+    @Bean
+    public ArenaManager arenaManager(AllocatorProperties allocatorProperties, MemoryBlockStorage memoryBlockStorage,
+                                     ExpiryWheel expiryWheel) {
+        return new ArenaManager(allocatorProperties, memoryBlockStorage, expiryWheel);
+    }
+
+    @Bean
+    public WriteBarrier writeBarrier(ArenaManager arenaManager) {
+        return new WriteBarrier(arenaManager);
+    }
+
+    @Bean
+    public ReferenceCounter referenceCounter(MemoryBlockStorage memoryBlockStorage,
+                                             WriteBarrier writeBarrier,
+                                             AllocatorProperties allocatorProperties) {
+        return new ReferenceCounter(memoryBlockStorage, writeBarrier, allocatorProperties);
+    }
+
+    @Bean
+    public ExpiryWheel expiryWheel(AllocatorProperties allocatorProperties) {
+        return new ExpiryWheel(allocatorProperties);
+    }
+
+    @Bean
+    public DedupIndex dedupIndex(AllocatorProperties allocatorProperties) {
+        return new DedupIndex(allocatorProperties);
+    }
+
+    @Bean
+    public AllocatorService allocatorService(MemoryBlockStorage memoryBlockStorage,
+                                             AllocatorProperties allocatorProperties,
+                                             CodecRegistry codecRegistry,
+                                             ArenaManager arenaManager,
+                                             WriteBarrier writeBarrier,
+                                             ReferenceCounter referenceCounter,
+                                             ExpiryWheel expiryWheel,
+                                             BlockCompressor blockCompressor,
+                                             DedupIndex dedupIndex) {
+        return new AllocatorServiceImpl(memoryBlockStorage, allocatorProperties, codecRegistry, arenaManager, writeBarrier,
+                referenceCounter, expiryWheel, blockCompressor, dedupIndex);
+    }
+
+    @Bean
+    public AsyncAllocatorService asyncAllocatorService(AllocatorService allocatorService,
+                                                       AllocatorProperties allocatorProperties) {
+        return new AsyncAllocatorServiceImpl(allocatorService, allocatorProperties);
+    }
+
+    @Bean
+    public OffHeapCollections offHeapCollections(AllocatorService allocatorService,
+                                                 MemoryBlockStorage memoryBlockStorage) {
+        return new OffHeapCollections(allocatorService, memoryBlockStorage);
+    }
+
+    @Bean
+    public GarbageCollector gaGrabageCollector(MemoryBlockStorage memoryBlockStorage,
+                                               ArenaManager arenaManager,
+                                               WriteBarrier writeBarrier,
+                                               ReferenceCounter referenceCounter,
+                                               AllocatorProperties allocatorProperties) {
+        return new GarbageCollectorImpl(memoryBlockStorage, arenaManager, writeBarrier, referenceCounter,
+                allocatorProperties);
+    }
+
+    @Bean
+    public BackgroundCollector backgroundCollector(GarbageCollector garbageCollector,
+                                                   AllocatorService allocatorService,
+                                                   MemoryBlockStorage memoryBlockStorage,
+                                                   ArenaManager arenaManager,
+                                                   AllocatorProperties allocatorProperties) {
+        return new BackgroundCollector(garbageCollector, allocatorService, memoryBlockStorage, arenaManager,
+                allocatorProperties);
     }
 }
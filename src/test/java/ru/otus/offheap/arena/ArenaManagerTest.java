@@ -0,0 +1,77 @@
+package ru.otus.offheap.arena;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.BlobContainer;
+import ru.otus.offheap.exception.NotEnoughMemoryException;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.GarbageCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.arena-size=4096",
+        "offheap.allocator.arena-growth-factor=1",
+        "offheap.allocator.max-capacity=32768"
+})
+@EnableAutoConfiguration
+@DirtiesContext
+class ArenaManagerTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Autowired
+    private ArenaManager arenaManager;
+
+    @Test
+    void growAndReleaseTest() {
+        final var names = new ArrayList<String>();
+
+        // Объекты не помещаются в одну арену, поэтому открываются новые
+        for (int i = 0; i < 12; i++)
+            names.add(allocatorService.set(blob(i)));
+
+        assertTrue(arenaManager.arenaCount() > 1);
+
+        for (int i = 0; i < names.size(); i++)
+            assertArrayEquals(blob(i).getArr(), ((BlobContainer) allocatorService.get(names.get(i)).get(0)).getArr());
+
+        // После удаления всех объектов сборщик освобождает все арены, кроме текущей
+        names.forEach(allocatorService::remove);
+        garbageCollector.performGC();
+
+        assertEquals(1, arenaManager.arenaCount());
+
+        // Память не может вырасти больше заданного предела
+        final List<String> filled = new ArrayList<>();
+
+        assertThrows(NotEnoughMemoryException.class, () -> {
+            for (int i = 0; i < 64; i++)
+                filled.add(allocatorService.set(blob(i)));
+        });
+        assertTrue(arenaManager.capacity() <= arenaManager.maxCapacity());
+    }
+
+    private static BlobContainer blob(int seed) {
+        final var arr = new int[256];
+
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = seed * arr.length + i;
+
+        return BlobContainer.builder().arr(arr).build();
+    }
+}
@@ -0,0 +1,228 @@
+package ru.otus.offheap.arena;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.codec.Codec;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.ExpiryWheel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+class MappedArenaTest {
+
+    @TempDir
+    Path persistenceDir;
+
+    @Test
+    void restartTest() {
+        final var parent = generateStringContainer();
+        final var child = generateStringContainer();
+        final String parentName;
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            parentName = allocatorService.set(parent);
+            allocatorService.link(parentName, allocatorService.set(child));
+        }
+
+        // После перезапуска объекты и связи читаются из тех же файлов
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            assertEquals(List.of(parent, child), allocatorService.get(parentName));
+
+            // Новые имена не пересекаются с сохраненными
+            assertNotEquals(parentName, allocatorService.set(generateStringContainer()));
+        }
+    }
+
+    @Test
+    void corruptedMetadataTest() throws Exception {
+        final String name;
+
+        try (ConfigurableApplicationContext context = start()) {
+            name = context.getBean(AllocatorService.class).set(generateStringContainer());
+        }
+
+        final var metadata = dataDir().resolve(ArenaSnapshot.FILE_NAME);
+        final var pristine = Files.copy(metadata, persistenceDir.resolve("pristine.meta"));
+        final var length = Files.size(metadata);
+
+        // Инвертируем последний байт тела на месте: заголовок и длина не меняются
+        try (RandomAccessFile file = new RandomAccessFile(metadata.toFile(), "rw")) {
+            file.seek(length - 1);
+            final var last = file.read();
+            file.seek(length - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        // Отличие от исходного файла только в контрольной сумме, и именно она отвергает испорченный
+        assertEquals(length, Files.size(metadata));
+        assertNotNull(ArenaSnapshot.read(pristine));
+        assertNull(ArenaSnapshot.read(metadata));
+
+        // Испорченные метаданные отбрасываются вместе с данными
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(name));
+        }
+    }
+
+    @Test
+    void crashRecoveryTest() throws Exception {
+        final var kept = generateStringContainer();
+        final var crashImage = persistenceDir.resolve("crash");
+        final String keptName;
+        final String lostName;
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            keptName = allocatorService.set(kept);
+            allocatorService.checkpoint();
+
+            // После контрольной точки объект удален, его место не переиспользуется до следующей точки
+            allocatorService.remove(keptName);
+            lostName = allocatorService.set(generateStringContainer());
+
+            // Файлы в момент сбоя: арены уже изменены, метаданные остались от контрольной точки
+            Files.createDirectories(crashImage);
+
+            try (Stream<Path> files = Files.list(dataDir())) {
+                for (Path file : files.toList())
+                    Files.copy(file, crashImage.resolve(file.getFileName()));
+            }
+        }
+
+        try (ConfigurableApplicationContext context = start(crashImage)) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            assertEquals(List.of(kept), allocatorService.get(keptName));
+            assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(lostName));
+        }
+    }
+
+    @Test
+    void expiryRestartTest() throws Exception {
+        final String shortName;
+        final String longName;
+        final String permanentName;
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            shortName = allocatorService.set("short", Duration.ofMillis(100));
+            longName = allocatorService.set("long", Duration.ofHours(1));
+            permanentName = allocatorService.set("permanent");
+        }
+
+        // Срок объекта идет и пока аллокатор остановлен
+        Thread.sleep(200);
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+            final var expiryWheel = context.getBean(ExpiryWheel.class);
+
+            assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(shortName));
+            assertEquals(List.of("long"), allocatorService.get(longName));
+            assertEquals(List.of("permanent"), allocatorService.get(permanentName));
+
+            // Восстановленный срок снова стоит в колесе, бессрочный объект в нем не появляется
+            assertEquals(1, expiryWheel.scheduled());
+        }
+    }
+
+    @Test
+    void customCodecRestartTest() {
+        final String name;
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            allocatorService.registerCodec(String.class, new Utf8Codec());
+            name = allocatorService.set("text");
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            final var allocatorService = context.getBean(AllocatorService.class);
+
+            // Без своего кодека блок не читается чужим
+            assertThrows(IllegalStateException.class, () -> allocatorService.get(name));
+
+            // Кодеки зарегистрированы в другом порядке, блок все равно читается своим кодеком
+            allocatorService.registerCodec(String.class, new ReversedCodec());
+            allocatorService.registerCodec(String.class, new Utf8Codec());
+
+            assertEquals(List.of("text"), allocatorService.get(name));
+        }
+    }
+
+    private Path dataDir() {
+        return persistenceDir.resolve("data");
+    }
+
+    private ConfigurableApplicationContext start() {
+        return start(dataDir());
+    }
+
+    private ConfigurableApplicationContext start(Path dir) {
+        return new SpringApplicationBuilder(PersistentAllocator.class)
+                .properties("offheap.allocator.persistence-dir=" + dir)
+                .run();
+    }
+
+    @EnableAutoConfiguration
+    @Import(AllocatorConfiguration.class)
+    static class PersistentAllocator {
+    }
+
+    static class Utf8Codec implements Codec<String> {
+
+        @Override
+        public void encode(String text, OutputStream out) throws IOException {
+            out.write(text.getBytes(UTF_8));
+        }
+
+        @Override
+        public String decode(InputStream in) throws IOException {
+            return new String(in.readAllBytes(), UTF_8);
+        }
+    }
+
+    static class ReversedCodec extends Utf8Codec {
+
+        @Override
+        public void encode(String text, OutputStream out) throws IOException {
+            super.encode(new StringBuilder(text).reverse().toString(), out);
+        }
+
+        @Override
+        public String decode(InputStream in) throws IOException {
+            return new StringBuilder(super.decode(in)).reverse().toString();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ru.otus.offheap.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.collection.OffHeapCollections;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class OffHeapCacheTest {
+
+    private static final int HOT_KEYS = 5;
+    private static final List<String> COLLIDING_KEYS = List.of("AaAa", "AaBB", "BBAa", "BBBB");
+    private static final int ZIPF_KEYS = 1000;
+    private static final int ZIPF_OPERATIONS = 20_000;
+    private static final int ZIPF_CAPACITY = 100;
+
+    @Autowired
+    private OffHeapCollections collections;
+
+    @Test
+    void collidingKeysTest() {
+        final OffHeapCache<String, Integer> cache = collections.cache(1 << 20, EvictionPolicy.LRU, 16);
+
+        // У ключей "Aa" и "BB" одинаковый hashCode
+        cache.put("Aa", 1);
+        cache.put("BB", 2);
+        cache.put("Aa", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.get("Aa"));
+        assertEquals(2, cache.get("BB"));
+
+        assertTrue(cache.remove("Aa"));
+        assertFalse(cache.remove("Aa"));
+        assertNull(cache.get("Aa"));
+        assertEquals(2, cache.get("BB"));
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        cache.free();
+    }
+
+    @Test
+    void keyOnlyProbeTest() {
+        final OffHeapCache<String, CountedValue> cache = collections.cache(1 << 20, EvictionPolicy.LRU, 16);
+
+        // Все ключи с одним hashCode попадают в одну цепочку
+        COLLIDING_KEYS.forEach(key -> cache.put(key, new CountedValue(key)));
+        CountedValue.decoded = 0;
+
+        // Проход по цепочке читает только ключи, значение декодируется один раз и только при попадании
+        assertEquals("BBBB", cache.get("BBBB").value);
+        assertEquals("AaAa", cache.get("AaAa").value);
+        assertEquals(2, CountedValue.decoded);
+
+        assertNull(cache.get("CCCC"));
+        assertTrue(cache.remove("AaBB"));
+        assertEquals(2, CountedValue.decoded);
+
+        cache.free();
+    }
+
+    @Test
+    void lruEvictionTest() {
+        final OffHeapCache<Integer, String> cache = collections.cache(3 * entrySize(), EvictionPolicy.LRU, 16);
+
+        cache.put(1, "v1");
+        cache.put(2, "v2");
+        cache.put(3, "v3");
+        cache.get(1);
+        cache.put(4, "v4");
+
+        // Вытесняется запись, к которой дольше всего не обращались
+        assertNull(cache.get(2));
+        assertEquals("v1", cache.get(1));
+        assertEquals("v3", cache.get(3));
+        assertEquals("v4", cache.get(4));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void tinyLfuScanResistanceTest() {
+        final OffHeapCache<Integer, String> tinyLfu = collections.cache(10 * entrySize(), EvictionPolicy.TINY_LFU, 64);
+        final OffHeapCache<Integer, String> lru = collections.cache(10 * entrySize(), EvictionPolicy.LRU, 64);
+
+        for (final var cache : List.of(tinyLfu, lru)) {
+            IntStream.range(0, HOT_KEYS).forEach(key -> cache.put(key, "v" + key));
+
+            for (int i = 0; i < 5; i++)
+                IntStream.range(0, HOT_KEYS).forEach(cache::get);
+
+            // Однократный проход по холодным ключам
+            IntStream.range(100, 200).forEach(key -> cache.put(key, "v" + key));
+        }
+
+        // Частые ключи не пускают редкие на свое место, а LRU их вытесняет
+        IntStream.range(0, HOT_KEYS).forEach(key -> assertEquals("v" + key, tinyLfu.get(key)));
+        IntStream.range(0, HOT_KEYS).forEach(key -> assertNull(lru.get(key)));
+
+        assertTrue(tinyLfu.stats().rejections() > 0);
+        assertTrue(tinyLfu.stats().hitRatio() > lru.stats().hitRatio());
+    }
+
+    static class CountedValue implements Serializable {
+
+        static int decoded;
+
+        final String value;
+
+        CountedValue(String value) {
+            this.value = value;
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            decoded++;
+        }
+    }
+
+    @Test
+    void zipfianTimingTest() {
+        final var capacity = ZIPF_CAPACITY * entrySize();
+        final OffHeapCache<Integer, String> tinyLfu = collections.cache(capacity, EvictionPolicy.TINY_LFU, ZIPF_CAPACITY);
+        final OffHeapCache<Integer, String> lru = collections.cache(capacity, EvictionPolicy.LRU, ZIPF_CAPACITY);
+
+        // Одна и та же последовательность ключей с распределением Ципфа: промах догружает значение в кэш
+        for (final var cache : List.of(tinyLfu, lru)) {
+            final var keys = zipfian();
+            final var start = System.nanoTime();
+
+            for (int key : keys)
+                if (cache.get(key) == null)
+                    cache.put(key, "v" + key);
+
+            final var nanos = System.nanoTime() - start;
+
+            System.out.println(format("%s: hit ratio [%.3f], [%d] ns per request",
+                    cache == tinyLfu ? "tiny-lfu" : "lru", cache.stats().hitRatio(), nanos / ZIPF_OPERATIONS));
+
+            assertTrue(cache.stats().hits() > 0);
+            assertTrue(cache.size() <= ZIPF_CAPACITY);
+        }
+    }
+
+    /**
+     * Keys from 0 to {@link #ZIPF_KEYS} where key k is requested in proportion to 1 / (k + 1).
+     */
+    private static int[] zipfian() {
+        final var random = new Random(42);
+        final var cumulative = new double[ZIPF_KEYS];
+        var sum = 0.0;
+
+        for (int k = 0; k < ZIPF_KEYS; k++)
+            cumulative[k] = sum += 1.0 / (k + 1);
+
+        final var keys = new int[ZIPF_OPERATIONS];
+
+        for (int i = 0; i < ZIPF_OPERATIONS; i++) {
+            final var index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+
+            keys[i] = Math.min(index < 0 ? -index - 1 : index, ZIPF_KEYS - 1);
+        }
+
+        return keys;
+    }
+
+    private long entrySize() {
+        final OffHeapCache<Integer, String> probe = collections.cache(1 << 20, EvictionPolicy.LRU, 16);
+
+        probe.put(0, "v0");
+
+        final var size = probe.weight();
+
+        probe.free();
+
+        return size;
+    }
+}
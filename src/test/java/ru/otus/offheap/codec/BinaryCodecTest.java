@@ -0,0 +1,52 @@
+package ru.otus.offheap.codec;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.offheap.containers.containers.BlobContainer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.otus.offheap.common.CommonTestMehods.generateBigStringContainer;
+
+class BinaryCodecTest {
+
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+    private final JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+
+    record Point(int x, long y, String label) implements Serializable {
+    }
+
+    @Test
+    void pojoRoundTripTest() throws IOException {
+        final var container = generateBigStringContainer();
+
+        final var binary = encode(binaryCodec, container);
+
+        assertEquals(container, binaryCodec.decode(new ByteArrayInputStream(binary)));
+        // Бинарное представление должно быть компактнее стандартной сериализации
+        assertTrue(binary.length < encode(javaCodec, container).length);
+    }
+
+    @Test
+    void recordAndArrayRoundTripTest() throws IOException {
+        final var point = new Point(1, 2L, "point");
+        assertEquals(point, binaryCodec.decode(new ByteArrayInputStream(encode(binaryCodec, point))));
+
+        final var blob = BlobContainer.builder().arr(new int[] {1, 2, 3}).build();
+        final var decoded = (BlobContainer) binaryCodec.decode(new ByteArrayInputStream(encode(binaryCodec, blob)));
+        assertArrayEquals(blob.getArr(), decoded.getArr());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(Codec<?> codec, Serializable obj) throws IOException {
+        final var baos = new ByteArrayOutputStream();
+        ((Codec<Object>) codec).encode(obj, baos);
+
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.otus.offheap.codec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.model.TraversalOptions;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.AllocatorServiceImpl;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.compression-threshold=1024")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class CompressionTest {
+
+    private static final String TEXT = "{\"user\": \"otus\", \"roles\": [\"admin\", \"reader\"]}\n".repeat(500);
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void compressedRoundTripTest() {
+        final var big = allocatorService.set(TEXT);
+        final var small = allocatorService.set("small");
+
+        assertEquals(List.of(TEXT), allocatorService.get(big));
+        assertEquals(List.of("small"), allocatorService.get(small));
+
+        // Повторяющийся текст сжимается в разы, в заголовке блока остаются оба размера
+        final var block = block(big);
+
+        assertTrue(block.isCompressed());
+        assertTrue(block.getSize() * 5 < block.getRawSize());
+        assertFalse(block(small).isCompressed());
+    }
+
+    @Test
+    void batchAndTraversalTest() {
+        final var names = allocatorService.setAll(List.of(TEXT, "small", TEXT.toUpperCase()));
+
+        allocatorService.link(names.get(1), names.get(0));
+        allocatorService.link(names.get(1), names.get(2));
+
+        assertTrue(block(names.get(0)).isCompressed());
+        assertEquals(List.of("small", TEXT, TEXT.toUpperCase()), allocatorService.get(names.get(1)));
+        assertEquals(List.of(TEXT, TEXT.toUpperCase()),
+                allocatorService.stream(names.get(1), TraversalOptions.directChildren()).toList());
+        assertEquals(List.of(List.of("small", TEXT, TEXT.toUpperCase())), allocatorService.getAll(List.of(names.get(1))));
+    }
+
+    @Test
+    void incompressiblePayloadTest() {
+        final var bytes = new byte[4096];
+        new Random(42).nextBytes(bytes);
+
+        final var name = allocatorService.set(bytes);
+
+        // Случайные данные не сжимаются и хранятся как есть
+        assertFalse(block(name).isCompressed());
+        assertArrayEquals(bytes, (byte[]) allocatorService.get(name).get(0));
+    }
+
+    private MemoryBlock block(String name) {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage().getByName(name);
+    }
+}
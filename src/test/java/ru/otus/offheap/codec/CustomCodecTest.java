@@ -0,0 +1,144 @@
+package ru.otus.offheap.codec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.BlobContainer;
+import ru.otus.offheap.model.MemoryBlock;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.AllocatorServiceImpl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class,
+        properties = "offheap.allocator.binary-codec-classes=ru.otus.offheap.containers.containers.BlobContainer")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class CustomCodecTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    record Point(int x, int y) implements Serializable {
+    }
+
+    static class PointCodec implements Codec<Point> {
+
+        @Override
+        public void encode(Point point, OutputStream out) throws IOException {
+            final var data = new DataOutputStream(out);
+
+            data.writeInt(point.x());
+            data.writeInt(point.y());
+            data.flush();
+        }
+
+        @Override
+        public Point decode(InputStream in) throws IOException {
+            final var data = new DataInputStream(in);
+
+            return new Point(data.readInt(), data.readInt());
+        }
+    }
+
+    static class LabelCodec implements Codec<String> {
+
+        @Override
+        public void encode(String label, OutputStream out) throws IOException {
+            final var data = new DataOutputStream(out);
+
+            data.writeUTF(label);
+            data.flush();
+        }
+
+        @Override
+        public String decode(InputStream in) throws IOException {
+            return new DataInputStream(in).readUTF();
+        }
+    }
+
+    @Test
+    void binaryCodecClassesTest() {
+        final var blob = BlobContainer.builder().arr(new int[] {1, 2, 3}).build();
+        final var blobName = allocatorService.set(blob);
+        final var textName = allocatorService.set("text");
+
+        // Классы из binary-codec-classes пишутся бинарным кодеком, остальные стандартной сериализацией
+        assertEquals(CodecRegistry.BINARY, block(blobName).getCodec());
+        assertEquals(CodecRegistry.JAVA_SERIALIZATION, block(textName).getCodec());
+        assertArrayEquals(blob.getArr(), ((BlobContainer) allocatorService.get(blobName).get(0)).getArr());
+        assertEquals(List.of("text"), allocatorService.get(textName));
+    }
+
+    @Test
+    void registerCodecTest() {
+        final var pointCodec = new PointCodec();
+
+        allocatorService.registerCodec(Point.class, pointCodec);
+
+        final var point = new Point(1, 2);
+        final var pointName = allocatorService.set(point);
+
+        // Точка записана зарегистрированным кодеком: два int без заголовков сериализации
+        assertEquals(CodecRegistry.idOf(PointCodec.class), block(pointName).getCodec());
+        assertEquals(Integer.BYTES * 2, block(pointName).getSize());
+        assertEquals(List.of(point), allocatorService.get(pointName));
+
+        // Идентификатор кодека не зависит от порядка регистрации
+        allocatorService.registerCodec(String.class, new LabelCodec());
+        allocatorService.registerCodec(Point.class, pointCodec);
+
+        final var labelName = allocatorService.set("label");
+
+        assertNotEquals(block(pointName).getCodec(), block(labelName).getCodec());
+        assertEquals(CodecRegistry.idOf(PointCodec.class), block(allocatorService.set(point)).getCodec());
+        assertEquals(List.of(point), allocatorService.get(pointName));
+        assertEquals(List.of("label"), allocatorService.get(labelName));
+    }
+
+    @Test
+    void rejectedCodecTest() {
+        allocatorService.registerCodec(Point.class, new PointCodec());
+
+        // Другой экземпляр того же класса прочитал бы чужие блоки, поэтому отвергается
+        assertThrows(IllegalStateException.class, () -> allocatorService.registerCodec(Point.class, new PointCodec()));
+
+        // Имя анонимного класса назначает компилятор, после пересборки идентификатор бы сменился
+        assertThrows(IllegalArgumentException.class, () -> allocatorService.registerCodec(String.class,
+                new Codec<String>() {
+                    @Override
+                    public void encode(String label, OutputStream out) {
+                    }
+
+                    @Override
+                    public String decode(InputStream in) {
+                        return "";
+                    }
+                }));
+
+        // Отвергнутые кодеки ничего не меняют
+        final var point = new Point(3, 4);
+
+        assertEquals(List.of(point), allocatorService.get(allocatorService.set(point)));
+        assertEquals(List.of("text"), allocatorService.get(allocatorService.set("text")));
+    }
+
+    private MemoryBlock block(String name) {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage().getByName(name);
+    }
+}
@@ -0,0 +1,149 @@
+package ru.otus.offheap.collection;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.service.AllocatorService;
+import ru.otus.offheap.service.AllocatorServiceImpl;
+import ru.otus.offheap.service.GarbageCollector;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class OffHeapCollectionsTest {
+
+    @Autowired
+    private OffHeapCollections collections;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void longArrayTest() {
+        final var array = collections.longArray(1000);
+
+        for (int i = 0; i < array.length(); i++)
+            array.set(i, i * 31L);
+
+        assertEquals(31L * 999, array.get(999));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(1000));
+
+        // Блок коллекции виден как обычный блок с сырыми байтами
+        assertEquals(8000, ((byte[]) allocatorService.get(array.handle()).get(0)).length);
+    }
+
+    @Test
+    void longLongMapTest() {
+        final var map = collections.longLongMap(16);
+        final var expected = new HashMap<Long, Long>();
+        final var random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+            final var key = i == 0 ? 0 : random.nextLong() % 5000;
+
+            assertEquals(!expected.containsKey(key), map.put(key, i));
+            expected.put(key, (long) i);
+        }
+
+        expected.keySet().stream().filter(key -> key % 2 == 0).toList().forEach(key -> {
+            assertTrue(map.remove(key));
+            expected.remove(key);
+        });
+
+        assertEquals(expected.size(), map.size());
+        assertFalse(map.containsKey(0));
+
+        for (long key = -5000; key <= 5000; key++)
+            assertEquals((long) expected.getOrDefault(key, -1L), map.getOrDefault(key, -1));
+    }
+
+    @Test
+    void intListTest() {
+        final var list = collections.intList();
+
+        IntStream.range(0, 1000).forEach(list::add);
+        list.set(0, -1);
+
+        assertEquals(1000, list.size());
+        assertEquals(-1, list.get(0));
+        assertArrayEquals(IntStream.range(1, 1000).toArray(), IntStream.range(1, 1000).map(list::get).toArray());
+    }
+
+    @Test
+    void recordListTest() {
+        final var records = collections.recordList(16);
+
+        for (int i = 0; i < 100; i++) {
+            final var record = records.add();
+
+            records.putLong(record, 0, i);
+            records.putDouble(record, 8, i / 2.0);
+        }
+
+        assertEquals(99, records.getLong(99, 0));
+        assertEquals(49.5, records.getDouble(99, 8));
+        assertThrows(IndexOutOfBoundsException.class, () -> records.getLong(0, 12));
+    }
+
+    @Test
+    void inPlaceWriteTest() {
+        final var map = collections.longLongMap(16);
+        final var array = collections.longArray(16);
+        final var lock = ((AllocatorServiceImpl) allocatorService).getBlockStorage().getLock();
+
+        map.put(1, 1);
+
+        // Запись на месте делает недействительным оптимистичный снимок того же блока
+        var stamp = lock.tryOptimisticRead();
+        map.put(1, 2);
+        assertFalse(lock.validate(stamp));
+
+        stamp = lock.tryOptimisticRead();
+        map.remove(1);
+        assertFalse(lock.validate(stamp));
+
+        stamp = lock.tryOptimisticRead();
+        array.set(0, 42);
+        assertFalse(lock.validate(stamp));
+
+        // Чтение снимок не портит
+        stamp = lock.tryOptimisticRead();
+        assertEquals(42, array.get(0));
+        assertFalse(map.containsKey(1));
+        assertTrue(lock.validate(stamp));
+    }
+
+    @Test
+    void collectionTest() {
+        final var array = collections.longArray(100);
+        final var removed = collections.intList();
+        array.set(5, 5);
+        removed.add(1);
+
+        // Сборка мусора и уплотнение не трогают живые коллекции
+        removed.free();
+        garbageCollector.performGC();
+        garbageCollector.compact();
+
+        assertEquals(5, array.get(5));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(removed.handle()));
+    }
+}
@@ -0,0 +1,112 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.otus.offheap.containers.util.RandomStringGenerator.generate;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext
+class AllocatorServiceConcurrencyTest {
+
+    private static final int WRITERS = 2;
+    private static final int READERS = 6;
+    private static final int ITERATIONS = 2000;
+    private static final int LIVE_OBJECTS = 64;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void concurrentReadWriteTest() throws Exception {
+        // Имя объекта -> строка, которая в нем записана
+        final Map<String, String> stored = new ConcurrentHashMap<>();
+        final Queue<String> names = new ConcurrentLinkedQueue<>();
+        final var writing = new AtomicBoolean(true);
+        final var corruptedReads = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(WRITERS + READERS);
+
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            final List<Future<?>> readers = new ArrayList<>();
+
+            // Писатели постоянно добавляют объекты одного размера и удаляют самые старые,
+            // так что освободившиеся блоки сразу переиспользуются
+            for (int i = 0; i < WRITERS; i++)
+                writers.add(executor.submit(() -> {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        final var value = generate(8);
+                        final var name = allocatorService.set(StringContainer.builder()
+                                .str1(value)
+                                .str2(value)
+                                .build());
+
+                        stored.put(name, value);
+                        names.add(name);
+
+                        if (names.size() > LIVE_OBJECTS) {
+                            final var oldest = names.poll();
+
+                            if (oldest != null) {
+                                stored.remove(oldest);
+                                allocatorService.remove(oldest);
+                            }
+                        }
+                    }
+                }));
+
+            // Читатели никогда не должны увидеть чужие данные в блоке, даже если он уже переиспользован
+            for (int i = 0; i < READERS; i++)
+                readers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        final var name = names.peek();
+                        final var expected = name == null ? null : stored.get(name);
+
+                        if (expected == null)
+                            continue;
+
+                        try {
+                            final var container = (StringContainer) allocatorService.get(name).get(0);
+
+                            if (!expected.equals(container.getStr1()) || !expected.equals(container.getStr2()))
+                                corruptedReads.incrementAndGet();
+                        } catch (ObjectNotFoundException ignored) {
+                            // Объект успели удалить, это нормально
+                        }
+                    }
+                }));
+
+            for (Future<?> writer : writers)
+                writer.get();
+
+            writing.set(false);
+
+            for (Future<?> reader : readers)
+                reader.get();
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, corruptedReads.get());
+    }
+}
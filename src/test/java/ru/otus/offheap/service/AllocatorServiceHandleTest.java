@@ -0,0 +1,51 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext
+class AllocatorServiceHandleTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void handleLifecycleTest() {
+        final var parent = generateStringContainer();
+        final var child = generateStringContainer();
+
+        final var parentHandle = allocatorService.put(parent);
+        final var childHandle = allocatorService.put(child);
+
+        allocatorService.link(parentHandle, childHandle);
+        assertEquals(List.of(parent, child), allocatorService.get(parentHandle));
+
+        // Хэндл объекта, сохраненного по имени, указывает на тот же объект
+        final var named = generateStringContainer();
+        final var name = allocatorService.set(named);
+        assertEquals(allocatorService.get(name), allocatorService.get(allocatorService.handle(name)));
+
+        // После удаления слот переиспользуется, но старый хэндл считается устаревшим
+        allocatorService.free(childHandle);
+        assertEquals(List.of(parent), allocatorService.get(parentHandle));
+
+        final var newHandle = allocatorService.put(child);
+        assertNotEquals(childHandle, newHandle);
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(childHandle));
+        assertEquals(List.of(child), allocatorService.get(newHandle));
+    }
+}
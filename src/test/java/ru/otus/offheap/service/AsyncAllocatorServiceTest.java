@@ -0,0 +1,126 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.async-batch-size=64")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class AsyncAllocatorServiceTest {
+
+    private static final int REQUESTS = 2000;
+    private static final int CLIENTS = 16;
+
+    @Autowired
+    private AsyncAllocatorService asyncAllocatorService;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void pipelinedSetTest() {
+        final var objects = IntStream.range(0, REQUESTS)
+                .mapToObj(i -> StringContainer.builder().str1("async").str2(Integer.toString(i)).build())
+                .toList();
+
+        // Запросы одного отправителя складываются в очередь и сохраняются пакетами
+        final var futures = objects.stream().map(asyncAllocatorService::set).toList();
+        final var names = futures.stream().map(CompletableFuture::join).toList();
+
+        assertEquals(REQUESTS, new HashSet<>(names).size());
+
+        final var reads = names.stream().map(asyncAllocatorService::get).toList();
+
+        for (int i = 0; i < REQUESTS; i++)
+            assertEquals(List.of(objects.get(i)), reads.get(i).join());
+    }
+
+    @Test
+    void clientThroughputTest() throws Exception {
+        // Прогрев обоих путей
+        storeFromClients(obj -> CompletableFuture.completedFuture(allocatorService.set(obj)));
+        storeFromClients(asyncAllocatorService::set);
+
+        // Те же клиенты сохраняют объекты сначала по одному синхронно, затем через пакетирующий фасад
+        var start = System.nanoTime();
+        final var syncNames = storeFromClients(obj -> CompletableFuture.completedFuture(allocatorService.set(obj)));
+        final var syncNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final var asyncNames = storeFromClients(asyncAllocatorService::set);
+        final var asyncNanos = System.nanoTime() - start;
+
+        System.out.println(format("%d clients: sync [%d] ns, async [%d] ns per object",
+                CLIENTS, syncNanos / REQUESTS, asyncNanos / REQUESTS));
+
+        assertEquals(REQUESTS, new HashSet<>(syncNames).size());
+        assertEquals(REQUESTS, new HashSet<>(asyncNames).size());
+    }
+
+    @Test
+    void failedObjectTest() {
+        final var unserializable = new ArrayList<>(List.of(new Object()));
+
+        final var good = asyncAllocatorService.set(1);
+        final var bad = asyncAllocatorService.set(unserializable);
+        final var alsoGood = asyncAllocatorService.set(2);
+
+        // Ошибка одного объекта не влияет на остальные запросы пакета
+        assertThrows(CompletionException.class, bad::join);
+        assertEquals(List.of(1), asyncAllocatorService.get(good.join()).join());
+        assertEquals(List.of(2), asyncAllocatorService.get(alsoGood.join()).join());
+    }
+
+    /**
+     * Splits {@link #REQUESTS} objects between {@link #CLIENTS} threads and waits for all names.
+     */
+    private List<String> storeFromClients(Function<StringContainer, CompletableFuture<String>> set) throws Exception {
+        final var clients = Executors.newFixedThreadPool(CLIENTS);
+        final var futures = new ConcurrentLinkedQueue<CompletableFuture<String>>();
+
+        try {
+            final var submitted = new ArrayList<Future<?>>();
+
+            for (int client = 0; client < CLIENTS; client++) {
+                final var first = client * REQUESTS / CLIENTS;
+                final var last = (client + 1) * REQUESTS / CLIENTS;
+
+                submitted.add(clients.submit(() -> {
+                    for (int i = first; i < last; i++) {
+                        final var obj = StringContainer.builder().str1("client").str2(Integer.toString(i)).build();
+
+                        futures.add(set.apply(obj));
+                    }
+                }));
+            }
+
+            for (Future<?> client : submitted)
+                client.get();
+        } finally {
+            clients.shutdown();
+        }
+
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+}
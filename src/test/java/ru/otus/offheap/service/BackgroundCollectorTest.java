@@ -0,0 +1,57 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.background-gc-enabled=true",
+        "offheap.allocator.background-gc-interval=10ms",
+        "offheap.allocator.gc-free-ratio=1"
+})
+@EnableAutoConfiguration
+@DirtiesContext
+class BackgroundCollectorTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private BackgroundCollector backgroundCollector;
+
+    @Test
+    void backgroundCollectionTest() throws Exception {
+        assertTrue(backgroundCollector.isRunning());
+
+        final var parent = generateStringContainer();
+        final var parentName = allocatorService.set(parent);
+        final var garbageName = allocatorService.set(generateStringContainer());
+
+        // Объект стал недостижимым, фоновый сборщик должен его собрать сам
+        allocatorService.link(parentName, garbageName);
+        allocatorService.unlink(parentName, garbageName);
+
+        final var cycles = backgroundCollector.getCompletedCycles();
+
+        for (int i = 0; i < 500 && backgroundCollector.getCompletedCycles() < cycles + 2; i++)
+            Thread.sleep(10);
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(garbageName));
+        assertEquals(List.of(parent), allocatorService.get(parentName));
+
+        backgroundCollector.stop();
+        assertFalse(backgroundCollector.isRunning());
+    }
+}
@@ -0,0 +1,144 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class BatchOperationsTest {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void setAllTest() {
+        final var objects = objects();
+        final var names = allocatorService.setAll(objects);
+
+        assertEquals(BATCH_SIZE, names.size());
+
+        // Объекты пакета лежат подряд в одной области
+        final var storage = ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+
+        for (int i = 1; i < names.size(); i++) {
+            final var previous = storage.getByName(names.get(i - 1));
+
+            assertEquals(previous.getAddress() + previous.getSize(), storage.getByName(names.get(i)).getAddress());
+        }
+
+        final var graphs = allocatorService.getAll(names);
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            assertEquals(List.of(objects.get(i)), graphs.get(i));
+    }
+
+    @Test
+    void putAllTest() {
+        final var objects = objects();
+        final var handles = allocatorService.putAll(objects);
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            assertEquals(objects.get(i), allocatorService.get(handles[i]).get(0));
+    }
+
+    @Test
+    void removeAllTest() {
+        final var names = allocatorService.setAll(objects());
+        final var removed = names.subList(0, BATCH_SIZE / 2);
+
+        // Неизвестное имя отменяет удаление всего пакета
+        final var withUnknown = new ArrayList<>(removed);
+        withUnknown.add("unknown");
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.removeAll(withUnknown));
+        assertEquals(BATCH_SIZE, allocatorService.getAll(names).size());
+
+        allocatorService.removeAll(removed);
+
+        removed.forEach(name -> assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(name)));
+        assertEquals(BATCH_SIZE / 2, allocatorService.getAll(names.subList(BATCH_SIZE / 2, BATCH_SIZE)).size());
+    }
+
+    @Test
+    void batchTimingTest() {
+        final var objects = objects();
+
+        // Первый проход прогревает оба пути, в замер он не входит
+        final var single = new Timing();
+        final var batch = new Timing();
+
+        for (int round = 0; round <= ROUNDS; round++) {
+            final var singleRound = round == 0 ? new Timing() : single;
+            final var batchRound = round == 0 ? new Timing() : batch;
+
+            var start = System.nanoTime();
+            final var singleNames = objects.stream().map(allocatorService::set).toList();
+            singleRound.write += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final var singleGraphs = singleNames.stream().map(allocatorService::get).toList();
+            singleRound.read += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            singleNames.forEach(allocatorService::remove);
+            singleRound.remove += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final var batchNames = allocatorService.setAll(objects);
+            batchRound.write += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final var batchGraphs = allocatorService.getAll(batchNames);
+            batchRound.read += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            allocatorService.removeAll(batchNames);
+            batchRound.remove += System.nanoTime() - start;
+
+            assertEquals(singleGraphs, batchGraphs);
+        }
+
+        System.out.println("one by one: " + single);
+        System.out.println("batch:      " + batch);
+    }
+
+    private static List<StringContainer> objects() {
+        return IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> StringContainer.builder().str1("batch").str2(Integer.toString(i)).build())
+                .toList();
+    }
+
+    private static class Timing {
+
+        private long write;
+        private long read;
+        private long remove;
+
+        @Override
+        public String toString() {
+            final var objects = (long) ROUNDS * BATCH_SIZE;
+
+            return format("set [%d] ns, get [%d] ns, remove [%d] ns per object",
+                    write / objects, read / objects, remove / objects);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.NotEnoughMemoryException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.arena-size=65536",
+        "offheap.allocator.max-arena-size=65536",
+        "offheap.allocator.max-capacity=65536",
+        "offheap.allocator.gc-step-budget=2"
+})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class BatchRollbackTest {
+
+    private static final int FILLER = 40;
+    private static final int BATCH_SIZE = 28;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void failedFallbackTest() {
+        final var fillers = new ArrayList<String>();
+
+        for (int i = 0; i < FILLER; i++)
+            fillers.add(allocatorService.set(new byte[1000]));
+
+        // Дыры между живыми объектами меньше объектов пакета
+        for (int i = 0; i < FILLER; i += 2)
+            allocatorService.remove(fillers.get(i));
+
+        // Идущая сборка запрещает уплотнение: пакет помещается по байтам, но ни подряд, ни по одному
+        assertFalse(garbageCollector.collectStep());
+
+        final var free = allocatorService.free();
+        final var storage = ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+        final var liveBlocks = storage.stream().filter(block -> !block.isDeleted()).count();
+
+        assertThrows(NotEnoughMemoryException.class, () -> allocatorService.setAll(batch()));
+
+        // Уже размещенные объекты пакета удалены вместе с неудачей
+        assertEquals(free, allocatorService.free());
+        assertEquals(liveBlocks, storage.stream().filter(block -> !block.isDeleted()).count());
+
+        // После сборки уплотнение собирает место, и тот же пакет сохраняется целиком
+        while (!garbageCollector.collectStep())
+            allocatorService.get(fillers.get(1));
+
+        final var names = allocatorService.setAll(batch());
+
+        assertEquals(BATCH_SIZE, names.size());
+        assertArrayEquals(batch().get(0), (byte[]) allocatorService.get(names.get(0)).get(0));
+    }
+
+    private static List<byte[]> batch() {
+        final var batch = new ArrayList<byte[]>();
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            final var bytes = new byte[1500];
+            bytes[0] = (byte) i;
+            batch.add(bytes);
+        }
+
+        return batch;
+    }
+}
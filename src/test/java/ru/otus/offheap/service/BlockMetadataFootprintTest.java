@@ -0,0 +1,97 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayList;
+
+import static java.lang.Long.toHexString;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockMetadataFootprintTest {
+
+    private static final long BASE = 1L << 20;
+    private static final int BLOCKS = 200_000;
+    private static final int BLOCK_SIZE = 64;
+    private static final int LOOKUP_EVERY = 7;
+
+    @Test
+    void heapFootprintTest() {
+        // Одинаковый набор именованных блоков в обоих хранилищах, каждый связан с предыдущим
+        final var heapResult = fill(new MemoryBlockStorageImpl());
+        final var offHeapResult = fill(new OffHeapMemoryBlockStorage());
+
+        System.out.println("heap:     " + heapResult);
+        System.out.println("off-heap: " + offHeapResult);
+
+        // Метаданные вне кучи не растут вместе с числом блоков в куче
+        assertTrue(offHeapResult.heapBytes() < heapResult.heapBytes());
+    }
+
+    private static Result fill(MemoryBlockStorage storage) {
+        final var before = usedHeap();
+
+        long insertNanos = 0;
+        MemoryBlock previous = null;
+
+        for (int i = 0; i < BLOCKS; i++) {
+            final var start = System.nanoTime();
+            final var block = storage.insertAt(block(i));
+
+            if (previous != null)
+                storage.link(previous, block);
+
+            insertNanos += System.nanoTime() - start;
+            previous = block;
+        }
+
+        final var heapBytes = Math.max(usedHeap() - before, 0);
+
+        int lookups = 0;
+        final var start = System.nanoTime();
+
+        for (int i = 0; i < BLOCKS; i += LOOKUP_EVERY) {
+            assertEquals(BASE + (long) i * BLOCK_SIZE, storage.getByName(name(i)).getAddress());
+            lookups++;
+        }
+
+        final var lookupNanos = System.nanoTime() - start;
+
+        storage.clear();
+
+        return new Result(heapBytes / BLOCKS, insertNanos / BLOCKS, lookupNanos / lookups, heapBytes);
+    }
+
+    private static MemoryBlock block(int i) {
+        return MemoryBlock.builder()
+                .size(BLOCK_SIZE)
+                .address(BASE + (long) i * BLOCK_SIZE)
+                .links(new ArrayList<>())
+                .name(name(i))
+                .fullClassName("java.lang.String")
+                .build();
+    }
+
+    private static String name(int i) {
+        return "String_" + toHexString(i);
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+
+        System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record Result(long bytesPerBlock, long insertNanos, long lookupNanos, long heapBytes) {
+
+        @Override
+        public String toString() {
+            return format("heap [%d] bytes per block, insert [%d] ns, lookup by name [%d] ns",
+                    bytesPerBlock, insertNanos, lookupNanos);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.storage=buddy")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class BuddyMemoryBlockStorageTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void linkAndCollectTest() {
+        final var first = generateStringContainer();
+        final var second = generateStringContainer();
+        final var third = generateStringContainer();
+
+        final var firstName = allocatorService.set(first);
+        final var secondName = allocatorService.set(second);
+        final var thirdName = allocatorService.set(third);
+
+        allocatorService.link(firstName, secondName);
+        allocatorService.link(secondName, thirdName);
+
+        assertEquals(List.of(first, second, third), allocatorService.get(firstName));
+
+        // Недостижимые объекты собираются, их место возвращается в свободные блоки
+        final var freeBefore = allocatorService.free();
+        allocatorService.unlink(firstName, secondName);
+        garbageCollector.performGC();
+
+        assertEquals(List.of(first), allocatorService.get(firstName));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(thirdName));
+        assertTrue(allocatorService.free() > freeBefore);
+
+        final var newName = allocatorService.set(third);
+        assertEquals(List.of(third), allocatorService.get(newName));
+    }
+
+    @Test
+    void buddyReuseTest() {
+        final var storage = (BuddyMemoryBlockStorage) ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+        final var freeBefore = allocatorService.free();
+
+        // Освобождённые подряд блоки сливаются в выровненные блоки-близнецы
+        final var names = IntStream.range(0, 16).mapToObj(i -> allocatorService.set(generateStringContainer())).toList();
+
+        allocatorService.removeAll(names);
+        assertEquals(freeBefore, allocatorService.free());
+
+        // Новый объект получает блок-близнец целиком, остаток учитывается как занятый
+        final var container = generateStringContainer();
+        final var name = allocatorService.set(container);
+        final var block = storage.getByName(name);
+        final var extent = BuddyFreeIndex.extentOf(block.getSize());
+
+        assertEquals(List.of(container), allocatorService.get(name));
+        assertEquals(0, block.getAddress() % extent);
+        assertEquals(extent - block.getSize(), storage.getSlackBytes());
+        assertEquals(freeBefore - extent, allocatorService.free());
+
+        // При удалении блок-близнец возвращается и сливается с соседями
+        allocatorService.remove(name);
+
+        assertEquals(0, storage.getSlackBytes());
+        assertEquals(freeBefore, allocatorService.free());
+    }
+}
@@ -0,0 +1,163 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.BlobContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.arena-size=8192",
+        "offheap.allocator.max-capacity=8192"
+})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class CompactionTest {
+
+    private static final int OBJECTS = 7;
+    private static final int WRITERS = 2;
+    private static final int ITERATIONS = 500;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void compactTest() {
+        final var names = fillWithHoles();
+        final var storage = ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+
+        // Удаленные блоки разбросаны между живыми
+        assertTrue(storage.fragmentation() > 0);
+
+        garbageCollector.compact();
+
+        // После уплотнения свободное место собрано в один кусок, живые объекты не повреждены
+        assertEquals(0, storage.fragmentation());
+        assertLive(names);
+    }
+
+    @Test
+    void compactOnAllocationTest() {
+        final var names = fillWithHoles();
+
+        // Свободного места хватает только суммарно, аллокатор уплотняет арену сам
+        final var big = blob(600, 42);
+        final var bigName = allocatorService.set(big);
+
+        assertArrayEquals(big.getArr(), ((BlobContainer) allocatorService.get(bigName).get(0)).getArr());
+        assertLive(names);
+    }
+
+    @Test
+    void compactLinkedTest() {
+        final var names = fillWithHoles();
+        final var parent = names.get(OBJECTS - 1);
+        final var child = names.get(2);
+        final var grandchild = names.get(4);
+
+        allocatorService.link(parent, child);
+        allocatorService.link(child, grandchild);
+
+        garbageCollector.compact();
+
+        // Перемещенные блоки сохранили ссылки друг на друга
+        assertEquals(3, allocatorService.get(parent).size());
+
+        // Удаление перемещенного блока убирает его из ссылок перемещенного родителя
+        allocatorService.remove(child);
+
+        assertEquals(1, allocatorService.get(parent).size());
+        assertEquals(1, allocatorService.get(grandchild).size());
+    }
+
+    @Test
+    void concurrentSetAndCompactTest() throws Exception {
+        final var writing = new AtomicBoolean(true);
+        final var executor = Executors.newFixedThreadPool(WRITERS + 1);
+
+        try {
+            final var writers = IntStream.range(0, WRITERS)
+                    .mapToObj(writer -> executor.submit(() -> {
+                        String previous = null;
+
+                        // Каждый объект проверяется сразу после записи и еще раз перед удалением
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            final var seed = writer * ITERATIONS + i;
+                            final var name = allocatorService.set(blob(200, seed));
+
+                            assertArrayEquals(blob(200, seed).getArr(),
+                                    ((BlobContainer) allocatorService.get(name).get(0)).getArr());
+
+                            if (previous != null) {
+                                assertArrayEquals(blob(200, seed - 1).getArr(),
+                                        ((BlobContainer) allocatorService.get(previous).get(0)).getArr());
+                                allocatorService.remove(previous);
+                            }
+
+                            previous = name;
+                        }
+
+                        return null;
+                    }))
+                    .toList();
+
+            // Уплотнение идет параллельно с записью и сдвигает только что выделенные блоки
+            final var compactor = executor.submit(() -> {
+                while (writing.get())
+                    garbageCollector.compact();
+            });
+
+            for (Future<?> writer : writers)
+                writer.get();
+
+            writing.set(false);
+            compactor.get();
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> fillWithHoles() {
+        final var names = new ArrayList<String>();
+
+        for (int i = 0; i < OBJECTS; i++)
+            names.add(allocatorService.set(blob(200, i)));
+
+        for (int i = 1; i < OBJECTS; i += 2)
+            allocatorService.remove(names.get(i));
+
+        return names;
+    }
+
+    private void assertLive(List<String> names) {
+        for (int i = 0; i < OBJECTS; i += 2)
+            assertArrayEquals(blob(200, i).getArr(), ((BlobContainer) allocatorService.get(names.get(i)).get(0)).getArr());
+    }
+
+    private static BlobContainer blob(int length, int seed) {
+        final var arr = new int[length];
+
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = seed * arr.length + i;
+
+        return BlobContainer.builder().arr(arr).build();
+    }
+}
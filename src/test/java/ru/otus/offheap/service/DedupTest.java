@@ -0,0 +1,141 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+import ru.otus.offheap.io.OffHeapOutputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.deduplication=true")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class DedupTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Autowired
+    private DedupIndex dedupIndex;
+
+    @Test
+    void skewedDuplicatesTest() {
+        // 90 копий одного объекта и 10 уникальных
+        final var objects = IntStream.range(0, 100)
+                .mapToObj(i -> config(i < 90 ? "shared" : "unique " + i))
+                .toList();
+        final var names = objects.stream().map(allocatorService::set).toList();
+
+        assertEquals(names.size(), new HashSet<>(names).size());
+
+        for (int i = 0; i < objects.size(); i++)
+            assertEquals(List.of(objects.get(i)), allocatorService.get(names.get(i)));
+
+        final var sharedSize = storage().getByHandle(allocatorService.handle(names.get(0))).getSize();
+
+        assertEquals(11, liveBlocks());
+        assertEquals(89 * sharedSize, dedupIndex.getSavedBytes());
+    }
+
+    @Test
+    void sharedOwnershipTest() {
+        final var first = allocatorService.set(config("shared"));
+        final var second = allocatorService.set(config("shared"));
+        final var third = allocatorService.set(config("shared"));
+        final var parent = allocatorService.set(config("parent"));
+
+        allocatorService.link(parent, second);
+        allocatorService.remove(first);
+        allocatorService.remove(parent);
+
+        // Общий блок переживает удаление родителя, сборку мусора и уплотнение, пока у него есть имена
+        garbageCollector.performGC();
+        garbageCollector.compact();
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(first));
+        assertEquals(List.of(config("shared")), allocatorService.get(second));
+        assertEquals(List.of(config("shared")), allocatorService.get(third));
+
+        allocatorService.removeAll(List.of(second, third));
+
+        assertEquals(0, liveBlocks());
+        assertEquals(0, dedupIndex.getSavedBytes());
+    }
+
+    @Test
+    void freeSharedHandleTest() {
+        final var first = allocatorService.set(config("shared"));
+        final var second = allocatorService.set(config("shared"));
+        final var unnamed = allocatorService.put(config("unnamed"));
+
+        // Дескриптор общего блока не говорит, какое имя удаляется, поэтому освобождение по нему запрещено
+        assertThrows(IllegalArgumentException.class, () -> allocatorService.free(allocatorService.handle(first)));
+        assertEquals(List.of(config("shared")), allocatorService.get(first));
+        assertEquals(List.of(config("shared")), allocatorService.get(second));
+
+        // Объект без имени не участвует в дедупликации и освобождается по дескриптору
+        allocatorService.free(unnamed);
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.free(unnamed));
+
+        // По имени общий блок освобождается вместе с последним именем
+        allocatorService.remove(first);
+        allocatorService.remove(second);
+
+        assertEquals(0, liveBlocks());
+    }
+
+    @Test
+    void wrongPrefixTest() {
+        final var first = allocatorService.set(config("shared"));
+        final var second = allocatorService.set(config("shared"));
+        final var forged = "Bogus" + first.substring(first.lastIndexOf('_'));
+
+        // Имя с чужим префиксом и тем же номером не находит и не освобождает общий объект
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(forged));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.remove(forged));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.handle(forged));
+
+        allocatorService.remove(second);
+
+        assertEquals(List.of(config("shared")), allocatorService.get(first));
+        assertEquals(1, liveBlocks());
+    }
+
+    @Test
+    void xxHashTest() {
+        try (OffHeapOutputStream out = new OffHeapOutputStream(16)) {
+            assertEquals(0xEF46DB3751D8E999L, out.hash());
+
+            out.writeBytes("abc".getBytes(StandardCharsets.US_ASCII));
+
+            assertEquals(0x44BC2CF5AD770999L, out.hash());
+        }
+    }
+
+    private static StringContainer config(String value) {
+        return StringContainer.builder().str1("config").str2(value).build();
+    }
+
+    private long liveBlocks() {
+        return storage().stream().filter(block -> !block.isDeleted() && !block.isRoot()).count();
+    }
+
+    private MemoryBlockStorage storage() {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.gc-parallelism=4")
+@EnableAutoConfiguration
+@DirtiesContext
+class DeepGraphTest {
+
+    private static final int DEPTH = 10_000;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void deepCyclicChainTest() {
+        final var handles = new long[DEPTH];
+        final List<Serializable> expected = new ArrayList<>();
+
+        // Цепочка глубиной 10000, последний элемент ссылается на второй
+        for (int i = 0; i < DEPTH; i++) {
+            handles[i] = allocatorService.put(i);
+            expected.add(i);
+
+            if (i > 0)
+                allocatorService.link(handles[i - 1], handles[i]);
+        }
+
+        allocatorService.link(handles[DEPTH - 1], handles[1]);
+
+        // Каждый объект читается ровно один раз, несмотря на цикл
+        assertEquals(expected, allocatorService.get(handles[0]));
+
+        // Вся цепочка достижима, параллельная разметка ничего не собирает
+        garbageCollector.performGC();
+        assertEquals(expected, allocatorService.get(handles[0]));
+
+        // Отвязанный цикл недостижим и собирается целиком
+        allocatorService.unlink(handles[0], handles[1]);
+        garbageCollector.performGC();
+
+        assertEquals(List.of(0), allocatorService.get(handles[0]));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(handles[DEPTH / 2]));
+    }
+}
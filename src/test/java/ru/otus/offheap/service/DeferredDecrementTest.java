@@ -0,0 +1,57 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.reference-counting=true",
+        "offheap.allocator.ref-count-batch=64"
+})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class DeferredDecrementTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private ReferenceCounter referenceCounter;
+
+    @Test
+    void removeReleasedParentTest() {
+        final var grandParent = allocatorService.set("grand parent");
+        final var removed = allocatorService.set("removed");
+        final var live = allocatorService.set("live");
+        final var shared = allocatorService.set("shared");
+
+        allocatorService.link(grandParent, removed);
+        allocatorService.link(removed, shared);
+        allocatorService.link(live, shared);
+
+        // Отвязка только поставлена в очередь, удаляемый родитель освобождается уже при ее применении
+        allocatorService.unlink(grandParent, removed);
+        allocatorService.remove(removed);
+        referenceCounter.flush();
+
+        // Общий потомок теряет одну ссылку, а не две, и остается доступен живому родителю
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(removed));
+        assertEquals(1, referenceCounter.count(storage().getByName(shared)));
+        assertEquals(List.of("live", "shared"), allocatorService.get(live));
+        assertEquals(List.of("shared"), allocatorService.get(shared));
+    }
+
+    private MemoryBlockStorage storage() {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+    }
+}
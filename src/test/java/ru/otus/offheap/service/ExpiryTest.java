@@ -0,0 +1,88 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.expiry-tick=1ms")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class ExpiryTest {
+
+    private static final Duration SHORT_TTL = Duration.ofMillis(20);
+    private static final Duration LONG_TTL = Duration.ofMillis(300);
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private ExpiryWheel expiryWheel;
+
+    @Test
+    void expireTest() throws InterruptedException {
+        final var shortLived = IntStream.range(0, 100).mapToObj(i -> allocatorService.set(i, SHORT_TTL)).toList();
+        final var longLived = IntStream.range(0, 10).mapToObj(i -> allocatorService.set(i, LONG_TTL)).toList();
+        final var permanent = allocatorService.set("permanent");
+        final var removed = allocatorService.set("removed", SHORT_TTL);
+
+        allocatorService.remove(removed);
+
+        Thread.sleep(60);
+
+        // Удаляются только объекты с истекшим сроком, уже удаленный объект не учитывается
+        assertEquals(shortLived.size(), allocatorService.expire());
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(shortLived.get(0)));
+        assertEquals(List.of(0), allocatorService.get(longLived.get(0)));
+
+        // Длинный срок лежит на верхнем уровне колеса и спускается на нижний по мере хода времени
+        Thread.sleep(LONG_TTL.toMillis());
+
+        assertEquals(longLived.size(), allocatorService.expire());
+        assertEquals(0, expiryWheel.scheduled());
+        assertEquals(List.of("permanent"), allocatorService.get(permanent));
+    }
+
+    @Test
+    void lazyExpiryTest() throws InterruptedException {
+        final var name = allocatorService.set("session", SHORT_TTL);
+        final var handle = allocatorService.put("token", SHORT_TTL);
+
+        assertEquals(List.of("session"), allocatorService.get(name));
+
+        Thread.sleep(40);
+
+        // Объект с истекшим сроком удаляется при чтении, не дожидаясь прохода колеса
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(name));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(handle));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(name));
+        assertEquals(0, allocatorService.expire());
+    }
+
+    @Test
+    void lazyExpiryGetAllTest() throws InterruptedException {
+        final var session = allocatorService.set("session", SHORT_TTL);
+        final var permanent = allocatorService.set("permanent");
+
+        assertEquals(List.of(List.of("session"), List.of("permanent")),
+                allocatorService.getAll(List.of(session, permanent)));
+
+        Thread.sleep(40);
+
+        // Пакетное чтение проверяет срок каждого имени так же, как одиночное
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.getAll(List.of(permanent, session)));
+        assertEquals(List.of(List.of("permanent")), allocatorService.getAll(List.of(permanent)));
+        assertEquals(0, expiryWheel.scheduled());
+    }
+}
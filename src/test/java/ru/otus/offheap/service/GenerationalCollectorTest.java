@@ -0,0 +1,150 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.arena.ArenaManager;
+import ru.otus.offheap.containers.containers.BlobContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.nursery-size=65536")
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class GenerationalCollectorTest {
+
+    private static final int WRITERS = 2;
+    private static final int ITERATIONS = 1000;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Autowired
+    private ArenaManager arenaManager;
+
+    @Test
+    void youngCollectionTest() {
+        final var parent = allocatorService.set(blob(0));
+        final var children = new ArrayList<String>();
+
+        for (int i = 1; i <= 5; i++) {
+            final var child = allocatorService.set(blob(i));
+            allocatorService.link(parent, child);
+            children.add(child);
+        }
+
+        // Отвязанный объект больше никому не нужен
+        final var garbage = allocatorService.set(blob(100));
+        allocatorService.link(parent, garbage);
+        allocatorService.unlink(parent, garbage);
+
+        assertTrue(arenaManager.nurseryOccupancy() > 0);
+        assertTrue(arenaManager.isYoung(storage().getByName(parent).getAddress()));
+
+        garbageCollector.collectYoung();
+
+        // Выжившие перенесены в старое поколение, питомник пуст
+        assertEquals(0, arenaManager.nurseryOccupancy());
+        assertFalse(arenaManager.isYoung(storage().getByName(parent).getAddress()));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(garbage));
+
+        final var graph = allocatorService.get(parent);
+
+        assertEquals(6, graph.size());
+
+        for (int i = 0; i < graph.size(); i++)
+            assertArrayEquals(blob(i).getArr(), ((BlobContainer) graph.get(i)).getArr());
+
+        assertArrayEquals(blob(3).getArr(), ((BlobContainer) allocatorService.get(children.get(2)).get(0)).getArr());
+    }
+
+    @Test
+    void rememberedSetTest() {
+        final var parent = allocatorService.set(blob(0));
+
+        garbageCollector.collectYoung();
+
+        // Молодой объект доступен только по ссылке из старого поколения
+        final var child = allocatorService.set(blob(1));
+        allocatorService.link(parent, child);
+
+        garbageCollector.collectYoung();
+
+        assertEquals(2, allocatorService.get(parent).size());
+        assertArrayEquals(blob(1).getArr(), ((BlobContainer) allocatorService.get(child).get(0)).getArr());
+
+        // После удаления старого родителя ребенок становится мусором для полной сборки
+        allocatorService.remove(parent);
+        garbageCollector.performGC();
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(child));
+    }
+
+    @Test
+    void concurrentSetAndCollectYoungTest() throws Exception {
+        final var collecting = new AtomicBoolean(true);
+        final var executor = Executors.newFixedThreadPool(WRITERS + 1);
+
+        try {
+            // Молодые сборки переносят только что выделенные блоки, пока писатели сохраняют объекты
+            final var collector = executor.submit(() -> {
+                while (collecting.get())
+                    garbageCollector.collectYoung();
+            });
+
+            final var writers = IntStream.range(0, WRITERS)
+                    .mapToObj(writer -> executor.submit(() -> IntStream.range(0, ITERATIONS)
+                            .mapToObj(i -> allocatorService.set(blob(writer * ITERATIONS + i)))
+                            .toList()))
+                    .toList();
+            final var names = new ArrayList<List<String>>();
+
+            for (Future<List<String>> writer : writers)
+                names.add(writer.get());
+
+            collecting.set(false);
+            collector.get();
+
+            // Ни один объект не потерял содержимое при переносе
+            for (int writer = 0; writer < WRITERS; writer++)
+                for (int i = 0; i < ITERATIONS; i++)
+                    assertArrayEquals(blob(writer * ITERATIONS + i).getArr(),
+                            ((BlobContainer) allocatorService.get(names.get(writer).get(i)).get(0)).getArr());
+        } finally {
+            collecting.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    private MemoryBlockStorage storage() {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+    }
+
+    private static BlobContainer blob(int seed) {
+        final var arr = new int[64];
+
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = seed * arr.length + i;
+
+        return BlobContainer.builder().arr(arr).build();
+    }
+}
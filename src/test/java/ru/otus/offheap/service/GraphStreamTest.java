@@ -0,0 +1,81 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.model.TraversalOptions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class)
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class GraphStreamTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Test
+    void streamTest() {
+        final var parent = prepareGraph();
+
+        // Ленивый обход возвращает те же объекты в том же порядке, что и get
+        assertEquals(allocatorService.get(parent), allocatorService.stream(parent).toList());
+
+        assertEquals(List.of("a", "b"), allocatorService.stream(parent, TraversalOptions.directChildren()).toList());
+
+        assertEquals(List.of("root", "a", "b"),
+                allocatorService.stream(parent, TraversalOptions.builder().maxDepth(1).build()).toList());
+
+        assertEquals(List.of(1, 2, 3), allocatorService.stream(parent, TraversalOptions.builder()
+                .fullClassName(Integer.class.getCanonicalName())
+                .build()).toList());
+    }
+
+    @Test
+    void lazyIteratorTest() {
+        final var parent = prepareGraph();
+        final var iterator = allocatorService.iterator(parent, TraversalOptions.directChildren());
+        final var result = new ArrayList<Serializable>();
+
+        result.add(iterator.next());
+
+        // Объект, удаленный до того, как обход до него дошел, пропускается
+        allocatorService.remove(childName(parent, 1));
+        iterator.forEachRemaining(result::add);
+
+        assertEquals(List.of("a"), result);
+        assertFalse(iterator.hasNext());
+    }
+
+    private String prepareGraph() {
+        final var parent = allocatorService.set("root");
+        final var first = allocatorService.set("a");
+        final var second = allocatorService.set("b");
+
+        allocatorService.link(parent, first);
+        allocatorService.link(parent, second);
+
+        for (int i = 1; i <= 3; i++) {
+            final var leaf = allocatorService.set(i);
+            allocatorService.link(i < 3 ? first : second, leaf);
+        }
+
+        return parent;
+    }
+
+    private String childName(String parent, int index) {
+        final var storage = ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+
+        return storage.getByName(parent).getLinks().get(index).getName();
+    }
+}
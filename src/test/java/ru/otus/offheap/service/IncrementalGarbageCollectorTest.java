@@ -0,0 +1,114 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.gc-step-budget=2")
+@EnableAutoConfiguration
+@DirtiesContext
+class IncrementalGarbageCollectorTest {
+
+    private static final int CHAIN_LENGTH = 20;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void interleavedCollectionTest() {
+        // Цепочка из 20 объектов, достижимая от корня через первый
+        final List<StringContainer> objects = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            objects.add(generateStringContainer());
+            names.add(allocatorService.set(objects.get(i)));
+
+            if (i > 0)
+                allocatorService.link(names.get(i - 1), names.get(i));
+        }
+
+        // Мусор: объект отвязан и от корня, и от родителя
+        final var garbage = allocatorService.set(generateStringContainer());
+        allocatorService.link(names.get(0), garbage);
+        allocatorService.unlink(names.get(0), garbage);
+
+        // Сборка идет маленькими шагами, между ними работает аллокатор
+        assertFalse(garbageCollector.collectStep());
+
+        final var newObject = generateStringContainer();
+        final var newName = allocatorService.set(newObject);
+
+        // Хвост цепочки переносится под новый объект посреди сборки
+        allocatorService.link(newName, names.get(CHAIN_LENGTH / 2));
+        allocatorService.unlink(names.get(CHAIN_LENGTH / 2 - 1), names.get(CHAIN_LENGTH / 2));
+
+        while (!garbageCollector.collectStep())
+            allocatorService.get(names.get(0));
+
+        // Ни один достижимый объект не собран, мусор собран
+        assertEquals(new ArrayList<Serializable>(objects.subList(0, CHAIN_LENGTH / 2)), allocatorService.get(names.get(0)));
+
+        final List<Serializable> movedChain = new ArrayList<>();
+        movedChain.add(newObject);
+        movedChain.addAll(objects.subList(CHAIN_LENGTH / 2, CHAIN_LENGTH));
+        assertEquals(movedChain, allocatorService.get(newName));
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(garbage));
+
+        final var latencies = ((AllocatorServiceImpl) allocatorService).getCollectionLatencies();
+        assertTrue(latencies.count() > 0);
+        System.out.println(latencies);
+    }
+
+    @Test
+    void rootLinksShadedByStepsTest() {
+        // Объекты, достижимые только от корня: их ссылки помечаются по частям
+        final List<StringContainer> objects = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            objects.add(generateStringContainer());
+            names.add(allocatorService.set(objects.get(i)));
+        }
+
+        assertFalse(garbageCollector.collectStep());
+
+        // Посреди обхода корня первый объект уходит под последний, а корень получает новую ссылку
+        allocatorService.link(names.get(CHAIN_LENGTH - 1), names.get(0));
+        allocatorService.remove(names.get(1));
+
+        final var newObject = generateStringContainer();
+        final var newName = allocatorService.set(newObject);
+
+        while (!garbageCollector.collectStep())
+            allocatorService.get(names.get(CHAIN_LENGTH - 1));
+
+        // Все достижимые объекты пережили сборку
+        for (int i = 2; i < CHAIN_LENGTH - 1; i++)
+            assertEquals(List.of(objects.get(i)), allocatorService.get(names.get(i)));
+
+        assertEquals(List.of(objects.get(CHAIN_LENGTH - 1), objects.get(0)),
+                allocatorService.get(names.get(CHAIN_LENGTH - 1)));
+        assertEquals(List.of(newObject), allocatorService.get(newName));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(names.get(1)));
+    }
+}
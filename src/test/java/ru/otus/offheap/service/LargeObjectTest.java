@@ -0,0 +1,121 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.codec.RawCodec;
+import ru.otus.offheap.exception.NotEnoughMemoryException;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.arena-size=4096",
+        "offheap.allocator.max-arena-size=4096",
+        "offheap.allocator.max-capacity=16384",
+        "offheap.allocator.large-object-threshold=3500",
+        "offheap.allocator.large-object-chunk-size=1024"})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class LargeObjectTest {
+
+    private static final int FILLER_SIZE = 3000;
+    private static final int LARGE_SIZE = 9000;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    private String kept;
+
+    @BeforeEach
+    void fragment() {
+        allocatorService.registerCodec(byte[].class, new RawCodec());
+
+        // Каждый заполнитель занимает свою арену, после удаления трёх из них свободно больше 9000 байт,
+        // но ни одного непрерывного участка такого размера нет
+        final var fillers = List.of(
+                allocatorService.set(new byte[FILLER_SIZE]),
+                allocatorService.set(new byte[FILLER_SIZE]),
+                allocatorService.set(new byte[FILLER_SIZE]),
+                allocatorService.set(new byte[FILLER_SIZE]));
+
+        allocatorService.removeAll(fillers.subList(0, 3));
+        kept = fillers.get(3);
+    }
+
+    @Test
+    void fragmentedStoreTest() {
+        final var large = payload();
+
+        assertThrows(NotEnoughMemoryException.class, () -> allocatorService.reserve(LARGE_SIZE));
+
+        final var name = allocatorService.set(large);
+        final var objects = allocatorService.get(name);
+
+        assertEquals(1, objects.size());
+        assertArrayEquals(large, (byte[]) objects.get(0));
+        assertEquals(FILLER_SIZE, ((byte[]) allocatorService.get(kept).get(0)).length);
+    }
+
+    @Test
+    void openStreamTest() throws IOException {
+        final var large = payload();
+        final var name = allocatorService.set(large);
+
+        try (var in = allocatorService.openStream(name)) {
+            assertArrayEquals(large, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void removeTest() {
+        final var free = allocatorService.free();
+        final var name = allocatorService.set(payload());
+
+        allocatorService.remove(name);
+
+        // Вместе с головой освобождаются все фрагменты
+        assertEquals(free, allocatorService.free());
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(name));
+
+        final var again = allocatorService.set(payload());
+
+        assertArrayEquals(payload(), (byte[]) allocatorService.get(again).get(0));
+    }
+
+    @Test
+    void graphTest() {
+        final var large = payload();
+        final var parent = allocatorService.set("parent");
+        final var child = allocatorService.set(large);
+
+        allocatorService.link(parent, child);
+
+        // Фрагменты не входят в граф как отдельные объекты
+        final var objects = allocatorService.get(parent);
+
+        assertEquals(2, objects.size());
+        assertEquals("parent", objects.get(0));
+        assertArrayEquals(large, (byte[]) objects.get(1));
+        assertEquals(2, allocatorService.stream(parent).count());
+    }
+
+    private static byte[] payload() {
+        final var bytes = new byte[LARGE_SIZE];
+
+        new Random(42).nextBytes(bytes);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.otus.offheap.common.CommonTestMehods.generateStringContainer;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = "offheap.allocator.storage=offheap")
+@EnableAutoConfiguration
+class OffHeapMemoryBlockStorageTest {
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void linkAndCollectTest() {
+        final var first = generateStringContainer();
+        final var second = generateStringContainer();
+        final var third = generateStringContainer();
+
+        // Сохранили цепочку из трех объектов
+        final var firstName = allocatorService.set(first);
+        final var secondName = allocatorService.set(second);
+        final var thirdName = allocatorService.set(third);
+
+        allocatorService.link(firstName, secondName);
+        allocatorService.link(secondName, thirdName);
+
+        // По имени первого объекта получаем всю цепочку
+        assertEquals(List.of(first, second, third), allocatorService.get(firstName));
+
+        // Отвязали второй объект: он и третий становятся недостижимыми и собираются сборщиком
+        final var freeBefore = allocatorService.free();
+        allocatorService.unlink(firstName, secondName);
+        garbageCollector.performGC();
+
+        assertEquals(List.of(first), allocatorService.get(firstName));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(thirdName));
+        assertTrue(allocatorService.free() > freeBefore);
+
+        // Освободившееся место переиспользуется новым объектом
+        final var newName = allocatorService.set(third);
+        assertEquals(List.of(third), allocatorService.get(newName));
+    }
+
+    @Test
+    void removeLinkedTest() {
+        final var first = generateStringContainer();
+        final var second = generateStringContainer();
+        final var child = generateStringContainer();
+
+        // Один объект связан с двумя родителями
+        final var firstName = allocatorService.set(first);
+        final var secondName = allocatorService.set(second);
+        final var childName = allocatorService.set(child);
+
+        allocatorService.link(firstName, childName);
+        allocatorService.link(secondName, childName);
+
+        assertEquals(List.of(first, child), allocatorService.get(firstName));
+        assertEquals(List.of(second, child), allocatorService.get(secondName));
+
+        // Удаленный объект пропадает из ссылок обоих родителей
+        allocatorService.remove(childName);
+
+        assertEquals(List.of(first), allocatorService.get(firstName));
+        assertEquals(List.of(second), allocatorService.get(secondName));
+
+        // Новый объект в освободившейся записи не наследует чужие ссылки
+        final var newObject = generateStringContainer();
+        final var newName = allocatorService.set(newObject);
+
+        assertEquals(List.of(first), allocatorService.get(firstName));
+        assertEquals(List.of(second), allocatorService.get(secondName));
+        assertEquals(List.of(newObject), allocatorService.get(newName));
+    }
+}
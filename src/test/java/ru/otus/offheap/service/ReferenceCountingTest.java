@@ -0,0 +1,109 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.StringContainer;
+import ru.otus.offheap.exception.ObjectNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.reference-counting=true",
+        "offheap.allocator.ref-count-batch=1"
+})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class ReferenceCountingTest {
+
+    private static final int DEPTH = 100_000;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private ReferenceCounter referenceCounter;
+
+    @Test
+    void cascadeTest() {
+        final var parent = allocatorService.set(string("parent", "0"));
+        final var child = allocatorService.set(string("child", "1"));
+        final var grandChild = allocatorService.set(string("grand child", "2"));
+        final var shared = allocatorService.set(string("shared", "3"));
+
+        allocatorService.link(parent, child);
+        allocatorService.link(child, grandChild);
+        allocatorService.link(child, shared);
+        allocatorService.link(parent, shared);
+
+        assertEquals(2, referenceCounter.count(storage().getByName(shared)));
+
+        // Отвязанный от родителя объект освобождается сразу вместе со своим поддеревом
+        allocatorService.unlink(parent, child);
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(child));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(grandChild));
+        assertEquals(1, referenceCounter.count(storage().getByName(shared)));
+        assertEquals(2, allocatorService.get(parent).size());
+
+        allocatorService.remove(parent);
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(shared));
+        assertEquals(3, referenceCounter.getReclaimedBlocks());
+    }
+
+    @Test
+    void cycleTest() {
+        final var first = allocatorService.set(string("first", "0"));
+        final var second = allocatorService.set(string("second", "1"));
+
+        allocatorService.link(first, second);
+        allocatorService.link(second, first);
+
+        // Цикл недоступен из корня, но счетчики ссылок не обнулились
+        assertEquals(2, allocatorService.get(first).size());
+        assertEquals(0, referenceCounter.getReclaimedBlocks());
+
+        referenceCounter.collectCycles();
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(first));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(second));
+        assertEquals(2, referenceCounter.getReclaimedBlocks());
+    }
+
+    @Test
+    void deepChainTest() {
+        final var handles = new long[DEPTH];
+
+        // Цепочка глубиной 100000, каждый элемент держит только предыдущий
+        for (int i = 0; i < DEPTH; i++) {
+            handles[i] = allocatorService.put(i);
+
+            if (i > 0)
+                allocatorService.link(handles[i - 1], handles[i]);
+        }
+
+        assertEquals(1, referenceCounter.count(storage().getByHandle(handles[DEPTH - 1])));
+
+        // Удаление головы освобождает всю цепочку без переполнения стека, блоки-кандидаты циклов добирает проход по ним
+        allocatorService.free(handles[0]);
+        referenceCounter.collectCycles();
+
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(handles[1]));
+        assertThrows(ObjectNotFoundException.class, () -> allocatorService.get(handles[DEPTH - 1]));
+        assertEquals(DEPTH - 1, referenceCounter.getReclaimedBlocks());
+    }
+
+    private static StringContainer string(String str1, String str2) {
+        return StringContainer.builder().str1(str1).str2(str2).build();
+    }
+
+    private MemoryBlockStorage storage() {
+        return ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+    }
+}
@@ -0,0 +1,120 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.offheap.model.MemoryBlock;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageFragmentationTest {
+
+    private static final long BASE = 1L << 20;
+    private static final long REGION = 1L << 20;
+    private static final int OPERATIONS = 20_000;
+    private static final int SAMPLE_EVERY = 100;
+
+    @Test
+    void firstFitAndBuddyTest() {
+        final var firstFit = new MemoryBlockStorageImpl();
+        final var buddy = new BuddyMemoryBlockStorage();
+
+        // Одинаковая нагрузка на обе стратегии: объекты от 16 байт до 1 КБ, каждый связан со случайным живым
+        final var firstFitResult = churn(firstFit);
+        final var buddyResult = churn(buddy);
+
+        System.out.println("first-fit: " + firstFitResult);
+        System.out.println("buddy:     " + buddyResult);
+
+        assertTrue(firstFitResult.inserts() > 0);
+        assertTrue(buddyResult.inserts() > 0);
+
+        // Блоки-близнецы платят внутренней фрагментацией за слияние соседей
+        assertTrue(buddyResult.slackBytes() > 0);
+
+        // После удаления всех объектов обе стратегии снова отдают регион одним куском
+        assertEquals(0, firstFit.fragmentation());
+        assertEquals(0, buddy.fragmentation());
+        assertTrue(firstFit.hasFreeBlock(REGION));
+        assertTrue(buddy.hasFreeBlock(REGION));
+        assertEquals(0, buddy.getSlackBytes());
+    }
+
+    private static Result churn(MemoryBlockStorage storage) {
+        final var random = new Random(42);
+        final var live = new ArrayList<MemoryBlock>();
+        final var buddy = storage instanceof BuddyMemoryBlockStorage ? (BuddyMemoryBlockStorage) storage : null;
+
+        storage.addFreeSpace(BASE, REGION);
+
+        int inserts = 0;
+        int removes = 0;
+        int failed = 0;
+        int samples = 0;
+        long insertNanos = 0;
+        long removeNanos = 0;
+        double fragmentation = 0;
+        long slackBytes = 0;
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (!live.isEmpty() && random.nextInt(100) < 45) {
+                final var block = live.remove(random.nextInt(live.size()));
+                final var start = System.nanoTime();
+
+                storage.remove(block);
+                removeNanos += System.nanoTime() - start;
+                removes++;
+            } else {
+                final var size = 16 + random.nextInt(1009);
+
+                if (!storage.hasFreeBlock(size)) {
+                    failed++;
+                    continue;
+                }
+
+                final var start = System.nanoTime();
+                final var block = storage.insert(block(size));
+
+                if (!live.isEmpty())
+                    storage.link(live.get(random.nextInt(live.size())), block);
+
+                insertNanos += System.nanoTime() - start;
+                inserts++;
+                live.add(block);
+            }
+
+            if (i % SAMPLE_EVERY == 0) {
+                fragmentation += storage.fragmentation();
+                slackBytes += buddy == null ? 0 : buddy.getSlackBytes();
+                samples++;
+            }
+        }
+
+        live.forEach(storage::remove);
+
+        return new Result(inserts, failed, fragmentation / samples, slackBytes / samples,
+                insertNanos / Math.max(inserts, 1), removeNanos / Math.max(removes, 1));
+    }
+
+    private static MemoryBlock block(int size) {
+        return MemoryBlock.builder()
+                .size(size)
+                .links(new ArrayList<>())
+                .fullClassName("")
+                .build();
+    }
+
+    private record Result(int inserts, int failed, double fragmentation, long slackBytes, long insertNanos,
+                          long removeNanos) {
+
+        @Override
+        public String toString() {
+            return format("inserts [%d], failed [%d], fragmentation [%.3f], slack [%d] bytes, "
+                            + "insert [%d] ns, remove [%d] ns",
+                    inserts, failed, fragmentation, slackBytes, insertNanos, removeNanos);
+        }
+    }
+}
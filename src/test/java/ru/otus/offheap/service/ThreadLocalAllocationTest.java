@@ -0,0 +1,115 @@
+package ru.otus.offheap.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.otus.offheap.AllocatorConfiguration;
+import ru.otus.offheap.containers.containers.BlobContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@SpringBootTest(classes = AllocatorConfiguration.class, properties = {
+        "offheap.allocator.tlab-enabled=true",
+        "offheap.allocator.tlab-size=4096"
+})
+@EnableAutoConfiguration
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+class ThreadLocalAllocationTest {
+
+    private static final int THREADS = 4;
+    private static final int OBJECTS = 200;
+
+    @Autowired
+    private AllocatorService allocatorService;
+
+    @Autowired
+    private GarbageCollector garbageCollector;
+
+    @Test
+    void concurrentThreadsTest() throws Exception {
+        final var executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<List<String>>> results;
+
+        try {
+            // Каждый поток пишет в свой кусок арены, объекты проверяются сразу после записи
+            results = IntStream.range(0, THREADS)
+                    .mapToObj(thread -> executor.submit(() -> {
+                        final var names = new ArrayList<String>();
+
+                        for (int i = 0; i < OBJECTS; i++) {
+                            final var seed = thread * OBJECTS + i;
+                            final var name = allocatorService.set(blob(seed));
+
+                            assertArrayEquals(blob(seed).getArr(), read(name));
+                            names.add(name);
+                        }
+
+                        return names;
+                    }))
+                    .toList();
+
+            for (Future<List<String>> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Объекты разных потоков не перекрывают друг друга
+        for (int thread = 0; thread < THREADS; thread++) {
+            final var names = results.get(thread).get();
+
+            for (int i = 0; i < OBJECTS; i++)
+                assertArrayEquals(blob(thread * OBJECTS + i).getArr(), read(names.get(i)));
+        }
+    }
+
+    @Test
+    void exitedThreadTest() throws Exception {
+        final var storage = ((AllocatorServiceImpl) allocatorService).getBlockStorage();
+        final var names = new ArrayList<String>();
+        final var thread = new Thread(() -> {
+            for (int i = 0; i < 4; i++)
+                names.add(allocatorService.set(blob(i)));
+        });
+
+        // Поток завершился, не вернув свой кусок арены
+        thread.start();
+        thread.join();
+
+        allocatorService.remove(names.get(0));
+        allocatorService.remove(names.get(2));
+
+        assertTrue(storage.fragmentation() > 0);
+
+        // Кусок завершившегося потока возвращается, и арена уплотняется
+        garbageCollector.compact();
+
+        assertEquals(0, storage.fragmentation());
+        assertArrayEquals(blob(1).getArr(), read(names.get(1)));
+        assertArrayEquals(blob(3).getArr(), read(names.get(3)));
+    }
+
+    private int[] read(String name) {
+        return ((BlobContainer) allocatorService.get(name).get(0)).getArr();
+    }
+
+    private static BlobContainer blob(int seed) {
+        final var arr = new int[100];
+
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = seed * arr.length + i;
+
+        return BlobContainer.builder().arr(arr).build();
+    }
+}
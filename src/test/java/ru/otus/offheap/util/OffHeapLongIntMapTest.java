@@ -0,0 +1,62 @@
+package ru.otus.offheap.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.otus.offheap.util.OffHeapLongIntMap.NO_VALUE;
+
+class OffHeapLongIntMapTest {
+
+    private static final int KEYS = 1 << 20;
+    private static final int READERS = 3;
+
+    @Test
+    void concurrentResizeTest() throws Exception {
+        final var map = new OffHeapLongIntMap();
+        final var written = new AtomicBoolean();
+        final var executor = Executors.newFixedThreadPool(READERS);
+
+        try {
+            // Читатели без блокировки ищут ключи, пока писатель заполняет карту и она многократно растет
+            final var readers = new ArrayList<Future<?>>();
+
+            for (int i = 0; i < READERS; i++)
+                readers.add(executor.submit(() -> {
+                    final var random = ThreadLocalRandom.current();
+
+                    while (!written.get()) {
+                        final var key = random.nextInt(KEYS);
+                        final var value = map.get(key);
+
+                        // Ключ либо еще не записан, либо найден со своим значением
+                        assertTrue(value == NO_VALUE || value == key, "Key " + key + " has value " + value);
+                    }
+                }));
+
+            for (int key = 0; key < KEYS; key++)
+                map.put(key, key);
+
+            written.set(true);
+
+            for (Future<?> reader : readers)
+                reader.get();
+        } finally {
+            written.set(true);
+            executor.shutdown();
+        }
+
+        assertEquals(KEYS, map.size());
+
+        for (int key = 0; key < KEYS; key += 997)
+            assertEquals(key, map.get(key));
+
+        map.clear();
+    }
+}